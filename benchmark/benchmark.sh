@@ -147,3 +147,30 @@ measurement.json=true \
 measurement.count=5000 \
 measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME} \
 "measurement.block_area=49.394664,11.144428,49.348388,11.144943,49.355768,11.227169,49.411643,11.227512"
+
+echo "5 - small map loaded read-only via MMAP_RO, compare with the default RAM_STORE of run 1"
+echo "node- and edge-based CH + slow routing"
+java -cp tools/target/graphhopper-tools-*-jar-with-dependencies.jar \
+-XX:+UseParallelGC -Xmx20g -Xms20g \
+com.graphhopper.tools.Measurement \
+datareader.file=${SMALL_OSM_MAP} \
+datareader.date_range_parser_day=2019-11-01 \
+measurement.name=small_map_mmap_ro \
+measurement.folder=${SINGLE_RESULTS_DIR} \
+measurement.clean=false \
+measurement.stop_on_error=true \
+measurement.summaryfile=${RESULTS_DIR}summary_small_mmap_ro.dat \
+measurement.repeats=1 \
+measurement.run_slow_routing=true \
+measurement.weighting=fastest \
+measurement.ch.node=true \
+measurement.ch.edge=true \
+measurement.lm=false \
+"graph.flag_encoders=car|turn_costs=true" \
+graph.location=${TMP_DIR}measurement-small-gh \
+graph.dataaccess=MMAP_RO \
+prepare.min_network_size=10000 \
+measurement.json=true \
+measurement.count=5000 \
+measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME} \
+"measurement.block_area=49.394664,11.144428,49.348388,11.144943,49.355768,11.227169,49.411643,11.227512"
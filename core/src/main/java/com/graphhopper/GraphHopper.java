@@ -93,10 +93,19 @@ public class GraphHopper {
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM_STORE;
     private boolean sortGraph = false;
+    private String sortOrder = "dfs";
+    private boolean compactEdges = false;
+    private boolean csrAdjacency = false;
+    // true while an import, also a resumed one, runs postProcessing
+    private boolean importing = false;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
     private boolean fullyLoaded = false;
+    // the memory-mapped DataAccess objects that are read into memory after loading, see MMapWarmUp
+    private List<String> mmapPreload = emptyList();
+    private int mmapPreloadThreads = 2;
+    private MMapWarmUp mmapWarmUp;
     private final OSMReaderConfig osmReaderConfig = new OSMReaderConfig();
     // for routing
     private final RouterConfig routerConfig = new RouterConfig();
@@ -329,6 +338,38 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Sets the order used if the graph is sorted: dfs for a depth-first search or hilbert for a Hilbert curve over the
+     * node coordinates.
+     */
+    public GraphHopper setSortOrder(String sortOrder) {
+        ensureNotLoaded();
+        if (!sortOrder.equals("dfs") && !sortOrder.equals("hilbert"))
+            throw new IllegalArgumentException("graph.sort_order must be dfs or hilbert but was " + sortOrder);
+        this.sortOrder = sortOrder;
+        return this;
+    }
+
+    /**
+     * Stores the edges in a compact layout after the import, which needs less memory for them but does not allow
+     * changing the graph afterwards, except for the flags of the edges.
+     */
+    public GraphHopper setCompactEdges(boolean compactEdges) {
+        ensureNotLoaded();
+        this.compactEdges = compactEdges;
+        return this;
+    }
+
+    /**
+     * Creates an index of the adjacent edges of every node after the import, which makes the routing algorithms and
+     * the LM preparation faster and needs 8 bytes per edge. See GraphHopperStorage.createCSRAdjacency.
+     */
+    public GraphHopper setCSRAdjacency(boolean csrAdjacency) {
+        ensureNotLoaded();
+        this.csrAdjacency = csrAdjacency;
+        return this;
+    }
+
     public boolean isAllowWrites() {
         return allowWrites;
     }
@@ -424,8 +465,17 @@ public class GraphHopper {
 
         String graphDATypeStr = ghConfig.getString("graph.dataaccess", "RAM_STORE");
         dataAccessType = DAType.fromString(graphDATypeStr);
+        mmapPreload = new ArrayList<>();
+        for (String name : ghConfig.getString("graph.dataaccess.mmap.preload", "").split(",")) {
+            if (!name.trim().isEmpty())
+                mmapPreload.add(name.trim());
+        }
+        mmapPreloadThreads = ghConfig.getInt("graph.dataaccess.mmap.preload_threads", mmapPreloadThreads);
 
         sortGraph = ghConfig.getBool("graph.do_sort", sortGraph);
+        setSortOrder(ghConfig.getString("graph.sort_order", sortOrder));
+        setCompactEdges(ghConfig.getBool("graph.compact_edges", compactEdges));
+        csrAdjacency = ghConfig.getBool("graph.csr_adjacency", csrAdjacency);
         removeZipped = ghConfig.getBool("graph.remove_zipped", removeZipped);
 
         if (!ghConfig.getString("spatial_rules.location", "").isEmpty())
@@ -471,6 +521,9 @@ public class GraphHopper {
         // osm import
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setWayThreads(ghConfig.getInt("datareader.way_threads", osmReaderConfig.getWayThreads()));
+        osmReaderConfig.setMemoryBudget(ghConfig.getInt("datareader.memory_budget", osmReaderConfig.getMemoryBudget()));
+        osmReaderConfig.setWayFlagsCacheSize(ghConfig.getInt("datareader.way_flags_cache_size", osmReaderConfig.getWayFlagsCacheSize()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -621,11 +674,17 @@ public class GraphHopper {
                     throw new RuntimeException("To avoid multiple writers we need to obtain a write lock but it failed. In " + graphHopperLocation, lock.getObtainFailedReason());
             }
             ensureWriteAccess();
+            importing = true;
             importOSM();
+            storeCheckpoint(CHECKPOINT_READ);
             cleanUp();
+            storeCheckpoint(CHECKPOINT_SUBNETWORKS);
             postProcessing(closeEarly);
+            compactEdges();
+            ghStorage.getProperties().remove(CHECKPOINT_KEY);
             flush();
         } finally {
+            importing = false;
             if (lock != null)
                 lock.release();
         }
@@ -763,15 +822,46 @@ public class GraphHopper {
             if (!ghStorage.loadExisting())
                 return false;
 
+            String checkpoint = getCheckpoint();
+            if (!checkpoint.isEmpty()) {
+                logger.info("resuming import from checkpoint '" + checkpoint + "' in " + ghLocation);
+                ensureWriteAccess();
+                if (lock != null) {
+                    // the import continues, so other readers and writers have to be kept out like in process
+                    lock.release();
+                    lock = lockFactory.create(fileLockName, true);
+                    if (!lock.tryLock())
+                        throw new RuntimeException("To avoid multiple writers we need to obtain a write lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
+                }
+                importing = true;
+                if (CHECKPOINT_READ.equals(checkpoint)) {
+                    cleanUp();
+                    storeCheckpoint(CHECKPOINT_SUBNETWORKS);
+                }
+                postProcessing(false);
+                compactEdges();
+                ghStorage.getProperties().remove(CHECKPOINT_KEY);
+                flush();
+                startMMapWarmUp();
+                return true;
+            }
+
             postProcessing(false);
             setFullyLoaded();
+            startMMapWarmUp();
             return true;
         } finally {
+            importing = false;
             if (lock != null)
                 lock.release();
         }
     }
 
+    private void startMMapWarmUp() {
+        if (!mmapPreload.isEmpty() && dataAccessType.isMMap())
+            mmapWarmUp = new MMapWarmUp(ghStorage.getDirectory(), mmapPreload, mmapPreloadThreads).start();
+    }
+
     private void checkProfilesConsistency() {
         EncodingManager encodingManager = getEncodingManager();
         for (Profile profile : profilesByName.values()) {
@@ -892,14 +982,21 @@ public class GraphHopper {
         // Later: move this into the GraphStorage.optimize method
         // Or: Doing it after preparation to optimize shortcuts too. But not possible yet #12
 
-        if (sortGraph) {
+        // a resumed import was already sorted before the last checkpoint was stored
+        String checkpoint = getCheckpoint();
+        if (sortGraph && !CHECKPOINT_SORTED.equals(checkpoint)) {
             if (ghStorage.isCHPossible() && isCHPrepared())
                 throw new IllegalArgumentException("Sorting a prepared CH is not possible yet. See #12");
 
             GraphHopperStorage newGraph = GHUtility.newStorage(ghStorage);
-            GHUtility.sortDFS(ghStorage, newGraph);
-            logger.info("graph sorted (" + getMemInfo() + ")");
+            if (sortOrder.equals("hilbert"))
+                GHUtility.sortHilbert(ghStorage, newGraph);
+            else
+                GHUtility.sortDFS(ghStorage, newGraph);
+            logger.info("graph sorted by " + sortOrder + " (" + getMemInfo() + ")");
             ghStorage = newGraph;
+            if (!checkpoint.isEmpty())
+                storeCheckpoint(CHECKPOINT_SORTED);
         }
 
         if (!hasInterpolated() && hasElevation()) {
@@ -910,6 +1007,8 @@ public class GraphHopper {
 
         importPublicTransit();
 
+        createCSRAdjacency();
+
         if (lmPreparationHandler.isEnabled())
             lmPreparationHandler.createPreparations(ghStorage, locationIndex);
         loadOrPrepareLM(closeEarly);
@@ -930,6 +1029,55 @@ public class GraphHopper {
     protected void importPublicTransit() {
     }
 
+    /**
+     * Compacts the edges at the end of an import, if configured. This is not done for a graph that is only loaded,
+     * because the compacted edges would not be stored.
+     */
+    private void compactEdges() {
+        if (!compactEdges || ghStorage.isCompact())
+            return;
+        long bytes = ghStorage.getCapacity();
+        ghStorage.freeze();
+        ghStorage.compactEdges();
+        logger.info("compacted edges, the graph needs " + (bytes - ghStorage.getCapacity()) / Helper.MB
+                + "MB less: " + ghStorage.toDetailsString() + " (" + getMemInfo() + ")");
+    }
+
+    /**
+     * Creates the adjacency index before the preparations, if configured. Like compactEdges this is only done during
+     * an import, because a loaded graph is not stored again.
+     */
+    private void createCSRAdjacency() {
+        if (!csrAdjacency || !importing || ghStorage.hasCSRAdjacency())
+            return;
+        ghStorage.freeze();
+        ghStorage.createCSRAdjacency();
+        logger.info("created adjacency index, " + ghStorage.toDetailsString() + " (" + getMemInfo() + ")");
+    }
+
+    // the last finished phase of an import that is still running or was interrupted
+    private static final String CHECKPOINT_KEY = "import.checkpoint";
+    private static final String CHECKPOINT_READ = "read";
+    private static final String CHECKPOINT_SUBNETWORKS = "subnetworks";
+    private static final String CHECKPOINT_SORTED = "sorted";
+
+    private String getCheckpoint() {
+        return ghStorage.getProperties().get(CHECKPOINT_KEY);
+    }
+
+    /**
+     * Stores the graph with the specified phase as the last finished phase of the import. If the import fails later
+     * on the next call of importOrLoad resumes it from this phase instead of reading the OSM file again. The CH and LM
+     * preparations are stored per profile when they are finished.
+     */
+    private void storeCheckpoint(String phase) {
+        ghStorage.getProperties().put(CHECKPOINT_KEY, phase);
+        if (ghStorage.getDirectory().getDefaultType().isStoring()) {
+            ghStorage.flush();
+            logger.info("stored import checkpoint '" + phase + "', " + getMemInfo());
+        }
+    }
+
     private static final String INTERPOLATION_KEY = "prepare.elevation_interpolation.done";
 
     private boolean hasInterpolated() {
@@ -1058,7 +1206,8 @@ public class GraphHopper {
             }
 
             ghStorage.freeze();
-            chPreparationHandler.prepare(ghStorage.getProperties(), closeEarly);
+            // during an import that is resumed from a checkpoint the finished preparations were loaded already
+            chPreparationHandler.prepare(ghStorage.getProperties(), closeEarly, importing && !getCheckpoint().isEmpty());
             ghStorage.getProperties().put(CH.PREPARE + "done", true);
             for (CHProfile profile : chPreparationHandler.getCHProfiles()) {
                 // potentially overwrite existing keys from LM
@@ -1124,6 +1273,10 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        // the warm-up must not read segments that are already unmapped
+        if (mmapWarmUp != null)
+            mmapWarmUp.stop();
+
         if (ghStorage != null)
             ghStorage.close();
 
@@ -1167,6 +1320,21 @@ public class GraphHopper {
         return fullyLoaded;
     }
 
+    /**
+     * @return false while the memory-mapped graph is read into memory after loading, see
+     * graph.dataaccess.mmap.preload
+     */
+    public boolean isWarmedUp() {
+        return mmapWarmUp == null || mmapWarmUp.isDone();
+    }
+
+    /**
+     * @return the warm-up of the memory-mapped graph or null if there is none
+     */
+    public MMapWarmUp getMMapWarmUp() {
+        return mmapWarmUp;
+    }
+
     public RouterConfig getRouterConfig() {
         return routerConfig;
     }
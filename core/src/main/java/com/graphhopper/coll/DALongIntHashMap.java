@@ -0,0 +1,177 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.BitMixer;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.MemoryBudget;
+import com.graphhopper.util.Helper;
+
+import java.io.File;
+
+/**
+ * An open addressing hash map from long to int that is stored in a DataAccess. Use it with an MMAP DAType to move
+ * big temporary maps out of the heap. A slot needs 12 bytes and the capacity is doubled if the map is filled to 50%.
+ * A map in memory can also be spilled to memory-mapped files later, see {@link MemoryBudget}.
+ */
+public class DALongIntHashMap implements LongIntMap, MemoryBudget.Spillable {
+    private static final int SLOT_BYTES = 12;
+    // the DataAccess is initialized with zeros, so the key 0 marks an empty slot and is stored separately
+    private static final long EMPTY_KEY = 0;
+    private final Directory dir;
+    private final String name;
+    private DAType type;
+    private final int noEntryValue;
+    private DataAccess da;
+    private int generation;
+    private long mask;
+    private long size;
+    private boolean hasEmptyKey;
+    private int emptyKeyValue;
+
+    public DALongIntHashMap(Directory dir, String name, DAType type, long expectedSize, int noEntryValue) {
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.noEntryValue = noEntryValue;
+        long slots = 16;
+        while (slots < expectedSize * 2)
+            slots <<= 1;
+        this.da = createDataAccess(slots);
+        this.mask = slots - 1;
+    }
+
+    private DataAccess createDataAccess(long slots) {
+        DataAccess tmp = dir.create(name + "_" + generation++, type);
+        tmp.create(slots * SLOT_BYTES);
+        return tmp;
+    }
+
+    @Override
+    public int put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            int old = hasEmptyKey ? emptyKeyValue : noEntryValue;
+            if (!hasEmptyKey)
+                size++;
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return old;
+        }
+
+        long pointer = find(da, mask, key);
+        if (getKey(da, pointer) == key) {
+            int old = da.getInt(pointer + 8);
+            da.setInt(pointer + 8, value);
+            return old;
+        }
+
+        setSlot(da, pointer, key, value);
+        size++;
+        if (size * 2 > mask + 1)
+            rehash((mask + 1) * 2);
+        return noEntryValue;
+    }
+
+    @Override
+    public int get(long key) {
+        if (key == EMPTY_KEY)
+            return hasEmptyKey ? emptyKeyValue : noEntryValue;
+
+        long pointer = find(da, mask, key);
+        return getKey(da, pointer) == key ? da.getInt(pointer + 8) : noEntryValue;
+    }
+
+    /**
+     * @return the pointer to the slot of the specified key or to the empty slot where it should be inserted
+     */
+    private static long find(DataAccess da, long mask, long key) {
+        long slot = BitMixer.mix64(key) & mask;
+        while (true) {
+            long pointer = slot * SLOT_BYTES;
+            long tmpKey = getKey(da, pointer);
+            if (tmpKey == key || tmpKey == EMPTY_KEY)
+                return pointer;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static long getKey(DataAccess da, long pointer) {
+        return ((long) da.getInt(pointer + 4) << 32) | (da.getInt(pointer) & 0xFFFFFFFFL);
+    }
+
+    private static void setSlot(DataAccess da, long pointer, long key, int value) {
+        da.setInt(pointer, (int) key);
+        da.setInt(pointer + 4, (int) (key >>> 32));
+        da.setInt(pointer + 8, value);
+    }
+
+    private void rehash(long newSlots) {
+        long newMask = newSlots - 1;
+        DataAccess newDA = createDataAccess(newSlots);
+        for (long slot = 0; slot <= mask; slot++) {
+            long pointer = slot * SLOT_BYTES;
+            long key = getKey(da, pointer);
+            if (key != EMPTY_KEY)
+                setSlot(newDA, find(newDA, newMask, key), key, da.getInt(pointer + 8));
+        }
+        dir.remove(da);
+        da = newDA;
+        mask = newMask;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public long getHeapBytes() {
+        return type.isInMemory() ? da.getCapacity() : 0;
+    }
+
+    /**
+     * Copies the slots into a memory-mapped DataAccess.
+     */
+    @Override
+    public boolean spill() {
+        if (!type.isInMemory())
+            return false;
+        new File(dir.getLocation()).mkdirs();
+        type = DAType.MMAP;
+        rehash(mask + 1);
+        return true;
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        return Math.round(da.getCapacity() / (float) Helper.MB);
+    }
+
+    /**
+     * Removes the underlying DataAccess. The map cannot be used afterwards.
+     */
+    public void clear() {
+        dir.remove(da);
+    }
+}
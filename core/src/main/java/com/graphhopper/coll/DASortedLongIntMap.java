@@ -0,0 +1,329 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.MemoryBudget;
+import com.graphhopper.storage.VLongStorage;
+import com.graphhopper.util.BitUtil;
+import com.graphhopper.util.Helper;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * A map from long to int that stores the keys sorted and delta-compressed in a DataAccess. Use it with an MMAP
+ * DAType to keep e.g. the OSM node IDs of big imports out of the heap.
+ * <p>
+ * The keys are split into blocks of {@link #BLOCK_SIZE} keys. The first key of every block is stored uncompressed in
+ * a block index, the same layout as the keys of the OSMIDMap, so a key is found via a binary search over the index
+ * and decoding the following keys of one block. These are stored as VLong encoded differences to their predecessor
+ * which usually requires only one to three bytes for OSM IDs. The values are stored as ints in the order of the keys
+ * and can be updated in place.
+ * <p>
+ * As the blocks cannot be changed cheaply, new keys are collected in a small hash map on the heap. If this buffer is
+ * full it is merged with the blocks into a new set of DataAccess objects. The size of the buffer grows with the map,
+ * so the number of merges stays small. Call optimize to merge the remaining buffer, e.g. when no more keys are added.
+ * <p>
+ * If the DAType is in memory the map can be spilled to memory-mapped files, see {@link MemoryBudget}. This is done
+ * via a merge, which writes all blocks into new DataAccess objects anyway.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class DASortedLongIntMap implements LongIntMap, MemoryBudget.Spillable {
+    static final int BLOCK_SIZE = 64;
+    private static final BitUtil bitUtil = BitUtil.LITTLE;
+    private final Directory dir;
+    private final String name;
+    private DAType type;
+    private final int noEntryValue;
+    private final int minBufferSize;
+    private final GHLongIntHashMap buffer;
+    // for every block the first key and the pointer to the remaining keys in blocks, plus the end pointer
+    private DataAccess index;
+    private DataAccess pointers;
+    private DataAccess blocks;
+    private DataAccess values;
+    private int generation;
+    private long size;
+    private long blockCount;
+    // reused for decoding and encoding a block, a VLong needs at most 9 bytes
+    private final byte[] blockBytes = new byte[BLOCK_SIZE * 9];
+    private final VLongStorage blockStorage = new VLongStorage(blockBytes);
+    private final byte[] longBytes = new byte[8];
+
+    public DASortedLongIntMap(Directory dir, String name, DAType type, int noEntryValue) {
+        this(dir, name, type, noEntryValue, 1 << 20);
+    }
+
+    /**
+     * @param minBufferSize the number of new keys that are collected on the heap before they are merged
+     */
+    public DASortedLongIntMap(Directory dir, String name, DAType type, int noEntryValue, int minBufferSize) {
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.noEntryValue = noEntryValue;
+        this.minBufferSize = minBufferSize;
+        this.buffer = new GHLongIntHashMap(Math.min(minBufferSize, 1 << 16));
+        createDataAccess();
+    }
+
+    private void createDataAccess() {
+        index = dir.create(name + "_index_" + generation, type).create(1 << 10);
+        pointers = dir.create(name + "_pointers_" + generation, type).create(1 << 10);
+        blocks = dir.create(name + "_blocks_" + generation, type).create(1 << 10);
+        values = dir.create(name + "_values_" + generation, type).create(1 << 10);
+        generation++;
+    }
+
+    @Override
+    public int put(long key, int value) {
+        long rank = findRank(key);
+        if (rank >= 0) {
+            int oldValue = values.getInt(rank * 4);
+            values.setInt(rank * 4, value);
+            return oldValue;
+        }
+
+        int bufferIndex = buffer.indexOf(key);
+        if (buffer.indexExists(bufferIndex))
+            return buffer.indexReplace(bufferIndex, value);
+        buffer.indexInsert(bufferIndex, key, value);
+        if (buffer.size() >= Math.max(minBufferSize, size >>> 3))
+            merge();
+        return noEntryValue;
+    }
+
+    @Override
+    public int get(long key) {
+        if (!buffer.isEmpty()) {
+            int bufferIndex = buffer.indexOf(key);
+            if (buffer.indexExists(bufferIndex))
+                return buffer.indexGet(bufferIndex);
+        }
+        long rank = findRank(key);
+        return rank < 0 ? noEntryValue : values.getInt(rank * 4);
+    }
+
+    /**
+     * @return the position of the specified key in the blocks or -1 if it is not contained in the blocks
+     */
+    private long findRank(long key) {
+        if (blockCount == 0)
+            return -1;
+        long block = OSMIDMap.binarySearch(index, 0, blockCount, key);
+        if (block >= 0)
+            return block * BLOCK_SIZE;
+
+        // the key is not the first key of a block but could be contained in the block before the insertion point
+        block = ~block - 1;
+        if (block < 0)
+            return -1;
+        long tmpKey = getFirstKey(block);
+        int keys = readBlock(block);
+        for (int i = 1; i < keys; i++) {
+            tmpKey += blockStorage.readVLong();
+            if (tmpKey == key)
+                return block * BLOCK_SIZE + i;
+            if (tmpKey > key)
+                return -1;
+        }
+        return -1;
+    }
+
+    private long getFirstKey(long block) {
+        index.getBytes(block << 3, longBytes, 8);
+        return bitUtil.toLong(longBytes);
+    }
+
+    /**
+     * Copies the encoded keys of the specified block into the blockStorage and positions it at the second key.
+     *
+     * @return the number of keys in the block
+     */
+    private int readBlock(long block) {
+        long start = getPointer(pointers, block);
+        int length = (int) (getPointer(pointers, block + 1) - start);
+        blocks.getBytes(start, blockBytes, length);
+        blockStorage.seek(0);
+        return (int) Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+    }
+
+    /**
+     * Merges the buffer and the existing blocks into new DataAccess objects and removes the old ones.
+     */
+    private void merge() {
+        long[] newKeys = new long[buffer.size()];
+        int i = 0;
+        for (LongIntCursor cursor : buffer) {
+            newKeys[i++] = cursor.key;
+        }
+        Arrays.sort(newKeys);
+
+        DataAccess oldIndex = index, oldPointers = pointers, oldBlocks = blocks, oldValues = values;
+        long oldSize = size, oldBlockCount = blockCount;
+        createDataAccess();
+        BlockWriter writer = new BlockWriter(oldSize + newKeys.length);
+        // the blockStorage is used by the writer, so the old blocks are decoded separately
+        byte[] bytes = new byte[blockBytes.length];
+        VLongStorage storage = new VLongStorage(bytes);
+        int newKeyIndex = 0;
+        long rank = 0;
+        for (long block = 0; block < oldBlockCount; block++) {
+            long start = getPointer(oldPointers, block);
+            int length = (int) (getPointer(oldPointers, block + 1) - start);
+            oldBlocks.getBytes(start, bytes, length);
+            storage.seek(0);
+            oldIndex.getBytes(block << 3, longBytes, 8);
+            long key = bitUtil.toLong(longBytes);
+            int keys = (int) Math.min(BLOCK_SIZE, oldSize - block * BLOCK_SIZE);
+            for (int k = 0; k < keys; k++, rank++) {
+                if (k > 0)
+                    key += storage.readVLong();
+                while (newKeyIndex < newKeys.length && newKeys[newKeyIndex] < key) {
+                    writer.add(newKeys[newKeyIndex], buffer.get(newKeys[newKeyIndex]));
+                    newKeyIndex++;
+                }
+                writer.add(key, oldValues.getInt(rank * 4));
+            }
+        }
+        for (; newKeyIndex < newKeys.length; newKeyIndex++) {
+            writer.add(newKeys[newKeyIndex], buffer.get(newKeys[newKeyIndex]));
+        }
+        writer.finish();
+
+        dir.remove(oldIndex);
+        dir.remove(oldPointers);
+        dir.remove(oldBlocks);
+        dir.remove(oldValues);
+        buffer.clear();
+    }
+
+    private static long getPointer(DataAccess pointers, long block) {
+        return ((long) pointers.getInt((block << 3) + 4) << 32) | (pointers.getInt(block << 3) & 0xFFFFFFFFL);
+    }
+
+    private class BlockWriter {
+        private long blockPointer;
+        private long lastKey;
+
+        /**
+         * Resets the map to the new DataAccess objects, which are big enough for the specified number of keys.
+         */
+        BlockWriter(long expectedSize) {
+            size = 0;
+            blockCount = 0;
+            values.ensureCapacity(expectedSize * 4);
+            index.ensureCapacity((expectedSize / BLOCK_SIZE + 1) * 8);
+            pointers.ensureCapacity((expectedSize / BLOCK_SIZE + 2) * 8);
+        }
+
+        void add(long key, int value) {
+            if (size % BLOCK_SIZE == 0) {
+                if (size > 0)
+                    flushBlock();
+                index.setBytes(blockCount << 3, bitUtil.fromLong(key), 8);
+                blockCount++;
+                blockStorage.seek(0);
+            } else {
+                blockStorage.writeVLong(key - lastKey);
+            }
+            values.setInt(size * 4, value);
+            lastKey = key;
+            size++;
+        }
+
+        private void flushBlock() {
+            int length = (int) blockStorage.getPosition();
+            setPointer(blockCount - 1, blockPointer);
+            blocks.ensureCapacity(blockPointer + length);
+            blocks.setBytes(blockPointer, blockBytes, length);
+            blockPointer += length;
+        }
+
+        void finish() {
+            if (size > 0)
+                flushBlock();
+            // the end pointer of the last block
+            setPointer(blockCount, blockPointer);
+        }
+
+        private void setPointer(long block, long pointer) {
+            pointers.setInt(block << 3, (int) pointer);
+            pointers.setInt((block << 3) + 4, (int) (pointer >>> 32));
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size + buffer.size();
+    }
+
+    /**
+     * Merges the keys that were added since the last merge into the blocks, which frees the heap used by them.
+     */
+    @Override
+    public void optimize() {
+        if (!buffer.isEmpty())
+            merge();
+    }
+
+    @Override
+    public long getHeapBytes() {
+        long bytes = 12L * buffer.keys.length;
+        if (type.isInMemory())
+            bytes += index.getCapacity() + pointers.getCapacity() + blocks.getCapacity() + values.getCapacity();
+        return bytes;
+    }
+
+    /**
+     * Moves the blocks to memory-mapped files, only the buffer of new keys stays on the heap.
+     */
+    @Override
+    public boolean spill() {
+        if (!type.isInMemory())
+            return false;
+        new File(dir.getLocation()).mkdirs();
+        type = DAType.MMAP;
+        merge();
+        return true;
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        long bytes = index.getCapacity() + pointers.getCapacity() + blocks.getCapacity() + values.getCapacity()
+                // the buffer needs a long and an int per slot
+                + 12L * buffer.keys.length;
+        return Math.round(bytes / (float) Helper.MB);
+    }
+
+    /**
+     * Removes the underlying DataAccess objects. The map cannot be used afterwards.
+     */
+    public void clear() {
+        dir.remove(index);
+        dir.remove(pointers);
+        dir.remove(blocks);
+        dir.remove(values);
+        buffer.clear();
+    }
+}
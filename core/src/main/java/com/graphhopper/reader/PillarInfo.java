@@ -17,21 +17,25 @@
  */
 package com.graphhopper.reader;
 
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.MemoryBudget;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointAccess;
 
+import java.io.File;
+
 /**
  * This class helps to store lat,lon,ele for every node parsed in OSMReader
  * <p>
  *
  * @author Peter Karich
  */
-public class PillarInfo implements PointAccess {
+public class PillarInfo implements PointAccess, MemoryBudget.Spillable {
     private static final int LAT = 0 * 4, LON = 1 * 4, ELE = 2 * 4;
     private final boolean enabled3D;
-    private final DataAccess da;
+    private DataAccess da;
     private final int rowSizeInBytes;
     private final Directory dir;
 
@@ -90,6 +94,31 @@ public class PillarInfo implements PointAccess {
         return Helper.intToEle(intVal);
     }
 
+    @Override
+    public long getHeapBytes() {
+        return da.getType().isInMemory() ? da.getCapacity() : 0;
+    }
+
+    /**
+     * Copies the coordinates into a memory-mapped DataAccess.
+     */
+    @Override
+    public boolean spill() {
+        if (!da.getType().isInMemory())
+            return false;
+        new File(dir.getLocation()).mkdirs();
+        DataAccess mmap = dir.create("tmp_pillar_info_mmap", DAType.MMAP).create(da.getCapacity());
+        byte[] bytes = new byte[da.getSegmentSize()];
+        for (long pointer = 0; pointer < da.getCapacity(); pointer += bytes.length) {
+            int length = (int) Math.min(bytes.length, da.getCapacity() - pointer);
+            da.getBytes(pointer, bytes, length);
+            mmap.setBytes(pointer, bytes, length);
+        }
+        dir.remove(da);
+        da = mmap;
+        return true;
+    }
+
     public void clear() {
         dir.remove(da);
     }
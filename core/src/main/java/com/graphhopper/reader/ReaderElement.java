@@ -23,6 +23,9 @@ import java.util.Map.Entry;
 /**
  * Base class for all network objects
  * <p>
+ * The tags are stored in two arrays instead of a HashMap, which avoids the hash table and an entry object per tag
+ * for the millions of elements of an import. The keys of common tags are interned when they are added, so they can be
+ * found via a reference comparison if they are looked up via a string literal like in the tag parsers.
  *
  * @author Nop
  * @author Peter
@@ -32,9 +35,14 @@ public abstract class ReaderElement {
     public static final int WAY = 1;
     public static final int RELATION = 2;
     public static final int FILEHEADER = 3;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
     private final int type;
     private final long id;
-    private final Map<String, Object> properties;
+    private final int initialTagCapacity;
+    private String[] tagKeys = EMPTY_KEYS;
+    private Object[] tagValues = EMPTY_VALUES;
+    private int tagCount;
 
     protected ReaderElement(long id, int type) {
         this(id, type, 4);
@@ -43,7 +51,7 @@ public abstract class ReaderElement {
     protected ReaderElement(long id, int type, int propertyMapSize) {
         this.id = id;
         this.type = type;
-        properties = new HashMap<>(propertyMapSize);
+        this.initialTagCapacity = Math.max(1, propertyMapSize);
     }
 
     public long getId() {
@@ -51,25 +59,32 @@ public abstract class ReaderElement {
     }
 
     protected String tagsToString() {
-        if (properties.isEmpty())
+        if (tagCount == 0)
             return "<empty>";
 
         StringBuilder tagTxt = new StringBuilder();
-        for (Map.Entry<String, Object> entry : properties.entrySet()) {
-            tagTxt.append(entry.getKey());
+        for (int i = 0; i < tagCount; i++) {
+            tagTxt.append(tagKeys[i]);
             tagTxt.append("=");
-            tagTxt.append(entry.getValue());
+            tagTxt.append(tagValues[i]);
             tagTxt.append("\n");
         }
         return tagTxt.toString();
     }
 
+    /**
+     * @return a copy of the tags in the order they were added
+     */
     protected Map<String, Object> getTags() {
-        return properties;
+        Map<String, Object> tags = new LinkedHashMap<>(tagCount * 2);
+        for (int i = 0; i < tagCount; i++) {
+            tags.put(tagKeys[i], tagValues[i]);
+        }
+        return tags;
     }
 
     public void setTags(Map<String, String> newTags) {
-        properties.clear();
+        clearTags();
         if (newTags != null)
             for (Entry<String, String> e : newTags.entrySet()) {
                 setTag(e.getKey(), e.getValue());
@@ -77,16 +92,53 @@ public abstract class ReaderElement {
     }
 
     public boolean hasTags() {
-        return !properties.isEmpty();
+        return tagCount > 0;
+    }
+
+    /**
+     * @return the number of tags, use it with getTagKey and getTagValue to iterate the tags without a copy
+     */
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    public String getTagKey(int index) {
+        if (index >= tagCount)
+            throw new IndexOutOfBoundsException("index " + index + " for " + tagCount + " tags");
+        return tagKeys[index];
+    }
+
+    public Object getTagValue(int index) {
+        if (index >= tagCount)
+            throw new IndexOutOfBoundsException("index " + index + " for " + tagCount + " tags");
+        return tagValues[index];
+    }
+
+    private int indexOfTag(String key) {
+        // the interned keys are found by the reference comparison, all others need equals
+        for (int i = 0; i < tagCount; i++) {
+            if (tagKeys[i] == key)
+                return i;
+        }
+        for (int i = 0; i < tagCount; i++) {
+            if (tagKeys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private Object getTagValue(String key) {
+        int index = indexOfTag(key);
+        return index < 0 ? null : tagValues[index];
     }
 
     public String getTag(String name) {
-        return (String) properties.get(name);
+        return (String) getTagValue(name);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getTag(String key, T defaultValue) {
-        T val = (T) properties.get(key);
+        T val = (T) getTagValue(key);
         if (val == null)
             return defaultValue;
         return val;
@@ -94,16 +146,28 @@ public abstract class ReaderElement {
 
     public List<String> getKeysWithPrefix(String keyPrefix) {
         List<String> keys = new ArrayList<>();
-        for (String key : properties.keySet()) {
-            if (key.startsWith(keyPrefix)) {
-                keys.add(key);
+        for (int i = 0; i < tagCount; i++) {
+            if (tagKeys[i].startsWith(keyPrefix)) {
+                keys.add(tagKeys[i]);
             }
         }
         return keys;
     }
 
     public void setTag(String name, Object value) {
-        properties.put(name, value);
+        int index = indexOfTag(name);
+        if (index >= 0) {
+            tagValues[index] = value;
+            return;
+        }
+        if (tagCount == tagKeys.length) {
+            int capacity = tagCount == 0 ? initialTagCapacity : tagCount * 2;
+            tagKeys = Arrays.copyOf(tagKeys, capacity);
+            tagValues = Arrays.copyOf(tagValues, capacity);
+        }
+        tagKeys[tagCount] = TagKeys.intern(name);
+        tagValues[tagCount] = value;
+        tagCount++;
     }
 
     /**
@@ -118,7 +182,7 @@ public abstract class ReaderElement {
      * for presence of the tag
      */
     public boolean hasTag(String key, String... values) {
-        Object value = properties.get(key);
+        Object value = getTagValue(key);
         if (value == null)
             return false;
 
@@ -153,8 +217,8 @@ public abstract class ReaderElement {
     }
 
     public boolean hasTagWithKeyPrefix(String keyPrefix) {
-        for (String key : properties.keySet()) {
-            if (key.startsWith(keyPrefix)) {
+        for (int i = 0; i < tagCount; i++) {
+            if (tagKeys[i].startsWith(keyPrefix)) {
                 return true;
             }
         }
@@ -173,11 +237,20 @@ public abstract class ReaderElement {
     }
 
     public void removeTag(String name) {
-        properties.remove(name);
+        int index = indexOfTag(name);
+        if (index < 0)
+            return;
+        tagCount--;
+        System.arraycopy(tagKeys, index + 1, tagKeys, index, tagCount - index);
+        System.arraycopy(tagValues, index + 1, tagValues, index, tagCount - index);
+        tagKeys[tagCount] = null;
+        tagValues[tagCount] = null;
     }
 
     public void clearTags() {
-        properties.clear();
+        Arrays.fill(tagKeys, 0, tagCount, null);
+        Arrays.fill(tagValues, 0, tagCount, null);
+        tagCount = 0;
     }
 
     public int getType() {
@@ -190,6 +263,12 @@ public abstract class ReaderElement {
 
     @Override
     public String toString() {
-        return properties.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < tagCount; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(tagKeys[i]).append('=').append(tagValues[i]);
+        }
+        return sb.append('}').toString();
     }
 }
@@ -0,0 +1,63 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The keys of the tags that are frequently used in OSM and read by the tag parsers. The keys read from a file are
+ * replaced by the instances of this table, which are the same instances as the string literals of the parsers. So
+ * comparing keys is a reference comparison like for integer indexes and every key exists only once in memory.
+ */
+final class TagKeys {
+    private static final String[] KEYS = {
+            "highway", "name", "ref", "oneway", "junction", "surface", "smoothness", "tracktype", "service", "lanes",
+            "maxspeed", "maxspeed:forward", "maxspeed:backward", "maxspeed:motorcycle", "maxweight", "maxgcweight",
+            "maxwidth", "maxwidth:physical", "width", "maxheight", "maxlength", "maxaxleload",
+            "access", "vehicle", "vehicle:forward", "vehicle:backward", "motor_vehicle", "motor_vehicle:forward",
+            "motor_vehicle:backward", "motorcar", "motorcycle", "hgv", "psv", "bicycle", "bicycle:forward",
+            "bicycle:backward", "foot", "horse", "wheelchair", "oneway:bicycle", "motorroad", "barrier", "ford",
+            "tunnel", "bridge", "route", "railway", "man_made", "sidewalk", "segregated", "kerb", "incline",
+            "cycleway", "cycleway:left", "cycleway:right", "cycleway:left:oneway", "cycleway:right:oneway",
+            "class:bicycle", "sac_scale", "mtb:scale", "horse_scale", "scenic", "toll", "toll:hgv", "hazmat",
+            "hazmat:water", "hazmat:tunnel_cat", "hazmat:adr_tunnel_cat", "duration", "duration:seconds",
+            "impassable", "status", "locked", "area", "type", "restriction", "except", "network", "layer",
+            "estimated_distance", "estimated_center", "country", "country_rule", "custom_areas",
+            "created_by", "source", "building", "landuse", "natural", "amenity", "place", "addr:street",
+            "addr:housenumber", "addr:postcode", "addr:city"
+    };
+    private static final Map<String, String> INTERNED = new HashMap<>(KEYS.length * 2);
+
+    static {
+        for (String key : KEYS) {
+            INTERNED.put(key, key);
+        }
+    }
+
+    private TagKeys() {
+    }
+
+    /**
+     * @return the shared instance of the specified key if it is a common key, otherwise the key itself
+     */
+    static String intern(String key) {
+        String interned = INTERNED.get(key);
+        return interned == null ? key : interned;
+    }
+}
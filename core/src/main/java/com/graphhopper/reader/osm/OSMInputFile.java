@@ -55,6 +55,7 @@ public class OSMInputFile implements Sink, OSMInput {
     private Thread pbfReaderThread;
     private boolean hasIncomingData;
     private int workerThreads = -1;
+    private SkipOptions skipOptions = SkipOptions.none();
     private OSMFileHeader fileheader;
 
     public OSMInputFile(File file) throws IOException {
@@ -80,6 +81,15 @@ public class OSMInputFile implements Sink, OSMInput {
         return this;
     }
 
+    /**
+     * Specifies the element types that are not needed and not returned by getNext. This needs to be set before
+     * open is called.
+     */
+    public OSMInputFile setSkipOptions(SkipOptions skipOptions) {
+        this.skipOptions = skipOptions;
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     private InputStream decode(File file) throws IOException {
         final String name = file.getName();
@@ -198,17 +208,21 @@ public class OSMInputFile implements Sink, OSMInput {
                     switch (name.charAt(0)) {
                         case 'n':
                             // note vs. node
-                            if ("node".equals(name)) {
+                            if ("node".equals(name) && !skipOptions.isSkipNodes()) {
                                 id = Long.parseLong(idStr);
                                 return OSMXMLHelper.createNode(id, xmlParser);
                             }
                             break;
 
                         case 'w': {
+                            if (skipOptions.isSkipWays())
+                                break;
                             id = Long.parseLong(idStr);
                             return OSMXMLHelper.createWay(id, xmlParser);
                         }
                         case 'r':
+                            if (skipOptions.isSkipRelations())
+                                break;
                             id = Long.parseLong(idStr);
                             return OSMXMLHelper.createRelation(id, xmlParser);
                     }
@@ -247,7 +261,7 @@ public class OSMInputFile implements Sink, OSMInput {
         if (workerThreads <= 0)
             workerThreads = 1;
 
-        pbfReader = new PbfReader(stream, this, workerThreads);
+        pbfReader = new PbfReader(stream, this, workerThreads, skipOptions);
         pbfReaderThread = new Thread(pbfReader, "PBF Reader");
         pbfReaderThread.start();
     }
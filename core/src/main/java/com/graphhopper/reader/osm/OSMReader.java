@@ -97,17 +97,27 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
     // same here: not applicable as ways introduces the nodes in 'wrong' order: new OSMIDSegmentedMap
     // memory overhead due to open addressing and full rehash:
     //        nodeOsmIdToIndexMap = new BigLongIntMap(expectedNodes, EMPTY);
-    // smaller memory overhead for bigger data sets because of avoiding a "rehash"
+    // smaller memory overhead for bigger data sets because of avoiding a "rehash": new GHLongIntBTree(200)
+    // sorted and delta-compressed keys in a DataAccess, the new keys of the unordered ways are buffered and merged
     // remember how many times a node was used to identify tower nodes
-    private LongIntMap osmNodeIdToInternalNodeMap;
+    private DASortedLongIntMap osmNodeIdToInternalNodeMap;
     private GHLongLongHashMap osmNodeIdToNodeFlagsMap;
     private GHLongLongHashMap osmWayIdToRelationFlagsMap;
     // stores osm way ids used by relations to identify which edge ids needs to be mapped later
     private GHLongHashSet osmWayIdSet = new GHLongHashSet();
     private IntLongMap edgeIdToOsmWayIdMap;
+    // the turn relations are stored after all ways were read, see storeTurnRelations
+    private List<OSMTurnRelation> pendingTurnRelations = new ArrayList<>();
+    // tracks the heap used by the temporary maps and the graph and spills the maps to disc if necessary
+    private final MemoryBudget memoryBudget;
+    // null if the edge flags of ways with the same tags should not be reused
+    private WayFlagsCache wayFlagsCache;
     private final boolean doSimplify;
     private int nextTowerId = 0;
     private int nextPillarId = 0;
+    // the number of pillar and tower nodes found in the preprocessing, used to allocate their storage upfront
+    private long pillarNodes = 0;
+    private long towerNodes = 0;
     // negative but increasing to avoid clash with custom created OSM files
     private long newUniqueOsmId = -Long.MAX_VALUE;
     private AreaIndex<CustomArea> areaIndex;
@@ -128,7 +138,8 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
         simplifyAlgo.setMaxDistance(config.getMaxWayPointDistance());
         simplifyAlgo.setElevationMaxDistance(config.getElevationMaxWayPointDistance());
 
-        osmNodeIdToInternalNodeMap = new GHLongIntBTree(200);
+        osmNodeIdToInternalNodeMap = new DASortedLongIntMap(ghStorage.getDirectory(), "tmp_osm_node_map",
+                ghStorage.getDirectory().getDefaultType(), EMPTY_NODE);
         osmNodeIdToNodeFlagsMap = new GHLongLongHashMap(200, .5f);
         osmWayIdToRelationFlagsMap = new GHLongLongHashMap(200, .5f);
         pillarInfo = new PillarInfo(nodeAccess.is3D(), ghStorage.getDirectory());
@@ -137,6 +148,14 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
             throw new IllegalArgumentException("Cannot use relation flags with != 2 integers");
 
         tcs = graph.getTurnCostStorage();
+        memoryBudget = new MemoryBudget(config.getMemoryBudget() * (long) Helper.MB).
+                register("osm_node_map", osmNodeIdToInternalNodeMap).
+                register("pillar_info", pillarInfo).
+                // both maps are on the heap and usually much smaller than the node map, they are only tracked
+                register("node_flags_map", () -> osmNodeIdToNodeFlagsMap == null ? 0 : 16L * osmNodeIdToNodeFlagsMap.keys.length).
+                register("relation_flags_map", () -> osmWayIdToRelationFlagsMap == null ? 0 : 16L * osmWayIdToRelationFlagsMap.keys.length);
+        if (config.getWayFlagsCacheSize() > 0)
+            wayFlagsCache = new WayFlagsCache(config.getWayFlagsCacheSize());
     }
 
     public void readGraph() throws IOException {
@@ -168,7 +187,8 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
      */
     void preProcess(File osmFile) {
         LOGGER.info("Starting to process OSM file: '" + osmFile + "'");
-        try (OSMInput in = openOsmInputFile(osmFile)) {
+        // the nodes are only needed in the second pass
+        try (OSMInput in = openOsmInputFile(osmFile, new SkipOptions(true, false, false))) {
             long tmpWayCounter = 1;
             long tmpRelationCounter = 1;
             ReaderElement item;
@@ -183,7 +203,9 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
                             prepareHighwayNode(wayNodes.get(index));
                         }
 
-                        if (++tmpWayCounter % 10_000_000 == 0) {
+                        if (++tmpWayCounter % 100_000 == 0)
+                            memoryBudget.check();
+                        if (tmpWayCounter % 10_000_000 == 0) {
                             LOGGER.info(nf(tmpWayCounter) + " (preprocess), osmIdMap:" + nf(getNodeMap().getSize()) + " ("
                                     + getNodeMap().getMemoryUsage() + "MB) " + Helper.getMemInfo());
                         }
@@ -207,6 +229,8 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
                 }
 
             }
+            // all nodes of the ways are known now, afterwards only barrier nodes are added to the node map
+            getNodeMap().optimize();
         } catch (Exception ex) {
             throw new RuntimeException("Problem while parsing file", ex);
         }
@@ -256,22 +280,33 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
      */
     private void writeOsmToGraph(File osmFile) {
         int tmp = (int) Math.max(getNodeMap().getSize() / 50, 100);
-        LOGGER.info("creating graph. Found nodes (pillar+tower):" + nf(getNodeMap().getSize()) + ", " + Helper.getMemInfo());
+        LOGGER.info("creating graph. Found nodes (pillar+tower):" + nf(getNodeMap().getSize()) + " (" + nf(pillarNodes)
+                + "+" + nf(towerNodes) + "), " + Helper.getMemInfo());
         ghStorage.create(tmp);
+        if (ghStorage.getDirectory().getDefaultType().isInMemory())
+            memoryBudget.register("graph", ghStorage::getCapacity);
+        // allocate the dense storage of the pillar nodes at once instead of growing it while reading the nodes. Only
+        // barriers and the conversion of pillar nodes can add pillar nodes later. The tower nodes still grow as they
+        // are added, because ensureNode would also count the tower nodes that are referenced but missing in the file.
+        memoryBudget.check(pillarNodes * pillarInfo.getDimension() * 4);
+        if (pillarNodes > 0)
+            pillarInfo.ensureNode((int) pillarNodes - 1);
 
         long wayStart = -1;
         long relationStart = -1;
         long counter = 1;
-        try (OSMInput in = openOsmInputFile(osmFile)) {
-            LongIntMap nodeFilter = getNodeMap();
-
+        // the relations are only needed for the turn restrictions in the second pass
+        try (OSMInput in = openOsmInputFile(osmFile, new SkipOptions(false, false, tcs == null));
+             WayPipeline wayPipeline = createWayPipeline()) {
             ReaderElement item;
             while ((item = in.getNext()) != null) {
+                // all other elements might depend on the edges or change the node maps
+                if (wayPipeline != null && !item.isType(ReaderElement.WAY) && wayPipeline.isPending())
+                    wayPipeline.finish();
+
                 switch (item.getType()) {
                     case ReaderElement.NODE:
-                        if (nodeFilter.get(item.getId()) != EMPTY_NODE) {
-                            processNode((ReaderNode) item);
-                        }
+                        processNode((ReaderNode) item);
                         break;
 
                     case ReaderElement.WAY:
@@ -279,7 +314,10 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
                             LOGGER.info(nf(counter) + ", now parsing ways");
                             wayStart = counter;
                         }
-                        processWay((ReaderWay) item);
+                        if (wayPipeline == null)
+                            processWay((ReaderWay) item);
+                        else
+                            addWayToPipeline(wayPipeline, (ReaderWay) item);
                         break;
                     case ReaderElement.RELATION:
                         if (relationStart < 0) {
@@ -293,14 +331,21 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
                     default:
                         throw new IllegalStateException("Unknown type " + item.getType());
                 }
-                if (++counter % 200_000_000 == 0) {
+                if (++counter % 100_000 == 0)
+                    memoryBudget.check();
+                if (counter % 200_000_000 == 0) {
                     LOGGER.info(nf(counter) + ", locs:" + nf(locations) + ", " + Helper.getMemInfo());
                 }
             }
 
+            if (wayPipeline != null)
+                wayPipeline.finish();
+
             if (in.getUnprocessedElements() > 0)
                 throw new IllegalStateException("Still unprocessed elements in reader queue " + in.getUnprocessedElements());
 
+            storeTurnRelations();
+
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex) {
             throw new RuntimeException("Couldn't process file " + osmFile + ", error: " + ex.getMessage(), ex);
@@ -311,8 +356,55 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
             throw new RuntimeException("Graph after reading OSM must not be empty. Read " + counter + " items and " + locations + " locations");
     }
 
-    protected OSMInput openOsmInputFile(File osmFile) throws XMLStreamException, IOException {
-        return new OSMInputFile(osmFile).setWorkerThreads(config.getWorkerThreads()).open();
+    protected OSMInput openOsmInputFile(File osmFile, SkipOptions skipOptions) throws XMLStreamException, IOException {
+        return new OSMInputFile(osmFile).setWorkerThreads(config.getWorkerThreads()).setSkipOptions(skipOptions).open();
+    }
+
+    private WayPipeline createWayPipeline() {
+        if (config.getWayThreads() <= 1)
+            return null;
+        LOGGER.info("using " + config.getWayThreads() + " threads to process ways");
+        return new WayPipeline(config.getWayThreads(), 1000, this::prepareWay, this::writeWay);
+    }
+
+    /**
+     * Resolves the coordinates needed for the artificial way tags, as the node maps must only be accessed from this
+     * thread, and passes the way on to the pipeline. Apart from that the way is processed like in processWay.
+     */
+    private void addWayToPipeline(WayPipeline wayPipeline, ReaderWay way) {
+        if (way.getNodes().size() < 2)
+            return;
+
+        // ignore multipolygon geometry
+        if (!way.hasTags())
+            return;
+
+        LongArrayList osmNodeIds = way.getNodes();
+        int first = getNodeMap().get(osmNodeIds.get(0));
+        int last = getNodeMap().get(osmNodeIds.get(osmNodeIds.size() - 1));
+        wayPipeline.add(new WayPipeline.PreparedWay(way, getTmpLatitude(first), getTmpLongitude(first),
+                getTmpLatitude(last), getTmpLongitude(last)));
+    }
+
+    /**
+     * Calculates the edge flags of the way. This is called concurrently from the worker threads of the pipeline.
+     */
+    private void prepareWay(WayPipeline.PreparedWay preparedWay) {
+        ReaderWay way = preparedWay.way;
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        if (!encodingManager.acceptWay(way, acceptWay))
+            return;
+
+        setArtificialWayTags(way, preparedWay.firstLat, preparedWay.firstLon, preparedWay.lastLat, preparedWay.lastLon);
+        IntsRef relationFlags = getRelFlagsMap(way.getId(), encodingManager.createRelationFlags());
+        IntsRef edgeFlags = handleWayTags(way, acceptWay, relationFlags);
+        if (!edgeFlags.isEmpty())
+            preparedWay.edgeFlags = edgeFlags;
+    }
+
+    private void writeWay(WayPipeline.PreparedWay preparedWay) {
+        if (preparedWay.edgeFlags != null)
+            addWayEdges(preparedWay.way, preparedWay.edgeFlags);
     }
 
     /**
@@ -333,10 +425,23 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
         setArtificialWayTags(way);
 
         IntsRef relationFlags = getRelFlagsMap(way.getId());
-        IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, relationFlags);
+        IntsRef edgeFlags = handleWayTags(way, acceptWay, relationFlags);
         if (edgeFlags.isEmpty())
             return;
 
+        addWayEdges(way, edgeFlags);
+    }
+
+    private IntsRef handleWayTags(ReaderWay way, EncodingManager.AcceptWay acceptWay, IntsRef relationFlags) {
+        if (wayFlagsCache == null)
+            return encodingManager.handleWayTags(way, acceptWay, relationFlags);
+        return wayFlagsCache.handleWayTags(encodingManager, way, acceptWay, relationFlags);
+    }
+
+    /**
+     * Creates the edges of the way, including the barrier edges.
+     */
+    private void addWayEdges(ReaderWay way, IntsRef edgeFlags) {
         LongArrayList osmNodeIds = way.getNodes();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -398,8 +503,14 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
         // Estimate length of ways containing a route tag e.g. for ferry speed calculation
         int first = getNodeMap().get(osmNodeIds.get(0));
         int last = getNodeMap().get(osmNodeIds.get(osmNodeIds.size() - 1));
-        double firstLat = getTmpLatitude(first), firstLon = getTmpLongitude(first);
-        double lastLat = getTmpLatitude(last), lastLon = getTmpLongitude(last);
+        setArtificialWayTags(way, getTmpLatitude(first), getTmpLongitude(first), getTmpLatitude(last), getTmpLongitude(last));
+    }
+
+    /**
+     * Sets the artificial tags using the specified coordinates of the first and last node. This does not access the
+     * node maps and can be called concurrently.
+     */
+    private void setArtificialWayTags(ReaderWay way, double firstLat, double firstLon, double lastLat, double lastLon) {
         GHPoint estimatedCenter = null;
         if (!Double.isNaN(firstLat) && !Double.isNaN(firstLon) && !Double.isNaN(lastLat) && !Double.isNaN(lastLon)) {
             double estimatedDist = distCalc.calcDist(firstLat, firstLon, lastLat, lastLon);
@@ -446,16 +557,36 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
 
     protected void processRelation(ReaderRelation relation) {
         if (tcs != null && relation.hasTag("type", "restriction"))
-            storeTurnRelation(createTurnRelations(relation));
+            pendingTurnRelations.addAll(createTurnRelations(relation));
     }
 
-    void storeTurnRelation(List<OSMTurnRelation> turnRelations) {
-        for (OSMTurnRelation turnRelation : turnRelations) {
-            int viaNode = getInternalNodeIdOfOsmNode(turnRelation.getViaOsmNodeId());
+    /**
+     * Stores the collected turn relations sorted by their via node. This way the turn cost entries of a node are
+     * stored next to each other in the TurnCostStorage, which makes the lookups at query time faster, and the edges of
+     * the via nodes are explored in the order of the graph.
+     */
+    void storeTurnRelations() {
+        if (pendingTurnRelations.isEmpty())
+            return;
+
+        StopWatch sw = new StopWatch().start();
+        // the via node in the upper and the index of the relation in the lower bits, so relations with the same via
+        // node keep their order
+        long[] sortKeys = new long[pendingTurnRelations.size()];
+        int count = 0;
+        for (int i = 0; i < pendingTurnRelations.size(); i++) {
+            int viaNode = getInternalNodeIdOfOsmNode(pendingTurnRelations.get(i).getViaOsmNodeId());
             // street with restriction was not included (access or tag limits etc)
             if (viaNode != EMPTY_NODE)
-                encodingManager.handleTurnRelationTags(turnRelation, this, graph);
+                sortKeys[count++] = ((long) viaNode << 32) | i;
         }
+        Arrays.sort(sortKeys, 0, count);
+        for (int i = 0; i < count; i++) {
+            encodingManager.handleTurnRelationTags(pendingTurnRelations.get((int) sortKeys[i]), this, graph);
+        }
+        LOGGER.info("Stored " + nf(count) + " of " + nf(pendingTurnRelations.size()) + " turn relations, took: "
+                + sw.stop().getSeconds() + "s");
+        pendingTurnRelations.clear();
     }
 
     /**
@@ -510,7 +641,9 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
     }
 
     protected void processNode(ReaderNode node) {
-        addNode(node);
+        // skip nodes that are not used by the ways, this needs only one lookup in the node map for all nodes
+        if (!addNode(node))
+            return;
 
         // analyze node tags for barriers
         if (node.hasTags()) {
@@ -572,9 +705,12 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
         if (tmpGHNodeId == EMPTY_NODE) {
             // this is the first time we see this osmId
             getNodeMap().put(osmId, PILLAR_NODE);
+            pillarNodes++;
         } else if (tmpGHNodeId > EMPTY_NODE) {
             // mark node as tower node as it now occurred for at least the second time
             getNodeMap().put(osmId, TOWER_NODE);
+            pillarNodes--;
+            towerNodes++;
         } else {
             // tmpIndex is already negative (already tower node)
         }
@@ -809,14 +945,38 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
 
     protected void finishedReading() {
         printInfo("way");
-        pillarInfo.clear();
+        if (wayFlagsCache != null) {
+            LOGGER.info(wayFlagsCache.toString());
+            wayFlagsCache.clear();
+            wayFlagsCache = null;
+        }
         encodingManager.releaseParsers();
         eleProvider.release();
-        osmNodeIdToInternalNodeMap = null;
+        releaseTemporaryStorage();
+    }
+
+    /**
+     * Removes the temporary data structures needed to read an OSM file. Subclasses reading other sources can call
+     * this right after construction, which also allows several readers for the same graph directory.
+     */
+    protected void releaseTemporaryStorage() {
+        memoryBudget.unregister("osm_node_map");
+        memoryBudget.unregister("pillar_info");
+        memoryBudget.unregister("node_flags_map");
+        memoryBudget.unregister("relation_flags_map");
+        if (pillarInfo != null) {
+            pillarInfo.clear();
+            pillarInfo = null;
+        }
+        if (osmNodeIdToInternalNodeMap != null) {
+            osmNodeIdToInternalNodeMap.clear();
+            osmNodeIdToInternalNodeMap = null;
+        }
         osmNodeIdToNodeFlagsMap = null;
         osmWayIdToRelationFlagsMap = null;
         osmWayIdSet = null;
         edgeIdToOsmWayIdMap = null;
+        pendingTurnRelations = null;
     }
 
     /**
@@ -944,10 +1104,18 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
     }
 
     IntsRef getRelFlagsMap(long osmId) {
+        return getRelFlagsMap(osmId, tempRelFlags);
+    }
+
+    /**
+     * Reads the relation flags of the specified way into relFlags. Other than getRelFlagsMap(long) this can be
+     * called concurrently, as the relation flags are no longer changed when the ways are processed.
+     */
+    private IntsRef getRelFlagsMap(long osmId, IntsRef relFlags) {
         long relFlagsAsLong = osmWayIdToRelationFlagsMap.get(osmId);
-        tempRelFlags.ints[0] = (int) relFlagsAsLong;
-        tempRelFlags.ints[1] = (int) (relFlagsAsLong >> 32);
-        return tempRelFlags;
+        relFlags.ints[0] = (int) relFlagsAsLong;
+        relFlags.ints[1] = (int) (relFlagsAsLong >> 32);
+        return relFlags;
     }
 
     void putRelFlagsMap(long osmId, IntsRef relFlags) {
@@ -985,10 +1153,17 @@ public class OSMReader implements TurnCostParser.ExternalInternalMap {
         LOGGER.info("finished " + str + " processing." + " nodes: " + graph.getNodes()
                 + ", osmIdMap.size:" + getNodeMap().getSize() + ", osmIdMap:" + getNodeMap().getMemoryUsage() + "MB"
                 + ", nodeFlagsMap.size:" + getNodeFlagsMap().size() + ", relFlagsMap.size:" + getRelFlagsMapSize()
-                + ", zeroCounter:" + zeroCounter
+                + ", zeroCounter:" + zeroCounter + ", heap usage: " + memoryBudget
                 + " " + Helper.getMemInfo());
     }
 
+    /**
+     * @return the budget that tracks the heap used by the import, subclasses can register their own structures
+     */
+    protected MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
     /**
      * @return the timestamp given in the OSM file header or null if not found
      */
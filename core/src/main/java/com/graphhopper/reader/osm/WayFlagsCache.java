@@ -0,0 +1,166 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.IntsRef;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the edge flags calculated for a set of way tags, because many ways share exactly the same tags like
+ * highway=residential and running all tag parsers and flag encoders again for them is wasted time.
+ * <p>
+ * The key of a way consists of its tags, the relation flags and the artificial tags that depend on the location of
+ * the way but not on its geometry, i.e. the country and the custom areas. The country rule follows from the country
+ * and is not part of the key. Tags not read by the parsers like the name are ignored, so e.g. residential streets
+ * with different names share one entry. Ferries are not cached as their speed depends on the estimated_distance.
+ * <p>
+ * This class is thread-safe. If the cache is full it is cleared, which is simple and keeps the frequent tag sets.
+ */
+class WayFlagsCache {
+    // artificial tags that are not part of the key, see OSMReader.setArtificialWayTags
+    private static final Set<String> ARTIFICIAL_KEYS = new HashSet<>(Arrays.asList(
+            "estimated_distance", "estimated_center", "duration:seconds", "country_rule"));
+    // keep config-example.yml in sync with these keys and prefixes
+    private static final Set<String> IGNORED_KEYS = new HashSet<>(Arrays.asList(
+            "name", "alt_name", "old_name", "loc_name", "official_name", "short_name", "int_name", "ref", "int_ref",
+            "note", "fixme", "description", "source", "created_by", "wikidata", "wikipedia"));
+    private static final String[] IGNORED_PREFIXES = {"name:", "alt_name:", "old_name:", "addr:", "note:", "tiger:"};
+    private final Map<Key, IntsRef> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    WayFlagsCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Calculates the edge flags of the specified way or takes them from the cache. The artificial way tags must
+     * already be set.
+     */
+    IntsRef handleWayTags(EncodingManager encodingManager, ReaderWay way, EncodingManager.AcceptWay acceptWay, IntsRef relationFlags) {
+        Key key = acceptWay.isFerry() || way.hasTag("route") ? null : createKey(way, relationFlags);
+        if (key == null)
+            return encodingManager.handleWayTags(way, acceptWay, relationFlags);
+
+        IntsRef edgeFlags = cache.get(key);
+        if (edgeFlags != null) {
+            hits.incrementAndGet();
+            // the edge flags could be changed by the caller
+            return IntsRef.deepCopyOf(edgeFlags);
+        }
+        misses.incrementAndGet();
+        edgeFlags = encodingManager.handleWayTags(way, acceptWay, relationFlags);
+        if (cache.size() >= maxSize)
+            cache.clear();
+        cache.put(key, IntsRef.deepCopyOf(edgeFlags));
+        return edgeFlags;
+    }
+
+    /**
+     * @return the key for the specified way or null if the way cannot be cached
+     */
+    static Key createKey(ReaderWay way, IntsRef relationFlags) {
+        List<String> tags = new ArrayList<>();
+        List<Object> artificialTags = new ArrayList<>(2);
+        for (int i = 0; i < way.getTagCount(); i++) {
+            String tagKey = way.getTagKey(i);
+            if (ARTIFICIAL_KEYS.contains(tagKey) || isIgnored(tagKey))
+                continue;
+            Object value = way.getTagValue(i);
+            if (value instanceof String) {
+                tags.add(tagKey + "=" + value);
+            } else if (tagKey.equals("country") || tagKey.equals("custom_areas")) {
+                // the custom areas do not override equals, i.e. they are compared by identity
+                artificialTags.add(tagKey);
+                artificialTags.add(value);
+            } else {
+                // an unknown tag that was set programmatically, it is safer not to cache such a way
+                return null;
+            }
+        }
+        Collections.sort(tags);
+        return new Key(tags.toArray(new String[0]),
+                Arrays.copyOfRange(relationFlags.ints, relationFlags.offset, relationFlags.offset + relationFlags.length),
+                artificialTags);
+    }
+
+    private static boolean isIgnored(String tagKey) {
+        if (IGNORED_KEYS.contains(tagKey))
+            return true;
+        for (String prefix : IGNORED_PREFIXES) {
+            if (tagKey.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get(), m = misses.get();
+        return "way flags cache hits: " + h + ", misses: " + m + ", hit rate: "
+                + (h + m == 0 ? 0 : Math.round(100.0 * h / (h + m))) + "%";
+    }
+
+    static final class Key {
+        private final String[] tags;
+        private final int[] relationFlags;
+        private final List<Object> artificialTags;
+        private final int hashCode;
+
+        Key(String[] tags, int[] relationFlags, List<Object> artificialTags) {
+            this.tags = tags;
+            this.relationFlags = relationFlags;
+            this.artificialTags = artificialTags;
+            this.hashCode = 31 * (31 * Arrays.hashCode(tags) + Arrays.hashCode(relationFlags)) + artificialTags.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode && Arrays.equals(tags, key.tags)
+                    && Arrays.equals(relationFlags, key.relationFlags) && artificialTags.equals(key.artificialTags);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.storage.IntsRef;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Prepares the ways of an OSM file on worker threads and writes them in the original order on the calling thread.
+ * The ways are collected into batches which are prepared concurrently, i.e. everything that only depends on the way
+ * itself like the tag parsing. Writing a way resolves the OSM node IDs and appends the edges to the graph, so it
+ * happens for one batch after another on the single thread that also adds the ways. This way the created graph is
+ * identical to the one created without the pipeline.
+ * <p>
+ * To limit the memory usage the number of pending batches is limited, if this limit is reached the oldest batch is
+ * written before the next one is queued.
+ */
+class WayPipeline implements Closeable {
+    private final ExecutorService executorService;
+    private final Consumer<PreparedWay> prepareHandler;
+    private final Consumer<PreparedWay> writeHandler;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final ArrayDeque<Future<List<PreparedWay>>> pendingBatches = new ArrayDeque<>();
+    private List<PreparedWay> batch;
+
+    WayPipeline(int threads, int batchSize, Consumer<PreparedWay> prepareHandler, Consumer<PreparedWay> writeHandler) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required but was " + threads);
+        this.executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "way-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.prepareHandler = prepareHandler;
+        this.writeHandler = writeHandler;
+        this.batchSize = batchSize;
+        this.maxPendingBatches = threads * 2;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Adds the specified way to the current batch. This might write older batches, so it must be called from the
+     * thread that creates the graph.
+     */
+    void add(PreparedWay way) {
+        batch.add(way);
+        if (batch.size() >= batchSize)
+            submitBatch();
+    }
+
+    /**
+     * Writes all ways that were added so far, afterwards the graph contains all their edges.
+     */
+    void finish() {
+        if (!batch.isEmpty())
+            submitBatch();
+        while (!pendingBatches.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * @return true if there are ways that were added but not yet written
+     */
+    boolean isPending() {
+        return !batch.isEmpty() || !pendingBatches.isEmpty();
+    }
+
+    private void submitBatch() {
+        final List<PreparedWay> ways = batch;
+        batch = new ArrayList<>(batchSize);
+        pendingBatches.add(executorService.submit(() -> {
+            for (PreparedWay way : ways) {
+                prepareHandler.accept(way);
+            }
+            return ways;
+        }));
+        while (pendingBatches.size() > maxPendingBatches) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() {
+        List<PreparedWay> ways;
+        try {
+            ways = pendingBatches.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for prepared ways", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new RuntimeException(ex.getCause());
+        }
+        for (PreparedWay way : ways) {
+            writeHandler.accept(way);
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * A way together with the data that is needed to prepare it without accessing the node maps of the OSMReader and
+     * the result of the preparation.
+     */
+    static class PreparedWay {
+        final ReaderWay way;
+        final double firstLat, firstLon, lastLat, lastLon;
+        // null if the way is not accepted or no edge flags are set, i.e. there is nothing to write
+        IntsRef edgeFlags;
+
+        PreparedWay(ReaderWay way, double firstLat, double firstLon, double lastLat, double lastLon) {
+            this.way = way;
+            this.firstLat = firstLat;
+            this.firstLon = firstLon;
+            this.lastLat = lastLat;
+            this.lastLon = lastLon;
+        }
+    }
+}
@@ -1,15 +1,17 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
-import com.carrotsearch.hppc.LongIndexedContainer;
-import com.google.protobuf.InvalidProtocolBufferException;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.osm.OSMFileHeader;
+import com.graphhopper.reader.osm.SkipOptions;
 import com.graphhopper.util.Helper;
-import org.openstreetmap.osmosis.osmbinary.Fileformat;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,15 +25,23 @@ import java.util.zip.Inflater;
  * Converts PBF block data into decoded entities ready to be passed into an Osmosis pipeline. This
  * class is designed to be passed into a pool of worker threads to allow multi-threaded decoding.
  * <p>
+ * The blobs are decoded directly from the protobuf wire format instead of creating the generated message objects.
+ * The zlib data is inflated from the raw blob into a buffer that is reused by the worker thread, the packed fields
+ * of the dense nodes and ways are read into reused primitive lists and the strings are only decoded when they are
+ * used. Element types that are skipped via the SkipOptions are not decoded at all.
+ * <p>
  *
  * @author Brett Henderson
  */
 public class PbfBlobDecoder implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
+    // the buffers are reused for all blobs that are decoded by the same worker thread
+    private static final ThreadLocal<DecodeBuffers> BUFFERS = ThreadLocal.withInitial(DecodeBuffers::new);
     private final boolean checkData = false;
     private final String blobType;
     private final byte[] rawBlob;
     private final PbfBlobDecoderListener listener;
+    private final SkipOptions skipOptions;
     private List<ReaderElement> decodedEntities;
 
     /**
@@ -43,40 +53,86 @@ public class PbfBlobDecoder implements Runnable {
      * @param listener The listener for receiving decoding results.
      */
     public PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener) {
+        this(blobType, rawBlob, listener, SkipOptions.none());
+    }
+
+    /**
+     * Creates a new instance.
+     * <p>
+     *
+     * @param blobType    The type of blob.
+     * @param rawBlob     The raw data of the blob.
+     * @param listener    The listener for receiving decoding results.
+     * @param skipOptions The element types that are not decoded.
+     */
+    public PbfBlobDecoder(String blobType, byte[] rawBlob, PbfBlobDecoderListener listener, SkipOptions skipOptions) {
         this.blobType = blobType;
         this.rawBlob = rawBlob;
         this.listener = listener;
+        this.skipOptions = skipOptions;
     }
 
-    private byte[] readBlobContent() throws IOException {
-        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
-
-        if (blob.hasRaw()) {
-            blobData = blob.getRaw().toByteArray();
-        } else if (blob.hasZlibData()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
-            try {
-                inflater.inflate(blobData);
-            } catch (DataFormatException e) {
-                throw new RuntimeException("Unable to decompress PBF blob.", e);
-            }
-            if (!inflater.finished()) {
-                throw new RuntimeException("PBF blob contains incomplete compressed data.");
+    /**
+     * Reads the content of the blob, i.e. the uncompressed data is either taken directly from the raw blob or
+     * inflated into the data buffer of the specified buffers.
+     */
+    private BlobContent readBlobContent(DecodeBuffers buffers) throws IOException {
+        int rawSize = -1;
+        int rawOffset = -1, rawLength = 0;
+        int zlibOffset = -1, zlibLength = 0;
+        CodedInputStream in = CodedInputStream.newInstance(rawBlob);
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    rawLength = in.readRawVarint32();
+                    rawOffset = in.getTotalBytesRead();
+                    in.skipRawBytes(rawLength);
+                    break;
+                case 2:
+                    rawSize = in.readInt32();
+                    break;
+                case 3:
+                    zlibLength = in.readRawVarint32();
+                    zlibOffset = in.getTotalBytesRead();
+                    in.skipRawBytes(zlibLength);
+                    break;
+                default:
+                    in.skipField(tag);
             }
-            inflater.end();
-        } else {
-            throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
 
-        return blobData;
-    }
+        if (rawOffset >= 0)
+            return new BlobContent(rawBlob, rawOffset, rawLength);
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
+        if (zlibOffset < 0)
+            throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
+        if (rawSize < 0)
+            throw new RuntimeException("PBF blob with zlib data does not specify the raw size.");
+
+        byte[] data = buffers.getData(rawSize);
+        Inflater inflater = buffers.inflater;
+        inflater.reset();
+        inflater.setInput(rawBlob, zlibOffset, zlibLength);
+        int length = 0;
+        try {
+            while (length < rawSize) {
+                int inflated = inflater.inflate(data, length, rawSize - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Unable to decompress PBF blob.", e);
+        }
+        if (!inflater.finished()) {
+            throw new RuntimeException("PBF blob contains incomplete compressed data.");
+        }
+        return new BlobContent(data, 0, length);
+    }
 
+    private void processOsmHeader(BlobContent content) throws IOException {
+        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(content.createInputStream());
         // Build the list of active and unsupported features in the file.
         List<String> supportedFeatures = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
         List<String> unsupportedFeatures = new ArrayList<>();
@@ -116,7 +172,7 @@ public class PbfBlobDecoder implements Runnable {
          */
     }
 
-    private Map<String, String> buildTags(List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
+    private void setTags(ReaderElement element, List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
@@ -126,37 +182,62 @@ public class PbfBlobDecoder implements Runnable {
             }
         }
 
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext()) {
-            Map<String, String> tags = new HashMap<>(keys.size());
-            while (keyIterator.hasNext()) {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
-            }
-            return tags;
+        for (int i = 0; i < keys.size(); i++) {
+            element.setTag(fieldDecoder.decodeString(keys.get(i)), fieldDecoder.decodeString(values.get(i)));
         }
-        return null;
     }
 
-    private void processNodes(List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Node node : nodes) {
-            Map<String, String> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
-
-            ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node
-                    .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-            osmNode.setTags(tags);
+    private void setTags(ReaderElement element, IntArrayList keys, IntArrayList values, PbfFieldDecoder fieldDecoder) {
+        if (checkData) {
+            if (keys.size() != values.size()) {
+                throw new RuntimeException("Number of tag keys (" + keys.size() + ") and tag values ("
+                        + values.size() + ") don't match");
+            }
+        }
 
-            // Add the bound object to the results.
-            decodedEntities.add(osmNode);
+        for (int i = 0; i < keys.size(); i++) {
+            element.setTag(fieldDecoder.decodeString(keys.get(i)), fieldDecoder.decodeString(values.get(i)));
         }
     }
 
-    private void processNodes(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
-        List<Long> idList = nodes.getIdList();
-        List<Long> latList = nodes.getLatList();
-        List<Long> lonList = nodes.getLonList();
+    private void processNode(Osmformat.Node node, PbfFieldDecoder fieldDecoder) {
+        ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node.getLat()),
+                fieldDecoder.decodeLongitude(node.getLon()));
+        setTags(osmNode, node.getKeysList(), node.getValsList(), fieldDecoder);
+
+        // Add the bound object to the results.
+        decodedEntities.add(osmNode);
+    }
+
+    private void processDenseNodes(CodedInputStream in, DecodeBuffers buffers, PbfFieldDecoder fieldDecoder) throws IOException {
+        LongArrayList idList = buffers.ids;
+        LongArrayList latList = buffers.lats;
+        LongArrayList lonList = buffers.lons;
+        IntArrayList keysValsList = buffers.keysVals;
+        idList.clear();
+        latList.clear();
+        lonList.clear();
+        keysValsList.clear();
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    readSInt64s(in, tag, idList);
+                    break;
+                case 8:
+                    readSInt64s(in, tag, latList);
+                    break;
+                case 9:
+                    readSInt64s(in, tag, lonList);
+                    break;
+                case 10:
+                    readInt32s(in, tag, keysValsList);
+                    break;
+                default:
+                    // the dense info with the versions, timestamps and users is not needed
+                    in.skipField(tag);
+            }
+        }
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
@@ -166,105 +247,85 @@ public class PbfBlobDecoder implements Runnable {
             }
         }
 
-        Iterator<Integer> keysValuesIterator = nodes.getKeysValsList().iterator();
-
-        /*
-         Osmformat.DenseInfo denseInfo;
-         if (nodes.hasDenseinfo()) {
-         denseInfo = nodes.getDenseinfo();
-         } else {
-         denseInfo = null;
-         }
-         */
         long nodeId = 0;
         long latitude = 0;
         long longitude = 0;
-//		int userId = 0;
-//		int userSid = 0;
-//		long timestamp = 0;
-//		long changesetId = 0;
+        int keysValsIndex = 0;
         for (int i = 0; i < idList.size(); i++) {
             // Delta decode node fields.
             nodeId += idList.get(i);
             latitude += latList.get(i);
             longitude += lonList.get(i);
 
-            /*
-             if (denseInfo != null) {
-             // Delta decode dense info fields.
-             userId += denseInfo.getUid(i);
-             userSid += denseInfo.getUserSid(i);
-             timestamp += denseInfo.getTimestamp(i);
-             changesetId += denseInfo.getChangeset(i);
-
-             // Build the user, but only if one exists.
-             OsmUser user;
-             if (userId >= 0) {
-             user = new OsmUser(userId, fieldDecoder.decodeString(userSid));
-             } else {
-             user = OsmUser.NONE;
-             }
-
-             entityData = new CommonEntityData(nodeId, denseInfo.getVersion(i),
-             fieldDecoder.decodeTimestamp(timestamp), user, changesetId);
-             } else {
-             entityData = new CommonEntityData(nodeId, EMPTY_VERSION, EMPTY_TIMESTAMP, OsmUser.NONE,
-             EMPTY_CHANGESET);
-             }
-             */
+            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
+
             // Build the tags. The key and value string indexes are sequential
             // in the same PBF array. Each set of tags is delimited by an index
             // with a value of 0.
-            Map<String, String> tags = null;
-            while (keysValuesIterator.hasNext()) {
-                int keyIndex = keysValuesIterator.next();
+            while (keysValsIndex < keysValsList.size()) {
+                int keyIndex = keysValsList.get(keysValsIndex++);
                 if (keyIndex == 0) {
                     break;
                 }
                 if (checkData) {
-                    if (!keysValuesIterator.hasNext()) {
+                    if (keysValsIndex >= keysValsList.size()) {
                         throw new RuntimeException(
                                 "The PBF DenseInfo keys/values list contains a key with no corresponding value.");
                     }
                 }
-                int valueIndex = keysValuesIterator.next();
-
-                if (tags == null) {
-                    // divide by 2 as key&value, multiple by 2 because of the better approximation
-                    tags = new HashMap<>(Math.max(3, 2 * (nodes.getKeysValsList().size() / 2) / idList.size()));
-                }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                int valueIndex = keysValsList.get(keysValsIndex++);
+                node.setTag(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
             }
 
-            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
-            node.setTags(tags);
-
             // Add the bound object to the results.
             decodedEntities.add(node);
         }
     }
 
-    private void processWays(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Way way : ways) {
-            Map<String, String> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
-            ReaderWay osmWay = new ReaderWay(way.getId());
-            osmWay.setTags(tags);
-
-            // Build up the list of way nodes for the way. The node ids are
-            // delta encoded meaning that each id is stored as a delta against
-            // the previous one.
-            long nodeId = 0;
-            LongIndexedContainer wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList()) {
-                nodeId += nodeIdOffset;
-                wayNodes.add(nodeId);
+    private void processWay(CodedInputStream in, DecodeBuffers buffers, PbfFieldDecoder fieldDecoder) throws IOException {
+        long id = 0;
+        IntArrayList keys = buffers.keys;
+        IntArrayList values = buffers.values;
+        LongArrayList refs = buffers.ids;
+        keys.clear();
+        values.clear();
+        refs.clear();
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    id = in.readInt64();
+                    break;
+                case 2:
+                    readInt32s(in, tag, keys);
+                    break;
+                case 3:
+                    readInt32s(in, tag, values);
+                    break;
+                case 8:
+                    readSInt64s(in, tag, refs);
+                    break;
+                default:
+                    in.skipField(tag);
             }
+        }
+
+        ReaderWay osmWay = new ReaderWay(id);
+        setTags(osmWay, keys, values, fieldDecoder);
 
-            decodedEntities.add(osmWay);
+        // Build up the list of way nodes for the way. The node ids are
+        // delta encoded meaning that each id is stored as a delta against
+        // the previous one.
+        long nodeId = 0;
+        LongArrayList wayNodes = osmWay.getNodes();
+        wayNodes.ensureCapacity(refs.size());
+        for (int i = 0; i < refs.size(); i++) {
+            nodeId += refs.get(i);
+            wayNodes.add(nodeId);
         }
-    }
 
+        decodedEntities.add(osmWay);
+    }
     private void buildRelationMembers(ReaderRelation relation,
                                       List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
                                       PbfFieldDecoder fieldDecoder) {
@@ -306,41 +367,140 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
-    private void processRelations(List<Osmformat.Relation> relations, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Relation relation : relations) {
-            Map<String, String> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
+    private void processRelation(Osmformat.Relation relation, PbfFieldDecoder fieldDecoder) {
+        ReaderRelation osmRelation = new ReaderRelation(relation.getId());
+        setTags(osmRelation, relation.getKeysList(), relation.getValsList(), fieldDecoder);
+
+        buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
+                relation.getTypesList(), fieldDecoder);
 
-            ReaderRelation osmRelation = new ReaderRelation(relation.getId());
-            osmRelation.setTags(tags);
+        // Add the bound object to the results.
+        decodedEntities.add(osmRelation);
+    }
 
-            buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
-                    relation.getTypesList(), fieldDecoder);
+    private void processOsmPrimitives(BlobContent content, DecodeBuffers buffers) throws IOException {
+        int stringTableOffset = -1, stringTableLength = 0;
+        IntArrayList groups = new IntArrayList();
+        int granularity = 100;
+        int dateGranularity = 1000;
+        long latOffset = 0, lonOffset = 0;
+        CodedInputStream in = content.createInputStream();
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    stringTableLength = in.readRawVarint32();
+                    stringTableOffset = content.offset + in.getTotalBytesRead();
+                    in.skipRawBytes(stringTableLength);
+                    break;
+                case 2:
+                    int groupLength = in.readRawVarint32();
+                    groups.add(content.offset + in.getTotalBytesRead(), groupLength);
+                    in.skipRawBytes(groupLength);
+                    break;
+                case 17:
+                    granularity = in.readInt32();
+                    break;
+                case 18:
+                    dateGranularity = in.readInt32();
+                    break;
+                case 19:
+                    latOffset = in.readInt64();
+                    break;
+                case 20:
+                    lonOffset = in.readInt64();
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
 
-            // Add the bound object to the results.
-            decodedEntities.add(osmRelation);
+        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(content.data, stringTableOffset, stringTableLength,
+                granularity, latOffset, lonOffset, dateGranularity);
+        for (int i = 0; i < groups.size(); i += 2) {
+            processPrimitiveGroup(CodedInputStream.newInstance(content.data, groups.get(i), groups.get(i + 1)),
+                    buffers, fieldDecoder);
         }
     }
 
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
-        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
+    private void processPrimitiveGroup(CodedInputStream in, DecodeBuffers buffers, PbfFieldDecoder fieldDecoder) throws IOException {
+        while (!in.isAtEnd()) {
+            int tag = in.readTag();
+            int field = WireFormat.getTagFieldNumber(tag);
+            boolean skip;
+            switch (field) {
+                case 1:
+                case 2:
+                    skip = skipOptions.isSkipNodes();
+                    break;
+                case 3:
+                    skip = skipOptions.isSkipWays();
+                    break;
+                case 4:
+                    skip = skipOptions.isSkipRelations();
+                    break;
+                default:
+                    // e.g. changesets
+                    skip = true;
+            }
+            if (skip) {
+                in.skipField(tag);
+                continue;
+            }
 
-        for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
-            processNodes(primitiveGroup.getDense(), fieldDecoder);
-            processNodes(primitiveGroup.getNodesList(), fieldDecoder);
-            processWays(primitiveGroup.getWaysList(), fieldDecoder);
-            processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+            int length = in.readRawVarint32();
+            int oldLimit = in.pushLimit(length);
+            if (field == 1)
+                processNode(Osmformat.Node.parseFrom(in), fieldDecoder);
+            else if (field == 2)
+                processDenseNodes(in, buffers, fieldDecoder);
+            else if (field == 3)
+                processWay(in, buffers, fieldDecoder);
+            else
+                processRelation(Osmformat.Relation.parseFrom(in), fieldDecoder);
+            in.popLimit(oldLimit);
         }
     }
 
+    /**
+     * Reads a repeated sint64 field which is usually packed but might also be stored as single values.
+     */
+    private static void readSInt64s(CodedInputStream in, int tag, LongArrayList list) throws IOException {
+        if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            list.add(in.readSInt64());
+            return;
+        }
+        int oldLimit = in.pushLimit(in.readRawVarint32());
+        while (in.getBytesUntilLimit() > 0) {
+            list.add(in.readSInt64());
+        }
+        in.popLimit(oldLimit);
+    }
+
+    /**
+     * Reads a repeated int32 or uint32 field which is usually packed but might also be stored as single values.
+     */
+    private static void readInt32s(CodedInputStream in, int tag, IntArrayList list) throws IOException {
+        if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+            list.add(in.readInt32());
+            return;
+        }
+        int oldLimit = in.pushLimit(in.readRawVarint32());
+        while (in.getBytesUntilLimit() > 0) {
+            list.add(in.readInt32());
+        }
+        in.popLimit(oldLimit);
+    }
+
     private void runAndTrapExceptions() {
         try {
             decodedEntities = new ArrayList<>();
             if ("OSMHeader".equals(blobType)) {
-                processOsmHeader(readBlobContent());
+                processOsmHeader(readBlobContent(BUFFERS.get()));
 
             } else if ("OSMData".equals(blobType)) {
-                processOsmPrimitives(readBlobContent());
+                DecodeBuffers buffers = BUFFERS.get();
+                processOsmPrimitives(readBlobContent(buffers), buffers);
 
             } else if (log.isDebugEnabled())
                 log.debug("Skipping unrecognised blob type " + blobType);
@@ -360,4 +520,41 @@ public class PbfBlobDecoder implements Runnable {
             listener.error(e);
         }
     }
+
+    private static class BlobContent {
+        final byte[] data;
+        final int offset;
+        final int length;
+
+        BlobContent(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        CodedInputStream createInputStream() {
+            return CodedInputStream.newInstance(data, offset, length);
+        }
+    }
+
+    /**
+     * The buffers of one worker thread. They are only used while a blob is decoded, the decoded elements do not
+     * reference them.
+     */
+    private static class DecodeBuffers {
+        final Inflater inflater = new Inflater();
+        final LongArrayList ids = new LongArrayList();
+        final LongArrayList lats = new LongArrayList();
+        final LongArrayList lons = new LongArrayList();
+        final IntArrayList keysVals = new IntArrayList();
+        final IntArrayList keys = new IntArrayList();
+        final IntArrayList values = new IntArrayList();
+        private byte[] data = new byte[0];
+
+        byte[] getData(int size) {
+            if (data.length < size)
+                data = new byte[size];
+            return data;
+        }
+    }
 }
@@ -2,6 +2,7 @@
 package com.graphhopper.reader.osm.pbf;
 
 import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.osm.SkipOptions;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -23,6 +24,7 @@ public class PbfDecoder {
     private final ExecutorService executorService;
     private final int maxPendingBlobs;
     private final Sink sink;
+    private final SkipOptions skipOptions;
     private final Lock lock;
     private final Condition dataWaitCondition;
     private final Queue<PbfBlobResult> blobResults;
@@ -38,10 +40,26 @@ public class PbfDecoder {
      */
     public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
                       Sink sink) {
+        this(streamSplitter, executorService, maxPendingBlobs, sink, SkipOptions.none());
+    }
+
+    /**
+     * Creates a new instance.
+     * <p>
+     *
+     * @param streamSplitter  The PBF stream splitter providing the source of blobs to be decoded.
+     * @param executorService The executor service managing the thread pool.
+     * @param maxPendingBlobs The maximum number of blobs to have in progress at any point in time.
+     * @param sink            The sink to send all decoded entities to.
+     * @param skipOptions     The element types that are not decoded.
+     */
+    public PbfDecoder(PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
+                      Sink sink, SkipOptions skipOptions) {
         this.streamSplitter = streamSplitter;
         this.executorService = executorService;
         this.maxPendingBlobs = maxPendingBlobs;
         this.sink = sink;
+        this.skipOptions = skipOptions;
 
         // Create the thread synchronisation primitives.
         lock = new ReentrantLock();
@@ -140,7 +158,7 @@ public class PbfDecoder {
             };
 
             // Create the blob decoder itself and execute it on a worker thread.
-            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener);
+            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener, skipOptions);
             executorService.execute(blobDecoder);
 
             // If the number of pending blobs has reached capacity we must begin
@@ -1,8 +1,13 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
 /**
@@ -15,6 +20,10 @@ import java.util.Date;
 public class PbfFieldDecoder {
     private static final double COORDINATE_SCALING_FACTOR = 0.000000001;
     private String[] strings;
+    // if not null the strings are decoded from these bytes when they are first used
+    private byte[] stringBytes;
+    private int[] stringOffsets;
+    private int[] stringLengths;
     private int coordGranularity;
     private long coordLatitudeOffset;
     private long coordLongitudeOffset;
@@ -39,6 +48,43 @@ public class PbfFieldDecoder {
         }
     }
 
+    /**
+     * Creates a new instance that decodes the strings of the string table lazily, i.e. strings that are only used by
+     * skipped elements are never decoded. The data must not be changed while this instance is used.
+     *
+     * @param data              The decompressed primitive block.
+     * @param stringTableOffset The offset of the string table message in data or -1 if there is none.
+     * @param stringTableLength The length of the string table message.
+     */
+    PbfFieldDecoder(byte[] data, int stringTableOffset, int stringTableLength, int coordGranularity,
+                    long coordLatitudeOffset, long coordLongitudeOffset, int dateGranularity) throws IOException {
+        this.coordGranularity = coordGranularity;
+        this.coordLatitudeOffset = coordLatitudeOffset;
+        this.coordLongitudeOffset = coordLongitudeOffset;
+        this.dateGranularity = dateGranularity;
+
+        IntArrayList offsets = new IntArrayList();
+        IntArrayList lengths = new IntArrayList();
+        if (stringTableOffset >= 0) {
+            CodedInputStream in = CodedInputStream.newInstance(data, stringTableOffset, stringTableLength);
+            while (!in.isAtEnd()) {
+                int tag = in.readTag();
+                if (WireFormat.getTagFieldNumber(tag) != 1) {
+                    in.skipField(tag);
+                    continue;
+                }
+                int length = in.readRawVarint32();
+                offsets.add(stringTableOffset + in.getTotalBytesRead());
+                lengths.add(length);
+                in.skipRawBytes(length);
+            }
+        }
+        this.stringBytes = data;
+        this.stringOffsets = offsets.toArray();
+        this.stringLengths = lengths.toArray();
+        this.strings = new String[stringOffsets.length];
+    }
+
     /**
      * Decodes a raw latitude value into degrees.
      * <p>
@@ -80,6 +126,11 @@ public class PbfFieldDecoder {
      * @return The string as a String.
      */
     public String decodeString(int rawString) {
-        return strings[rawString];
+        String string = strings[rawString];
+        if (string == null && stringBytes != null) {
+            string = new String(stringBytes, stringOffsets[rawString], stringLengths[rawString], StandardCharsets.UTF_8);
+            strings[rawString] = string;
+        }
+        return string;
     }
 }
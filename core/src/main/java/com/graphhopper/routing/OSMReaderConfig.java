@@ -24,6 +24,9 @@ public class OSMReaderConfig {
     private boolean smoothElevation = false;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private int wayThreads = 1;
+    private int wayFlagsCacheSize = 0;
+    private int memoryBudget = 0;
 
     public double getMaxWayPointDistance() {
         return maxWayPointDistance;
@@ -85,4 +88,46 @@ public class OSMReaderConfig {
         this.workerThreads = workerThreads;
         return this;
     }
+
+    public int getWayThreads() {
+        return wayThreads;
+    }
+
+    /**
+     * Sets the number of threads used to parse the tags of the ways. With more than one thread the edge flags are
+     * calculated concurrently, while the edges are still created in the order of the OSM file. The default is 1,
+     * i.e. the ways are processed sequentially.
+     */
+    public OSMReaderConfig setWayThreads(int wayThreads) {
+        this.wayThreads = wayThreads;
+        return this;
+    }
+
+    public int getWayFlagsCacheSize() {
+        return wayFlagsCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of tag sets for which the calculated edge flags are remembered, so that ways with the
+     * same tags are not parsed again. The default is 0, i.e. the cache is disabled. Tags like the name, ref, source or
+     * addr:* are not part of the key, so only enable it if no tag parser reads them, see WayFlagsCache.
+     */
+    public OSMReaderConfig setWayFlagsCacheSize(int wayFlagsCacheSize) {
+        this.wayFlagsCacheSize = wayFlagsCacheSize;
+        return this;
+    }
+
+    public int getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the maximum heap in MB used by the big data structures of the import, i.e. the temporary node maps and the
+     * graph itself if it is kept in memory. If it is exceeded the temporary structures are moved to memory-mapped
+     * files. The default is 0, i.e. no limit.
+     */
+    public OSMReaderConfig setMemoryBudget(int memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
 }
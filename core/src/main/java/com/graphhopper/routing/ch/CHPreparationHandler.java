@@ -179,27 +179,47 @@ public class CHPreparationHandler {
     }
 
     public void prepare(final StorableProperties properties, final boolean closeEarly) {
+        prepare(properties, closeEarly, false);
+    }
+
+    /**
+     * @param resume true if an interrupted import is resumed, then the preparations that were already finished are
+     *               skipped. Otherwise all preparations are done, also if the properties contain a date from an
+     *               earlier preparation.
+     */
+    public void prepare(final StorableProperties properties, final boolean closeEarly, final boolean resume) {
         ExecutorCompletionService<String> completionService = new ExecutorCompletionService<>(threadPool);
         int counter = 0;
+        int submitted = 0;
         for (final PrepareContractionHierarchies prepare : preparations) {
-            LOGGER.info((++counter) + "/" + preparations.size() + " calling " +
-                    "CH prepare.doWork for profile '" + prepare.getCHConfig().getName() + "' " + prepare.getCHConfig().getTraversalMode() + " ... (" + getMemInfo() + ")");
             final String name = prepare.getCHConfig().getName();
+            counter++;
+            // the date is only stored when the preparation is finished, so it was loaded already if an interrupted import is resumed
+            if (resume && !properties.get(CH.PREPARE + "date." + name).isEmpty()) {
+                LOGGER.info(counter + "/" + preparations.size() + " CH preparation for profile '" + name + "' exists already");
+                continue;
+            }
+            LOGGER.info(counter + "/" + preparations.size() + " calling " +
+                    "CH prepare.doWork for profile '" + name + "' " + prepare.getCHConfig().getTraversalMode() + " ... (" + getMemInfo() + ")");
+            submitted++;
             completionService.submit(() -> {
                 // toString is not taken into account so we need to cheat, see http://stackoverflow.com/q/6113746/194609 for other options
                 Thread.currentThread().setName(name);
                 prepare.doWork();
                 if (closeEarly)
                     prepare.close();
+                else
+                    prepare.flush();
 
                 properties.put(CH.PREPARE + "date." + name, createFormatter().format(new Date()));
+                properties.flush();
             }, name);
         }
 
         threadPool.shutdown();
 
         try {
-            for (int i = 0; i < preparations.size(); i++) {
+            for (int i = 0; i < submitted; i++) {
                 completionService.take().get();
             }
         } catch (Exception e) {
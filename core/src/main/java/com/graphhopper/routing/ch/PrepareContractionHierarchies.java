@@ -435,8 +435,12 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation {
         sortedNodes = null;
     }
 
-    void close() {
+    void flush() {
         chStore.flush();
+    }
+
+    void close() {
+        flush();
         chStore.close();
     }
 
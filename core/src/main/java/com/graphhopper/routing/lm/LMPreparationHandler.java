@@ -220,7 +220,9 @@ public class LMPreparationHandler {
             final int tmpCounter = counter;
             final String name = plm.getLMConfig().getName();
             completionService.submit(() -> {
-                if (plm.loadExisting())
+                // the date is only stored when the preparation is finished, otherwise the data of an interrupted
+                // import is incomplete and is overwritten
+                if (!properties.get(Landmark.PREPARE + "date." + name).isEmpty() && plm.loadExisting())
                     return;
 
                 LOGGER.info(tmpCounter + "/" + getPreparations().size() + " calling LM prepare.doWork for " + plm.getLMConfig().getWeighting() + " ... (" + getMemInfo() + ")");
@@ -232,6 +234,7 @@ public class LMPreparationHandler {
                 }
                 LOGGER.info("LM {} finished {}", name, getMemInfo());
                 properties.put(Landmark.PREPARE + "date." + name, createFormatter().format(new Date()));
+                properties.flush();
             }, name);
         }
 
@@ -52,11 +52,15 @@ class BaseGraph implements Graph {
     // as we use integer index in 'edges' area => 'geometry' area is limited to 4GB (we use pos&neg values!)
     private final DataAccess wayGeometry;
     private final Directory dir;
+    private final int segmentSize;
+    // can be null if the adjacency index was not created
+    CSRAdjacency adjacency;
     private boolean initialized = false;
     private long maxGeoRef;
 
     public BaseGraph(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts, int segmentSize) {
         this.dir = dir;
+        this.segmentSize = segmentSize;
         this.bitUtil = BitUtil.get(dir.getByteOrder());
         this.wayGeometry = dir.create("geometry", segmentSize);
         this.stringIndex = new StringIndex(dir, 1000, segmentSize);
@@ -138,6 +142,30 @@ class BaseGraph implements Graph {
         return store.getFrozen();
     }
 
+    synchronized void compactEdges() {
+        if (!isFrozen())
+            throw new IllegalStateException("freeze the base graph before compacting its edges");
+        store.compact();
+    }
+
+    boolean isCompact() {
+        return store.isCompact();
+    }
+
+    synchronized void createCSRAdjacency() {
+        if (!isFrozen())
+            throw new IllegalStateException("freeze the base graph before creating its adjacency index");
+        if (adjacency != null)
+            return;
+        CSRAdjacency csr = new CSRAdjacency(dir, segmentSize);
+        csr.create(store);
+        adjacency = csr;
+    }
+
+    boolean hasCSRAdjacency() {
+        return adjacency != null;
+    }
+
     void create(long initSize) {
         store.create(initSize);
 
@@ -155,7 +183,8 @@ class BaseGraph implements Graph {
     String toDetailsString() {
         return store.toDetailsString() + ", "
                 + "name:(" + stringIndex.getCapacity() / Helper.MB + "MB), "
-                + "geo:" + nf(maxGeoRef) + "(" + wayGeometry.getCapacity() / Helper.MB + "MB)";
+                + "geo:" + nf(maxGeoRef) + "(" + wayGeometry.getCapacity() / Helper.MB + "MB)"
+                + (adjacency == null ? "" : ", adjacency:(" + adjacency.getCapacity() / Helper.MB + "MB)");
     }
 
     /**
@@ -184,6 +213,8 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts()) {
             turnCostStorage.flush();
         }
+        if (adjacency != null)
+            adjacency.flush();
     }
 
     public void close() {
@@ -195,11 +226,14 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        if (adjacency != null)
+            adjacency.close();
     }
 
     long getCapacity() {
         return store.getCapacity() + stringIndex.getCapacity()
-                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
+                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0)
+                + (adjacency == null ? 0 : adjacency.getCapacity());
     }
 
     long getMaxGeoRef() {
@@ -223,6 +257,15 @@ class BaseGraph implements Graph {
         if (supportsTurnCosts() && !turnCostStorage.loadExisting())
             throw new IllegalStateException("Cannot load turn cost storage. corrupt file or directory? " + dir);
 
+        // the adjacency index is optional
+        CSRAdjacency csr = new CSRAdjacency(dir, segmentSize);
+        if (csr.loadExisting()) {
+            csr.checkMatches(store.getNodes(), store.getEdges());
+            adjacency = csr;
+        } else {
+            dir.remove(csr.getDataAccess());
+        }
+
         setInitialized();
         loadWayGeometryHeader();
     }
@@ -470,6 +513,9 @@ class BaseGraph implements Graph {
     protected static class EdgeIteratorImpl extends EdgeIteratorStateImpl implements EdgeExplorer, EdgeIterator {
         final EdgeFilter filter;
         int nextEdgeId;
+        // if the graph has an adjacency index the next edge is read from it instead of the linked list
+        private final CSRAdjacency adjacency;
+        private long adjacencyIndex, adjacencyEnd;
 
         public EdgeIteratorImpl(BaseGraph baseGraph, EdgeFilter filter) {
             super(baseGraph);
@@ -477,11 +523,18 @@ class BaseGraph implements Graph {
             if (filter == null)
                 throw new IllegalArgumentException("Instead null filter use EdgeFilter.ALL_EDGES");
             this.filter = filter;
+            this.adjacency = baseGraph.adjacency;
         }
 
         @Override
         public EdgeIterator setBaseNode(int baseNode) {
-            nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            if (adjacency != null) {
+                adjacencyIndex = adjacency.getStart(baseNode);
+                adjacencyEnd = adjacency.getEnd(baseNode);
+                nextEdgeId = edgeId = adjacencyIndex < adjacencyEnd ? adjacency.getEdge(adjacencyIndex) : EdgeIterator.NO_EDGE;
+            } else {
+                nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            }
             this.baseNode = baseNode;
             return this;
         }
@@ -506,7 +559,10 @@ class BaseGraph implements Graph {
             freshFlags = false;
 
             // position to next edge
-            nextEdgeId = baseNodeIsNodeA ? store.getLinkA(edgePointer) : store.getLinkB(edgePointer);
+            if (adjacency != null)
+                nextEdgeId = ++adjacencyIndex < adjacencyEnd ? adjacency.getEdge(adjacencyIndex) : EdgeIterator.NO_EDGE;
+            else
+                nextEdgeId = baseNodeIsNodeA ? store.getLinkA(edgeId, edgePointer) : store.getLinkB(edgeId, edgePointer);
             assert nextEdgeId != edgeId : ("endless loop detected for base node: " + baseNode + ", adj node: " + adjNode
                     + ", edge pointer: " + edgePointer + ", edge: " + edgeId);
         }
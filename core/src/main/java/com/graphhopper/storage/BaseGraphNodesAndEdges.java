@@ -30,6 +30,9 @@ import static com.graphhopper.util.Helper.nf;
 /**
  * Underlying storage for nodes and edges of {@link BaseGraph}. Nodes and edges are stored using two {@link DataAccess}
  * instances. Nodes and edges are simply stored sequentially, see the memory layout in the constructor.
+ * <p>
+ * The edges of a frozen graph can be rewritten into a compact layout, see {@link #compact()}. Then the edges are
+ * records of variable length and an additional index maps an edge to its record.
  */
 class BaseGraphNodesAndEdges {
     // Currently distances are stored as 4 byte integers. using a conversion factor of 1000 the minimum distance
@@ -45,12 +48,24 @@ class BaseGraphNodesAndEdges {
     private int nodeCount;
 
     // edges
-    private final DataAccess edges;
+    private DataAccess edges;
     private final int E_NODEA, E_NODEB, E_LINKA, E_LINKB, E_FLAGS, E_DIST, E_GEO, E_NAME;
     private final int intsForFlags;
     private int edgeEntryBytes;
     private int edgeCount;
 
+    // compact edges, the fields after C_NODEA have a variable length given by the header of the record
+    private static final int C_NODEB = 0, C_LINKA = 1, C_LINKB = 2, C_DIST = 3, C_GEO = 4, C_NAME = 5;
+    private static final int INDEX_BLOCK_BITS = 6, INDEX_BLOCK_EDGES = 1 << INDEX_BLOCK_BITS;
+    // a block of the index is the pointer to the first record and the offsets of all records of the block
+    private static final int INDEX_BLOCK_BYTES = 8 + INDEX_BLOCK_EDGES * 2;
+    private final int C_HEADER, C_FLAGS, C_NODEA, C_VAR;
+    private final Directory dir;
+    private final int segmentSize;
+    private DataAccess edgeIndex;
+    private boolean compact;
+    private long compactBytes;
+
     private final boolean withTurnCosts;
     private final boolean withElevation;
 
@@ -61,6 +76,8 @@ class BaseGraphNodesAndEdges {
     private boolean frozen;
 
     public BaseGraphNodesAndEdges(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
         nodes = dir.create("nodes", DAType.getPreferredInt(dir.getDefaultType()), segmentSize);
         edges = dir.create("edges", DAType.getPreferredInt(dir.getDefaultType()), segmentSize);
         this.intsForFlags = intsForFlags;
@@ -86,6 +103,13 @@ class BaseGraphNodesAndEdges {
         E_GEO = E_DIST + 4;
         E_NAME = E_GEO + 4;
         edgeEntryBytes = E_NAME + 4;
+
+        // memory layout for compact edges: the flags and nodeA have a fixed length so the flags can still be
+        // changed. nodeB is stored relative to nodeA and the links relative to the edge, see compact()
+        C_HEADER = 0;
+        C_FLAGS = 2;
+        C_NODEA = C_FLAGS + intsForFlags * 4;
+        C_VAR = C_NODEA + 4;
     }
 
     public void create(long initSize) {
@@ -94,8 +118,19 @@ class BaseGraphNodesAndEdges {
     }
 
     public boolean loadExisting() {
-        if (!nodes.loadExisting() || !edges.loadExisting())
+        if (!nodes.loadExisting())
+            return false;
+        if (nodes.getHeader(9 * 4) == 1) {
+            // the fixed-length edges were removed when they were compacted
+            dir.remove(edges);
+            createCompactEdges();
+            if (!edges.loadExisting() || !edgeIndex.loadExisting())
+                return false;
+            compact = true;
+            compactBytes = ((long) edges.getHeader(3 * 4) << 32) | (edges.getHeader(2 * 4) & 0xFFFFFFFFL);
+        } else if (!edges.loadExisting()) {
             return false;
+        }
 
         // now load some properties from stored data
         nodeEntryBytes = nodes.getHeader(0 * 4);
@@ -127,15 +162,23 @@ class BaseGraphNodesAndEdges {
             nodes.setHeader(7 * 4, Helper.eleToInt(bounds.maxEle));
         }
         nodes.setHeader(8 * 4, frozen ? 1 : 0);
+        nodes.setHeader(9 * 4, compact ? 1 : 0);
 
         edges.setHeader(0, edgeEntryBytes);
         edges.setHeader(1 * 4, edgeCount);
+        if (compact) {
+            edges.setHeader(2 * 4, (int) compactBytes);
+            edges.setHeader(3 * 4, (int) (compactBytes >>> 32));
+            edgeIndex.flush();
+        }
 
         edges.flush();
         nodes.flush();
     }
 
     public void close() {
+        if (edgeIndex != null)
+            edgeIndex.close();
         edges.close();
         nodes.close();
     }
@@ -165,7 +208,11 @@ class BaseGraphNodesAndEdges {
     }
 
     public long getCapacity() {
-        return nodes.getCapacity() + edges.getCapacity();
+        return nodes.getCapacity() + getEdgesCapacity();
+    }
+
+    private long getEdgesCapacity() {
+        return edges.getCapacity() + (edgeIndex == null ? 0 : edgeIndex.getCapacity());
     }
 
     public boolean isClosed() {
@@ -223,76 +270,106 @@ class BaseGraphNodesAndEdges {
     public long toEdgePointer(int edge) {
         if (edge < 0 || edge >= edgeCount)
             throw new IllegalArgumentException("edge: " + edge + " out of bounds [0," + edgeCount + "[");
+        if (compact) {
+            long blockPointer = (long) (edge >>> INDEX_BLOCK_BITS) * INDEX_BLOCK_BYTES;
+            long base = ((long) edgeIndex.getInt(blockPointer + 4) << 32) | (edgeIndex.getInt(blockPointer) & 0xFFFFFFFFL);
+            return base + (edgeIndex.getShort(blockPointer + 8 + (edge & (INDEX_BLOCK_EDGES - 1)) * 2) & 0xFFFF);
+        }
         return (long) edge * edgeEntryBytes;
     }
 
     public void readFlags(long edgePointer, IntsRef edgeFlags) {
         int size = edgeFlags.ints.length;
+        long flagsPointer = edgePointer + (compact ? C_FLAGS : E_FLAGS);
         for (int i = 0; i < size; ++i)
-            edgeFlags.ints[i] = edges.getInt(edgePointer + E_FLAGS + i * 4);
+            edgeFlags.ints[i] = edges.getInt(flagsPointer + i * 4);
     }
 
     public void writeFlags(long edgePointer, IntsRef edgeFlags) {
         int size = edgeFlags.ints.length;
+        long flagsPointer = edgePointer + (compact ? C_FLAGS : E_FLAGS);
         for (int i = 0; i < size; ++i)
-            edges.setInt(edgePointer + E_FLAGS + i * 4, edgeFlags.ints[i]);
+            edges.setInt(flagsPointer + i * 4, edgeFlags.ints[i]);
     }
 
     public void setNodeA(long edgePointer, int nodeA) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_NODEA, nodeA);
     }
 
     public void setNodeB(long edgePointer, int nodeB) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_NODEB, nodeB);
     }
 
     public void setLinkA(long edgePointer, int linkA) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_LINKA, linkA);
     }
 
     public void setLinkB(long edgePointer, int linkB) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_LINKB, linkB);
     }
 
     public void setDist(long edgePointer, double distance) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_DIST, distToInt(distance));
     }
 
     public void setGeoRef(long edgePointer, int geoRef) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_GEO, geoRef);
     }
 
     public void setNameRef(long edgePointer, int nameRef) {
+        ensureNotCompact();
         edges.setInt(edgePointer + E_NAME, nameRef);
     }
 
     public int getNodeA(long edgePointer) {
-        return edges.getInt(edgePointer + E_NODEA);
+        return edges.getInt(edgePointer + (compact ? C_NODEA : E_NODEA));
     }
 
     public int getNodeB(long edgePointer) {
+        if (compact)
+            return getNodeA(edgePointer) + (int) fromZigZag(getCompactField(edgePointer, C_NODEB));
         return edges.getInt(edgePointer + E_NODEB);
     }
 
-    public int getLinkA(long edgePointer) {
+    /**
+     * @param edge the edge at edgePointer, the links of compact edges are stored relative to it
+     */
+    public int getLinkA(int edge, long edgePointer) {
+        if (compact)
+            return edge - (int) fromZigZag(getCompactField(edgePointer, C_LINKA));
         return edges.getInt(edgePointer + E_LINKA);
     }
 
-    public int getLinkB(long edgePointer) {
+    /**
+     * @param edge the edge at edgePointer, the links of compact edges are stored relative to it
+     */
+    public int getLinkB(int edge, long edgePointer) {
+        if (compact)
+            return edge - (int) fromZigZag(getCompactField(edgePointer, C_LINKB));
         return edges.getInt(edgePointer + E_LINKB);
     }
 
     public double getDist(long pointer) {
-        int val = edges.getInt(pointer + E_DIST);
+        int val = compact ? (int) getCompactField(pointer, C_DIST) : edges.getInt(pointer + E_DIST);
         // do never return infinity even if INT MAX, see #435
         return val / INT_DIST_FACTOR;
     }
 
     public int getGeoRef(long edgePointer) {
+        if (compact)
+            return (int) getCompactField(edgePointer, C_GEO);
         return edges.getInt(edgePointer + E_GEO);
     }
 
     public int getNameRef(long edgePointer) {
+        if (compact)
+            return (int) getCompactField(edgePointer, C_NAME);
         return edges.getInt(edgePointer + E_NAME);
     }
 
@@ -344,6 +421,166 @@ class BaseGraphNodesAndEdges {
         return frozen;
     }
 
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Rewrites the edges of a frozen graph into a layout that needs less memory, which matters for a big graph as
+     * the edges are its largest part. Every edge becomes a record of variable length: nodeB is stored as difference
+     * to nodeA, the links as difference to the edge, and these differences, the distance, the geometry and the name
+     * reference only use as many bytes as they need. The last two are omitted if they are 0. An index with the
+     * pointer to the first record of every 64 edges and a 2 byte offset per edge keeps toEdgePointer in O(1).
+     * <p>
+     * Afterwards only the flags of an edge can be changed, as they keep their fixed length.
+     */
+    public void compact() {
+        if (!frozen)
+            throw new IllegalStateException("Only the edges of a frozen graph can be compacted");
+        if (compact)
+            return;
+        DataAccess oldEdges = edges;
+        createCompactEdges();
+        DataAccess newEdges = edges;
+        edges = oldEdges;
+        int maxRecordBytes = C_VAR + 6 * 4;
+        if (maxRecordBytes > newEdges.getSegmentSize() || INDEX_BLOCK_EDGES * maxRecordBytes > 0xFFFF)
+            throw new IllegalStateException("Too many flags to compact the edges: " + intsForFlags);
+
+        newEdges.create(Math.min((long) edgeCount * C_VAR, newEdges.getSegmentSize()));
+        edgeIndex.create(((long) edgeCount / INDEX_BLOCK_EDGES + 1) * INDEX_BLOCK_BYTES);
+        IntsRef flags = new IntsRef(intsForFlags);
+        long[] values = new long[C_NAME + 1];
+        long pointer = 0, blockPointer = 0, base = 0;
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long edgePointer = toEdgePointer(edge);
+            readFlags(edgePointer, flags);
+            int nodeA = getNodeA(edgePointer);
+            values[C_NODEB] = toZigZag((long) getNodeB(edgePointer) - nodeA);
+            values[C_LINKA] = toZigZag((long) edge - getLinkA(edge, edgePointer));
+            values[C_LINKB] = toZigZag((long) edge - getLinkB(edge, edgePointer));
+            values[C_DIST] = edges.getInt(edgePointer + E_DIST);
+            values[C_GEO] = getGeoRef(edgePointer) & 0xFFFFFFFFL;
+            values[C_NAME] = getNameRef(edgePointer) & 0xFFFFFFFFL;
+            int header = 0, recordBytes = C_VAR;
+            for (int field = C_NODEB; field <= C_NAME; field++) {
+                // the geometry and the name can be omitted, the other fields use at least one byte
+                int width = Math.max(field < C_GEO ? 1 : 0, bytesFor(values[field]));
+                header |= field < C_GEO ? (width - 1) << (2 * field) : width << (8 + 3 * (field - C_GEO));
+                recordBytes += width;
+            }
+
+            // a record must not be distributed over two segments as we read ints and shorts from it
+            int segment = newEdges.getSegmentSize();
+            if (pointer / segment != (pointer + recordBytes - 1) / segment)
+                pointer = (pointer / segment + 1) * segment;
+            if ((edge & (INDEX_BLOCK_EDGES - 1)) == 0) {
+                blockPointer = (long) (edge >>> INDEX_BLOCK_BITS) * INDEX_BLOCK_BYTES;
+                base = pointer;
+                edgeIndex.ensureCapacity(blockPointer + INDEX_BLOCK_BYTES);
+                edgeIndex.setInt(blockPointer, (int) base);
+                edgeIndex.setInt(blockPointer + 4, (int) (base >>> 32));
+            }
+            edgeIndex.setShort(blockPointer + 8 + (edge & (INDEX_BLOCK_EDGES - 1)) * 2, (short) (pointer - base));
+
+            newEdges.ensureCapacity(pointer + recordBytes);
+            newEdges.setShort(pointer + C_HEADER, (short) header);
+            for (int i = 0; i < intsForFlags; i++)
+                newEdges.setInt(pointer + C_FLAGS + i * 4, flags.ints[i]);
+            newEdges.setInt(pointer + C_NODEA, nodeA);
+            long fieldPointer = pointer + C_VAR;
+            for (int field = C_NODEB; field <= C_NAME; field++) {
+                int width = getCompactWidth(header, field);
+                setVar(newEdges, fieldPointer, width, values[field]);
+                fieldPointer += width;
+            }
+            pointer += recordBytes;
+        }
+        dir.remove(oldEdges);
+        edges = newEdges;
+        compactBytes = pointer;
+        compact = true;
+    }
+
+    private void createCompactEdges() {
+        // the records are read byte-wise, which the int-based DataAccess does not support
+        DAType type = dir.getDefaultType();
+        if (type.isInteg())
+            type = type.isStoring() ? DAType.RAM_STORE : DAType.RAM;
+        edges = dir.create("edges_compact", type, segmentSize);
+        edgeIndex = dir.create("edges_index", type, segmentSize);
+    }
+
+    private void ensureNotCompact() {
+        if (compact)
+            throw new IllegalStateException("The edges are compacted, only their flags can be changed");
+    }
+
+    private long getCompactField(long edgePointer, int field) {
+        int header = edges.getShort(edgePointer + C_HEADER) & 0xFFFF;
+        long fieldPointer = edgePointer + C_VAR;
+        for (int i = C_NODEB; i < field; i++)
+            fieldPointer += getCompactWidth(header, i);
+        return getVar(edges, fieldPointer, getCompactWidth(header, field));
+    }
+
+    /**
+     * The header of a compact record uses 2 bits for the width (1-4 bytes) of every field up to C_DIST and
+     * 3 bits for the width (0-4 bytes) of C_GEO and C_NAME.
+     */
+    private static int getCompactWidth(int header, int field) {
+        if (field < C_GEO)
+            return ((header >>> (2 * field)) & 3) + 1;
+        return (header >>> (8 + 3 * (field - C_GEO))) & 7;
+    }
+
+    private static int bytesFor(long value) {
+        assert value >= 0 && value <= 0xFFFF_FFFFL : "value does not fit into 4 bytes " + value;
+        return value == 0 ? 0 : value <= 0xFF ? 1 : value <= 0xFFFF ? 2 : value <= 0xFF_FFFF ? 3 : 4;
+    }
+
+    private static long getVar(DataAccess da, long pointer, int width) {
+        switch (width) {
+            case 0:
+                return 0;
+            case 1:
+                return da.getByte(pointer) & 0xFF;
+            case 2:
+                return da.getShort(pointer) & 0xFFFF;
+            case 3:
+                return (da.getShort(pointer) & 0xFFFF) | (da.getByte(pointer + 2) & 0xFF) << 16;
+            default:
+                return da.getInt(pointer) & 0xFFFF_FFFFL;
+        }
+    }
+
+    private static void setVar(DataAccess da, long pointer, int width, long value) {
+        switch (width) {
+            case 0:
+                break;
+            case 1:
+                da.setByte(pointer, (byte) value);
+                break;
+            case 2:
+                da.setShort(pointer, (short) value);
+                break;
+            case 3:
+                da.setShort(pointer, (short) value);
+                da.setByte(pointer + 2, (byte) (value >>> 16));
+                break;
+            default:
+                da.setInt(pointer, (int) value);
+        }
+    }
+
+    private static long toZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long fromZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     public void debugPrint() {
         final int printMax = 100;
         System.out.println("nodes:");
@@ -366,8 +603,8 @@ class BaseGraphNodesAndEdges {
             System.out.format(Locale.ROOT, formatEdges, i,
                     getNodeA(edgePointer),
                     getNodeB(edgePointer),
-                    getLinkA(edgePointer),
-                    getLinkB(edgePointer),
+                    getLinkA(i, edgePointer),
+                    getLinkB(i, edgePointer),
                     intsRef,
                     getDist(edgePointer));
         }
@@ -388,7 +625,7 @@ class BaseGraphNodesAndEdges {
     }
 
     public String toDetailsString() {
-        return "edges: " + nf(edgeCount) + "(" + edges.getCapacity() / Helper.MB + "MB), "
+        return "edges: " + nf(edgeCount) + "(" + getEdgesCapacity() / Helper.MB + "MB" + (compact ? ", compact" : "") + "), "
                 + "nodes: " + nf(nodeCount) + "(" + nodes.getCapacity() / Helper.MB + "MB), "
                 + "bounds: " + bounds;
     }
@@ -0,0 +1,120 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import static com.graphhopper.util.EdgeIterator.NO_EDGE;
+
+/**
+ * The adjacent edges of every node of a frozen graph in compressed sparse row format: the edges of a node are stored
+ * one after another and an offset per node points to its first edge. Iterating the edges of a node this way reads
+ * the next edge from a contiguous array, while the linked list of the edges needs the record of the current edge to
+ * find the next one.
+ * <p>
+ * The edges of a node are in the same order as in the linked list, so using this index does not change any result.
+ * There are two entries for every edge except loops, so the index needs 8 bytes per edge plus 4 bytes per node.
+ */
+class CSRAdjacency {
+    private final DataAccess adjacency;
+    private int nodeCount;
+    private int edgeCount;
+    private long entriesPointer;
+
+    CSRAdjacency(Directory dir, int segmentSize) {
+        adjacency = dir.create("adjacency", DAType.getPreferredInt(dir.getDefaultType()), segmentSize);
+    }
+
+    /**
+     * Fills the index with the edges of the specified store, which must not change afterwards.
+     */
+    void create(BaseGraphNodesAndEdges store) {
+        nodeCount = store.getNodes();
+        edgeCount = store.getEdges();
+        // layout: nodeCount + 1 offsets, then the edges. the last offset is the end of the edges of the last node
+        entriesPointer = 4L * (nodeCount + 1);
+        adjacency.create(entriesPointer + 8L * edgeCount);
+        long entries = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            adjacency.setInt(4L * node, (int) entries);
+            int edge = store.getEdgeRef(store.toNodePointer(node));
+            while (edge != NO_EDGE) {
+                long entryPointer = entriesPointer + 4 * entries;
+                adjacency.ensureCapacity(entryPointer + 4);
+                adjacency.setInt(entryPointer, edge);
+                entries++;
+                long edgePointer = store.toEdgePointer(edge);
+                edge = store.getNodeA(edgePointer) == node ? store.getLinkA(edge, edgePointer) : store.getLinkB(edge, edgePointer);
+            }
+        }
+        adjacency.setInt(4L * nodeCount, (int) entries);
+    }
+
+    boolean loadExisting() {
+        if (!adjacency.loadExisting())
+            return false;
+        nodeCount = adjacency.getHeader(0);
+        edgeCount = adjacency.getHeader(4);
+        entriesPointer = 4L * (nodeCount + 1);
+        return true;
+    }
+
+    /**
+     * Throws an exception if the index was created for a different graph, e.g. because a graph was imported into a
+     * directory that still contained the index of a previous one.
+     */
+    void checkMatches(int nodes, int edges) {
+        if (nodes != nodeCount || edges != edgeCount)
+            throw new IllegalStateException("The adjacency index does not match the graph, it has " + nodeCount
+                    + " nodes and " + edgeCount + " edges, but the graph has " + nodes + " nodes and " + edges + " edges");
+    }
+
+    void flush() {
+        adjacency.setHeader(0, nodeCount);
+        adjacency.setHeader(4, edgeCount);
+        adjacency.flush();
+    }
+
+    void close() {
+        adjacency.close();
+    }
+
+    DataAccess getDataAccess() {
+        return adjacency;
+    }
+
+    long getCapacity() {
+        return adjacency.getCapacity();
+    }
+
+    /**
+     * @return the index of the first edge of the specified node
+     */
+    long getStart(int node) {
+        return adjacency.getInt(4L * node) & 0xFFFF_FFFFL;
+    }
+
+    /**
+     * @return the index after the last edge of the specified node
+     */
+    long getEnd(int node) {
+        return adjacency.getInt(4L * node + 4) & 0xFFFF_FFFFL;
+    }
+
+    int getEdge(long index) {
+        return adjacency.getInt(entriesPointer + 4 * index);
+    }
+}
@@ -53,6 +53,11 @@ public class DAType {
      * embedded data stores.
      */
     public static final DAType MMAP_RO = new DAType(MemRef.MMAP, true, false, false);
+    /**
+     * The DA object is hold entirely in direct memory outside of the JVM heap, i.e. it is not touched by the garbage
+     * collector. It is loaded from and flushed to disc like RAM_STORE. See OffHeapDataAccess.
+     */
+    public static final DAType OFF_HEAP = new DAType(MemRef.OFF_HEAP, true, false, true);
     private final MemRef memRef;
     private final boolean storing;
     private final boolean integ;
@@ -74,6 +79,8 @@ public class DAType {
         DAType type;
         if (dataAccess.contains("SYNC"))
             throw new IllegalArgumentException("SYNC option is no longer supported, see #982");
+        else if (dataAccess.contains("OFF_HEAP"))
+            type = DAType.OFF_HEAP;
         else if (dataAccess.contains("MMAP_RO"))
             type = DAType.MMAP_RO;
         else if (dataAccess.contains("MMAP"))
@@ -118,6 +125,13 @@ public class DAType {
         return memRef == MemRef.MMAP;
     }
 
+    /**
+     * @return true if data resides in direct memory outside of the JVM heap.
+     */
+    public boolean isOffHeap() {
+        return memRef == MemRef.OFF_HEAP;
+    }
+
     /**
      * Temporary data or store (with loading and storing)? default is false
      */
@@ -137,6 +151,8 @@ public class DAType {
         String str;
         if (getMemRef() == MemRef.MMAP)
             str = "MMAP";
+        else if (getMemRef() == MemRef.OFF_HEAP)
+            str = "OFF_HEAP";
         else
             str = "RAM";
 
@@ -173,6 +189,6 @@ public class DAType {
     }
 
     public enum MemRef {
-        HEAP, MMAP
+        HEAP, MMAP, OFF_HEAP
     }
 }
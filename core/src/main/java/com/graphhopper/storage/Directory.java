@@ -74,5 +74,10 @@ public interface Directory {
      */
     void close();
 
+    /**
+     * @return the DataAccess objects that were created in this directory and not removed yet
+     */
+    Collection<DataAccess> getDataAccesses();
+
     Directory create();
 }
@@ -19,6 +19,8 @@ package com.graphhopper.storage;
 
 import java.io.File;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -70,7 +72,7 @@ public class GHDirectory implements Directory {
     }
 
     @Override
-    public DataAccess create(String name, DAType type, int segmentSize) {
+    public synchronized DataAccess create(String name, DAType type, int segmentSize) {
         if (!name.equals(toLowerCase(name)))
             throw new IllegalArgumentException("Since 0.7 DataAccess objects does no longer accept upper case names");
 
@@ -92,6 +94,8 @@ public class GHDirectory implements Directory {
                 da = new RAMDataAccess(name, location, false, byteOrder, segmentSize);
         } else if (type.isMMap()) {
             da = new MMapDataAccess(name, location, byteOrder, type.isAllowWrites(), segmentSize);
+        } else if (type.isOffHeap()) {
+            da = new OffHeapDataAccess(name, location, byteOrder, segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
@@ -101,7 +105,7 @@ public class GHDirectory implements Directory {
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         for (DataAccess da : map.values()) {
             da.close();
         }
@@ -109,7 +113,7 @@ public class GHDirectory implements Directory {
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         for (DataAccess da : map.values()) {
             da.close();
             removeBackingFile(da, da.getName());
@@ -118,7 +122,7 @@ public class GHDirectory implements Directory {
     }
 
     @Override
-    public void remove(DataAccess da) {
+    public synchronized void remove(DataAccess da) {
         DataAccess old = map.remove(da.getName());
         if (old == null)
             throw new IllegalStateException("Couldn't remove DataAccess: " + da.getName());
@@ -127,6 +131,11 @@ public class GHDirectory implements Directory {
         removeBackingFile(da, da.getName());
     }
 
+    @Override
+    public synchronized Collection<DataAccess> getDataAccesses() {
+        return new ArrayList<>(map.values());
+    }
+
     private void removeBackingFile(DataAccess da, String name) {
         if (da.getType().isStoring())
             removeDir(new File(location + name));
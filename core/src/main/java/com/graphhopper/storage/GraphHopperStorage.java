@@ -328,10 +328,14 @@ public final class GraphHopperStorage implements Graph, Closeable {
      * ch graphs on top to initialize themselves
      */
     public synchronized void freeze() {
-        if (isFrozen())
-            return;
-        baseGraph.freeze();
+        if (!isFrozen())
+            baseGraph.freeze();
         chEntries.forEach(ch -> {
+            // the CHStorages of finished preparations are loaded already, e.g. when an interrupted import is resumed.
+            // A loaded graph is frozen already, but its CHStorages still need to be initialized if they were replaced
+            // by empty ones to redo the preparation.
+            if (ch.chStore.getNodes() >= 0)
+                return;
             // we use a rather small value here. this might result in more allocations later, but they should
             // not matter that much. if we expect a too large value the shortcuts DataAccess will end up
             // larger than needed, because we do not do something like trimToSize in the end.
@@ -344,6 +348,30 @@ public final class GraphHopperStorage implements Graph, Closeable {
         return baseGraph.isFrozen();
     }
 
+    /**
+     * Rewrites the edges of the frozen graph into a compact layout with less memory. Afterwards only the flags of
+     * the edges can be changed. See BaseGraphNodesAndEdges.compact for the layout.
+     */
+    public void compactEdges() {
+        baseGraph.compactEdges();
+    }
+
+    public boolean isCompact() {
+        return baseGraph.isCompact();
+    }
+
+    /**
+     * Creates an index of the adjacent edges of every node of the frozen graph, which makes iterating them faster
+     * as the next edge does not depend on the record of the current one. See CSRAdjacency.
+     */
+    public void createCSRAdjacency() {
+        baseGraph.createCSRAdjacency();
+    }
+
+    public boolean hasCSRAdjacency() {
+        return baseGraph.hasCSRAdjacency();
+    }
+
     public String toDetailsString() {
         String str = baseGraph.toDetailsString();
         for (CHEntry ch : chEntries) {
@@ -50,6 +50,13 @@ import java.util.StringTokenizer;
  * This class itself is intended to be as thread-safe as other DataAccess
  * implementations are.
  * <p>
+ * If the file is opened read-only (MMAP_RO) the read methods do not
+ * synchronize: they only use the absolute get methods of the ByteBuffer,
+ * which do not change its state, and the segments cannot change anymore and
+ * are read from an array. So concurrent queries do not block each other on
+ * frequently used segments. As the byte order of the buffers is the native
+ * one on common hardware an int or short is then read with a single load.
+ * <p>
  * The exact behavior of memory-mapping is reported to be wildly platform-dependent.
  *
  * @author Peter Karich
@@ -62,6 +69,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
     private final boolean allowWrites;
     private RandomAccessFile raFile;
     private List<MappedByteBuffer> segments = new ArrayList<>();
+    // the segments as an array for the read path of MMAP_RO, which avoids the checks of the list
+    private ByteBuffer[] readOnlySegments = new ByteBuffer[0];
 
     MMapDataAccess(String name, String location, ByteOrder order, boolean allowWrites, int segmentSize) {
         super(name, location, order, segmentSize);
@@ -219,6 +228,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
                 segments.add(newByteBuffer(bufferStart, longSegmentSize));
                 bufferStart += longSegmentSize;
             }
+            if (!allowWrites)
+                readOnlySegments = segments.toArray(new ByteBuffer[0]);
             return true;
         } catch (IOException ex) {
             // we could get an exception here if buffer is too small and area too large
@@ -313,6 +324,7 @@ public final class MMapDataAccess extends AbstractDataAccess {
         super.close();
         clean(0, segments.size());
         segments.clear();
+        readOnlySegments = new ByteBuffer[0];
         Helper.close(raFile);
     }
 
@@ -334,6 +346,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int index = (int) (bytePos & indexDivisor);
         if (index + 4 > segmentSizeInBytes)
             throw new IllegalStateException("Padding required. Currently an int cannot be distributed over two segments. " + bytePos);
+        if (!allowWrites)
+            return readOnlySegments[bufferIndex].getInt(index);
         ByteBuffer byteBuffer = segments.get(bufferIndex);
         synchronized (byteBuffer) {
             return byteBuffer.getInt(index);
@@ -363,6 +377,12 @@ public final class MMapDataAccess extends AbstractDataAccess {
     public final short getShort(long bytePos) {
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
+        if (!allowWrites) {
+            if (index + 2 > segmentSizeInBytes)
+                return (short) ((readOnlySegments[bufferIndex + 1].get(0) & 0xFF) << 8
+                        | readOnlySegments[bufferIndex].get(index) & 0xFF);
+            return readOnlySegments[bufferIndex].getShort(index);
+        }
         ByteBuffer byteBuffer = segments.get(bufferIndex);
         if (index + 2 > segmentSizeInBytes) {
             ByteBuffer byteBufferNext = segments.get(bufferIndex + 1);
@@ -409,6 +429,21 @@ public final class MMapDataAccess extends AbstractDataAccess {
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
         int delta = index + length - segmentSizeInBytes;
+        if (!allowWrites) {
+            // the bulk get uses the position of the buffer, so copy the bytes one by one via the absolute get instead
+            final ByteBuffer bb1 = readOnlySegments[bufferIndex];
+            int length1 = delta > 0 ? length - delta : length;
+            for (int i = 0; i < length1; i++) {
+                values[i] = bb1.get(index + i);
+            }
+            if (delta > 0) {
+                final ByteBuffer bb2 = readOnlySegments[bufferIndex + 1];
+                for (int i = 0; i < delta; i++) {
+                    values[length1 + i] = bb2.get(i);
+                }
+            }
+            return;
+        }
         final ByteBuffer bb1 = segments.get(bufferIndex);
         synchronized (bb1) {
             bb1.position(index);
@@ -443,6 +478,8 @@ public final class MMapDataAccess extends AbstractDataAccess {
     public byte getByte(long bytePos) {
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
+        if (!allowWrites)
+            return readOnlySegments[bufferIndex].get(index);
         final ByteBuffer bb1 = segments.get(bufferIndex);
         synchronized (bb1) {
             bb1.position(index);
@@ -450,6 +487,14 @@ public final class MMapDataAccess extends AbstractDataAccess {
         }
     }
 
+    /**
+     * Reads the specified segment into physical memory, so that later reads do not cause page faults. This only
+     * reads the mapped file and can be called concurrently to the other read methods.
+     */
+    public void prefetch(int segment) {
+        segments.get(segment).load();
+    }
+
     @Override
     public long getCapacity() {
         long cap = 0;
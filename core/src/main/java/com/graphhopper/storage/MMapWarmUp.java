@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads memory-mapped DataAccess objects into physical memory in the background. Without this the first requests
+ * after loading a memory-mapped graph cause a page fault for nearly every read, which makes them very slow. The
+ * segments of the selected objects are read in parallel and the progress is logged every 10%.
+ * <p>
+ * The objects are selected by their name, where a trailing * matches any suffix, e.g. shortcuts_* for the shortcuts
+ * of all CH profiles. Objects that are not memory-mapped are already in memory and ignored.
+ */
+public class MMapWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MMapWarmUp.class);
+    private final List<MMapDataAccess> dataAccesses = new ArrayList<>();
+    private final int threads;
+    private final long totalBytes;
+    private final AtomicLong doneBytes = new AtomicLong();
+    private final AtomicInteger remainingSegments = new AtomicInteger();
+    private final AtomicInteger loggedPercent = new AtomicInteger();
+    private ExecutorService executor;
+    private StopWatch stopWatch;
+
+    public MMapWarmUp(Directory dir, List<String> names, int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("threads must be positive but was " + threads);
+        this.threads = threads;
+        long bytes = 0;
+        int segments = 0;
+        for (DataAccess da : dir.getDataAccesses()) {
+            if (da instanceof MMapDataAccess && matches(names, da.getName())) {
+                dataAccesses.add((MMapDataAccess) da);
+                bytes += da.getCapacity();
+                segments += da.getSegments();
+            }
+        }
+        totalBytes = bytes;
+        remainingSegments.set(segments);
+    }
+
+    static boolean matches(List<String> names, String name) {
+        for (String pattern : names) {
+            if (pattern.endsWith("*") ? name.startsWith(pattern.substring(0, pattern.length() - 1)) : name.equals(pattern))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts reading the segments in background threads and returns immediately.
+     */
+    public synchronized MMapWarmUp start() {
+        if (executor != null)
+            throw new IllegalStateException("warm-up already started");
+        stopWatch = new StopWatch().start();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "mmap-warm-up-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<String> names = new ArrayList<>();
+        for (MMapDataAccess da : dataAccesses) {
+            names.add(da.getName());
+            for (int s = 0; s < da.getSegments(); s++) {
+                final int segment = s;
+                executor.execute(() -> prefetch(da, segment));
+            }
+        }
+        executor.shutdown();
+        LOGGER.info("warming up " + totalBytes / Helper.MB + "MB of the memory-mapped graph with " + threads
+                + " threads: " + names);
+        return this;
+    }
+
+    private void prefetch(MMapDataAccess da, int segment) {
+        if (Thread.currentThread().isInterrupted())
+            return;
+        try {
+            da.prefetch(segment);
+        } catch (Exception ex) {
+            // the warm-up is only an optimization, the data is read on demand then
+            LOGGER.warn("Cannot warm up segment " + segment + " of " + da.getName(), ex);
+        }
+        long done = doneBytes.addAndGet(da.getSegmentSize());
+        int percent = totalBytes == 0 ? 100 : (int) (100 * done / totalBytes);
+        int logged = loggedPercent.get();
+        if (percent / 10 > logged / 10 && percent < 100 && loggedPercent.compareAndSet(logged, percent))
+            LOGGER.info("warm-up " + percent + "%, " + done / Helper.MB + "MB of " + totalBytes / Helper.MB + "MB");
+        if (remainingSegments.decrementAndGet() == 0)
+            LOGGER.info("warmed up " + totalBytes / Helper.MB + "MB of the memory-mapped graph in "
+                    + stopWatch.stop().getSeconds() + "s");
+    }
+
+    /**
+     * @return true if all segments were read
+     */
+    public boolean isDone() {
+        return remainingSegments.get() == 0;
+    }
+
+    /**
+     * @return the fraction of the bytes that were read so far, between 0 and 1
+     */
+    public double getProgress() {
+        return totalBytes == 0 ? 1 : Math.min(1, (double) doneBytes.get() / totalBytes);
+    }
+
+    /**
+     * Waits until all segments were read or the timeout elapsed.
+     *
+     * @return true if the warm-up is done
+     */
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService tmp;
+        synchronized (this) {
+            tmp = executor;
+        }
+        if (tmp == null)
+            throw new IllegalStateException("warm-up not started");
+        tmp.awaitTermination(timeout, unit);
+        return isDone();
+    }
+
+    /**
+     * Stops reading the segments and waits for the running reads, which must not access a segment that is already
+     * unmapped. Call this before closing the DataAccess objects.
+     */
+    public synchronized void stop() {
+        if (executor == null)
+            return;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                LOGGER.warn("warm-up did not stop within 30s");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
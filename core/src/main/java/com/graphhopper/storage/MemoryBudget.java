@@ -0,0 +1,157 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the heap used by the big data structures of an import. If their sum exceeds the budget, the biggest
+ * structures that can be moved out of the heap are spilled to memory-mapped files until the sum fits again. This way
+ * an import gets slower on a small machine instead of failing with an OutOfMemoryError.
+ * <p>
+ * A budget of 0 disables the spilling, the usage is still tracked for logging then. This class is thread-safe.
+ */
+public class MemoryBudget {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryBudget.class);
+    private final long maxBytes;
+    private final Map<String, Spillable> structures = new LinkedHashMap<>();
+    private int spills;
+    private boolean warned;
+
+    /**
+     * A data structure whose heap usage is tracked by the budget.
+     */
+    public interface Spillable {
+        /**
+         * @return the number of bytes of this structure on the heap
+         */
+        long getHeapBytes();
+
+        /**
+         * Moves the data of this structure to memory-mapped files.
+         *
+         * @return false if nothing could be moved, e.g. because the data is not on the heap anymore
+         */
+        default boolean spill() {
+            return false;
+        }
+    }
+
+    /**
+     * @param maxBytes the maximum number of bytes used by the registered structures or 0 for no limit
+     */
+    public MemoryBudget(long maxBytes) {
+        if (maxBytes < 0)
+            throw new IllegalArgumentException("The memory budget must not be negative but was " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isLimited() {
+        return maxBytes > 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized MemoryBudget register(String name, Spillable structure) {
+        structures.put(name, structure);
+        return this;
+    }
+
+    public synchronized void unregister(String name) {
+        structures.remove(name);
+    }
+
+    public synchronized long getHeapBytes() {
+        long sum = 0;
+        for (Spillable structure : structures.values()) {
+            sum += structure.getHeapBytes();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of structures that were spilled so far
+     */
+    public synchronized int getSpills() {
+        return spills;
+    }
+
+    public boolean check() {
+        return check(0);
+    }
+
+    /**
+     * Spills the biggest structures until the heap used by all structures plus the specified bytes, e.g. of an
+     * allocation that is about to happen, fits into the budget.
+     *
+     * @return false if the budget is exceeded even though no more structures can be spilled
+     */
+    public synchronized boolean check(long additionalBytes) {
+        if (!isLimited())
+            return true;
+        long used = getHeapBytes() + additionalBytes;
+        // a structure that cannot be spilled is not tried again
+        Map<String, Spillable> candidates = new LinkedHashMap<>(structures);
+        while (used > maxBytes && !candidates.isEmpty()) {
+            String biggest = null;
+            long biggestBytes = -1;
+            for (Map.Entry<String, Spillable> entry : candidates.entrySet()) {
+                long bytes = entry.getValue().getHeapBytes();
+                if (bytes > biggestBytes) {
+                    biggest = entry.getKey();
+                    biggestBytes = bytes;
+                }
+            }
+            Spillable structure = candidates.remove(biggest);
+            if (biggestBytes == 0 || !structure.spill())
+                continue;
+            spills++;
+            long newUsed = getHeapBytes() + additionalBytes;
+            LOGGER.info("memory budget of " + maxBytes / Helper.MB + "MB exceeded (" + used / Helper.MB + "MB), moved "
+                    + biggest + " to memory-mapped files, now " + newUsed / Helper.MB + "MB");
+            used = newUsed;
+        }
+        if (used > maxBytes) {
+            if (warned)
+                return false;
+            warned = true;
+            LOGGER.warn("memory budget of " + maxBytes / Helper.MB + "MB exceeded (" + used / Helper.MB
+                    + "MB), but nothing else can be spilled: " + this);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Spillable> entry : structures.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(entry.getKey()).append(':').append(entry.getValue().getHeapBytes() / Helper.MB).append("MB");
+        }
+        return sb.append(isLimited() ? ", budget:" + maxBytes / Helper.MB + "MB" : "").toString();
+    }
+}
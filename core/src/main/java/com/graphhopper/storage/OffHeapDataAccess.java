@@ -0,0 +1,276 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This is a byte-based data structure like RAMDataAccess, but the segments are direct ByteBuffers, i.e. they live
+ * outside of the JVM heap and are not scanned or copied by the garbage collector. This makes a big graph in memory
+ * possible without long GC pauses. The size of the direct memory is limited by -XX:MaxDirectMemorySize, which
+ * defaults to the maximum heap size.
+ * <p>
+ * The data is stored on flush() and read in loadExisting() like for RAM_STORE and the file format is the same, i.e.
+ * a graph stored with RAM_STORE can be loaded with OFF_HEAP and vice versa. Thread safe.
+ */
+public class OffHeapDataAccess extends AbstractDataAccess {
+    private ByteBuffer[] segments = new ByteBuffer[0];
+
+    OffHeapDataAccess(String name, String location, ByteOrder order, int segmentSize) {
+        super(name, location, order, segmentSize);
+    }
+
+    @Override
+    public OffHeapDataAccess create(long bytes) {
+        if (segments.length > 0)
+            throw new IllegalThreadStateException("already created");
+
+        ensureCapacity(Math.max(10 * 4, bytes));
+        return this;
+    }
+
+    @Override
+    public boolean ensureCapacity(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("new capacity has to be strictly positive");
+
+        long cap = getCapacity();
+        long newBytes = bytes - cap;
+        if (newBytes <= 0)
+            return false;
+
+        int segmentsToCreate = (int) (newBytes / segmentSizeInBytes);
+        if (newBytes % segmentSizeInBytes != 0)
+            segmentsToCreate++;
+
+        try {
+            ByteBuffer[] newSegs = Arrays.copyOf(segments, segments.length + segmentsToCreate);
+            for (int i = segments.length; i < newSegs.length; i++) {
+                newSegs[i] = newSegment();
+            }
+            segments = newSegs;
+        } catch (OutOfMemoryError err) {
+            throw new OutOfMemoryError(err.getMessage() + " - problem when allocating new direct memory, see "
+                    + "-XX:MaxDirectMemorySize. Old capacity: " + cap + ", new bytes:" + newBytes
+                    + ", segmentSizeIntsPower:" + segmentSizePower + ", new segments:" + segmentsToCreate
+                    + ", existing:" + segments.length);
+        }
+        return true;
+    }
+
+    private ByteBuffer newSegment() {
+        // direct memory is zeroed like a new byte array
+        return ByteBuffer.allocateDirect(segmentSizeInBytes).order(byteOrder);
+    }
+
+    @Override
+    public boolean loadExisting() {
+        if (segments.length > 0)
+            throw new IllegalStateException("already initialized");
+
+        if (isClosed())
+            throw new IllegalStateException("already closed");
+
+        File file = new File(getFullName());
+        if (!file.exists() || file.length() == 0)
+            return false;
+
+        try (RandomAccessFile raFile = new RandomAccessFile(getFullName(), "r")) {
+            long byteCount = readHeader(raFile) - HEADER_OFFSET;
+            if (byteCount < 0)
+                return false;
+
+            int segmentCount = (int) (byteCount / segmentSizeInBytes);
+            if (byteCount % segmentSizeInBytes != 0)
+                segmentCount++;
+
+            FileChannel channel = raFile.getChannel();
+            channel.position(HEADER_OFFSET);
+            ByteBuffer[] newSegs = new ByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                ByteBuffer segment = newSegment();
+                // like for RAM_STORE the last segment of the file can be incomplete
+                while (segment.hasRemaining() && channel.read(segment) > 0) ;
+                if (segment.position() == 0)
+                    throw new IllegalStateException("segment " + s + " is empty? " + toString());
+
+                segment.clear();
+                newSegs[s] = segment;
+            }
+            segments = newSegs;
+            return true;
+        } catch (IOException ex) {
+            throw new RuntimeException("Problem while loading " + getFullName(), ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (closed)
+            throw new IllegalStateException("already closed");
+
+        try (RandomAccessFile raFile = new RandomAccessFile(getFullName(), "rw")) {
+            long len = getCapacity();
+            writeHeader(raFile, len, segmentSizeInBytes);
+            FileChannel channel = raFile.getChannel();
+            channel.position(HEADER_OFFSET);
+            for (ByteBuffer segment : segments) {
+                // a duplicate has its own position, so concurrent reads of the segment are not affected
+                ByteBuffer area = segment.duplicate();
+                area.clear();
+                while (area.hasRemaining()) {
+                    channel.write(area);
+                }
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException("Couldn't store bytes to " + toString(), ex);
+        }
+    }
+
+    @Override
+    public final void setInt(long bytePos, int value) {
+        assert segmentSizePower > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        if (index + 4 > segmentSizeInBytes)
+            throw new IllegalStateException("Padding required. Currently an int cannot be distributed over two segments. " + bytePos);
+        segments[bufferIndex].putInt(index, value);
+    }
+
+    @Override
+    public final int getInt(long bytePos) {
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        if (index + 4 > segmentSizeInBytes)
+            throw new IllegalStateException("Padding required. Currently an int cannot be distributed over two segments. " + bytePos);
+        return segments[bufferIndex].getInt(index);
+    }
+
+    @Override
+    public final void setShort(long bytePos, short value) {
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        if (index + 2 > segmentSizeInBytes) {
+            // special case if short has to be written into two separate segments
+            segments[bufferIndex].put(index, (byte) value);
+            segments[bufferIndex + 1].put(0, (byte) (value >>> 8));
+        } else {
+            segments[bufferIndex].putShort(index, value);
+        }
+    }
+
+    @Override
+    public final short getShort(long bytePos) {
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        if (index + 2 > segmentSizeInBytes)
+            return (short) ((segments[bufferIndex + 1].get(0) & 0xFF) << 8 | (segments[bufferIndex].get(index) & 0xFF));
+        else
+            return segments[bufferIndex].getShort(index);
+    }
+
+    @Override
+    public void setBytes(long bytePos, byte[] values, int length) {
+        assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        // the bulk methods use the position of the buffer, which must not be shared between threads
+        ByteBuffer seg = segments[bufferIndex].duplicate();
+        int delta = index + length - segmentSizeInBytes;
+        seg.position(index);
+        if (delta > 0) {
+            length -= delta;
+            seg.put(values, 0, length);
+            seg = segments[bufferIndex + 1].duplicate();
+            seg.put(values, length, delta);
+        } else {
+            seg.put(values, 0, length);
+        }
+    }
+
+    @Override
+    public void getBytes(long bytePos, byte[] values, int length) {
+        assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        ByteBuffer seg = segments[bufferIndex].duplicate();
+        int delta = index + length - segmentSizeInBytes;
+        seg.position(index);
+        if (delta > 0) {
+            length -= delta;
+            seg.get(values, 0, length);
+            seg = segments[bufferIndex + 1].duplicate();
+            seg.get(values, length, delta);
+        } else {
+            seg.get(values, 0, length);
+        }
+    }
+
+    @Override
+    public final void setByte(long bytePos, byte value) {
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        segments[bufferIndex].put(index, value);
+    }
+
+    @Override
+    public final byte getByte(long bytePos) {
+        assert segments.length > 0 : "call create or loadExisting before usage!";
+        int bufferIndex = (int) (bytePos >>> segmentSizePower);
+        int index = (int) (bytePos & indexDivisor);
+        return segments[bufferIndex].get(index);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        // free the direct memory now instead of waiting for the garbage collector
+        for (ByteBuffer segment : segments) {
+            MMapDataAccess.cleanMappedByteBuffer(segment);
+        }
+        segments = new ByteBuffer[0];
+        closed = true;
+    }
+
+    @Override
+    public long getCapacity() {
+        return (long) getSegments() * segmentSizeInBytes;
+    }
+
+    @Override
+    public int getSegments() {
+        return segments.length;
+    }
+
+    @Override
+    public DAType getType() {
+        return DAType.OFF_HEAP;
+    }
+}
@@ -68,6 +68,10 @@ public class StorableProperties {
             // TODO at the moment the size is limited to da.segmentSize() !
             byte[] bytes = sw.toString().getBytes(UTF_CS);
             da.setBytes(0, bytes, bytes.length);
+            // clear the remaining bytes of a previous flush, e.g. if a key was removed since then
+            int remaining = (int) Math.min(da.getCapacity() - bytes.length, Integer.MAX_VALUE);
+            if (remaining > 0)
+                da.setBytes(bytes.length, new byte[remaining], remaining);
             da.flush();
         } catch (IOException ex) {
             throw new RuntimeException(ex);
@@ -52,6 +52,8 @@ import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
  */
 public class GHUtility {
     private static final Logger LOGGER = LoggerFactory.getLogger(GHUtility.class);
+    private static final int HILBERT_ORDER = 16;
+    private static final int HILBERT_MAX = (1 << HILBERT_ORDER) - 1;
 
     /**
      * This method could throw an exception if problems like index out of bounds etc
@@ -359,6 +361,71 @@ public class GHUtility {
         return createSortedGraph(g, sortedGraph, nodeList, edgeList);
     }
 
+    /**
+     * Sorts the nodes along a Hilbert curve over the bounds of the graph and the edges by their smaller new node id.
+     * Nodes and edges that are close on the map are then also close in storage, which improves the memory locality
+     * of the routing algorithms and of the location index, also for graphs that are not connected.
+     */
+    public static Graph sortHilbert(Graph g, Graph sortedGraph) {
+        if (g.getTurnCostStorage() != null) {
+            throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
+        }
+        int nodes = g.getNodes();
+        BBox bounds = g.getBounds();
+        double latRange = Math.max(bounds.maxLat - bounds.minLat, 1e-9);
+        double lonRange = Math.max(bounds.maxLon - bounds.minLon, 1e-9);
+        NodeAccess na = g.getNodeAccess();
+        // the node id is stored in the lower 31 bits, so sorting the keys gives the node order
+        long[] nodeKeys = new long[nodes];
+        for (int node = 0; node < nodes; node++) {
+            int x = (int) Math.round((na.getLon(node) - bounds.minLon) / lonRange * HILBERT_MAX);
+            int y = (int) Math.round((na.getLat(node) - bounds.minLat) / latRange * HILBERT_MAX);
+            nodeKeys[node] = hilbertIndex(Math.max(0, Math.min(HILBERT_MAX, x)), Math.max(0, Math.min(HILBERT_MAX, y))) << 31 | node;
+        }
+        Arrays.sort(nodeKeys);
+        IntArrayList nodeList = ArrayUtil.constant(nodes, -1);
+        for (int i = 0; i < nodes; i++) {
+            nodeList.set((int) (nodeKeys[i] & Integer.MAX_VALUE), i);
+        }
+
+        int edges = g.getEdges();
+        long[] edgeKeys = new long[edges];
+        AllEdgesIterator iter = g.getAllEdges();
+        while (iter.next()) {
+            int minNode = Math.min(nodeList.get(iter.getBaseNode()), nodeList.get(iter.getAdjNode()));
+            edgeKeys[iter.getEdge()] = (long) minNode << 32 | iter.getEdge();
+        }
+        Arrays.sort(edgeKeys);
+        IntArrayList edgeList = new IntArrayList(edges);
+        for (long key : edgeKeys) {
+            edgeList.add((int) key);
+        }
+        return createSortedGraph(g, sortedGraph, nodeList, edgeList);
+    }
+
+    /**
+     * @return the position of the cell x, y (both within [0, 2^16)) along a Hilbert curve that starts at 0, 0
+     */
+    static long hilbertIndex(int x, int y) {
+        long index = 0;
+        for (int s = 1 << (HILBERT_ORDER - 1); s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so that the curve continues in the sub cells
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_MAX - x;
+                    y = HILBERT_MAX - y;
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return index;
+    }
+
     static Graph createSortedGraph(Graph fromGraph, Graph toSortedGraph, final IntIndexedContainer oldToNewNodeList, final IntIndexedContainer newToOldEdgeList) {
         if (fromGraph.getTurnCostStorage() != null) {
             throw new IllegalArgumentException("Sorting the graph is currently not supported in the presence of turn costs");
@@ -1364,6 +1364,10 @@ public class GraphHopperTest {
     }
 
     private void executeCHFootRoute(boolean sort) {
+        executeCHFootRoute(sort, "dfs");
+    }
+
+    private void executeCHFootRoute(boolean sort, String sortOrder) {
         final String profile = "profile";
         final String vehicle = "foot";
         final String weighting = "shortest";
@@ -1372,7 +1376,8 @@ public class GraphHopperTest {
                 setOSMFile(MONACO).
                 setProfiles(new Profile(profile).setVehicle(vehicle).setWeighting(weighting)).
                 setStoreOnFlush(true).
-                setSortGraph(sort);
+                setSortGraph(sort).
+                setSortOrder(sortOrder);
         hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
         hopper.importOrLoad();
 
@@ -1400,6 +1405,12 @@ public class GraphHopperTest {
         executeCHFootRoute(false);
     }
 
+    @Test
+    public void testHilbertSortWhileImporting() {
+        executeCHFootRoute(true, "hilbert");
+        executeCHFootRoute(false);
+    }
+
     @Test
     public void testRoundTour() {
         final String profile = "profile";
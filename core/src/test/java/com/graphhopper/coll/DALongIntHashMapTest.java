@@ -0,0 +1,92 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DALongIntHashMapTest {
+    @Test
+    public void testPutAndGet() {
+        DALongIntHashMap map = new DALongIntHashMap(new RAMDirectory(), "map", DAType.RAM, 10, -1);
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.put(0, 5));
+        assertEquals(5, map.put(0, 6));
+        assertEquals(6, map.get(0));
+
+        assertEquals(-1, map.put(-3, 1));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 2));
+        assertEquals(-1, map.put(Long.MIN_VALUE, 3));
+        assertEquals(3, map.put(Long.MIN_VALUE, 4));
+        assertEquals(1, map.get(-3));
+        assertEquals(2, map.get(Long.MAX_VALUE));
+        assertEquals(4, map.get(Long.MIN_VALUE));
+        assertEquals(-1, map.get(3));
+        assertEquals(4, map.getSize());
+    }
+
+    @Test
+    public void testRehash() {
+        DALongIntHashMap map = new DALongIntHashMap(new RAMDirectory(), "map", DAType.RAM, 2, 0);
+        Random rand = new Random(42);
+        GHLongIntHashMap expected = new GHLongIntHashMap();
+        for (int i = 0; i < 10_000; i++) {
+            long key = rand.nextLong();
+            int value = rand.nextInt();
+            expected.put(key, value);
+            map.put(key, value);
+        }
+        assertEquals(expected.size(), map.getSize());
+        rand = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long key = rand.nextLong();
+            rand.nextInt();
+            assertEquals(expected.get(key), map.get(key));
+        }
+        map.clear();
+    }
+
+    @Test
+    public void testSpill(@TempDir Path path) {
+        DALongIntHashMap map = new DALongIntHashMap(new RAMDirectory(path.toString()), "map", DAType.RAM, 2, -1);
+        for (int i = 1; i <= 1000; i++) {
+            map.put(i * 31L, i);
+        }
+        assertTrue(map.getHeapBytes() > 0);
+        assertTrue(map.spill());
+        assertEquals(0, map.getHeapBytes());
+        assertFalse(map.spill());
+        for (int i = 1; i <= 1000; i++) {
+            assertEquals(i, map.get(i * 31L));
+        }
+        // the map still grows after the spill
+        for (int i = 1001; i <= 5000; i++) {
+            map.put(i * 31L, i);
+        }
+        assertEquals(5000, map.getSize());
+        assertEquals(4321, map.get(4321 * 31L));
+        map.clear();
+    }
+}
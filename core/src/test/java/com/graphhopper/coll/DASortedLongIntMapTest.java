@@ -0,0 +1,104 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.RAMDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DASortedLongIntMapTest {
+    @Test
+    public void testPutAndGet() {
+        DASortedLongIntMap map = new DASortedLongIntMap(new RAMDirectory(), "map", DAType.RAM, -1, 2);
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.put(0, 5));
+        assertEquals(5, map.put(0, 6));
+        assertEquals(6, map.get(0));
+
+        assertEquals(-1, map.put(-3, 1));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 2));
+        assertEquals(-1, map.put(-Long.MAX_VALUE, 3));
+        assertEquals(3, map.put(-Long.MAX_VALUE, 4));
+        assertEquals(1, map.get(-3));
+        assertEquals(2, map.get(Long.MAX_VALUE));
+        assertEquals(4, map.get(-Long.MAX_VALUE));
+        assertEquals(-1, map.get(3));
+        assertEquals(4, map.getSize());
+
+        map.optimize();
+        assertEquals(4, map.getSize());
+        assertEquals(6, map.get(0));
+        assertEquals(4, map.get(-Long.MAX_VALUE));
+        assertEquals(-1, map.get(-4));
+        assertEquals(1, map.put(-3, 7));
+        assertEquals(7, map.get(-3));
+        map.clear();
+    }
+
+    @Test
+    public void testRandomKeys() {
+        DASortedLongIntMap map = new DASortedLongIntMap(new RAMDirectory(), "map", DAType.RAM, -1, 100);
+        Random rand = new Random(42);
+        GHLongIntHashMap expected = new GHLongIntHashMap();
+        for (int i = 0; i < 20_000; i++) {
+            // mostly clustered keys like OSM node IDs, but also some big jumps
+            long key = rand.nextInt(10) == 0 ? rand.nextLong() / 4 : rand.nextInt(50_000);
+            int value = rand.nextInt();
+            expected.put(key, value);
+            map.put(key, value);
+            if (i % 1000 == 0)
+                assertEquals(expected.size(), map.getSize());
+        }
+        map.optimize();
+        assertEquals(expected.size(), map.getSize());
+        expected.forEach((com.carrotsearch.hppc.procedures.LongIntProcedure) (key, value) -> assertEquals(value, map.get(key)));
+        for (int i = 0; i < 1000; i++) {
+            long key = 50_000 + rand.nextInt(50_000);
+            if (!expected.containsKey(key))
+                assertEquals(-1, map.get(key));
+        }
+        map.clear();
+    }
+
+    @Test
+    public void testSpill(@TempDir Path path) {
+        DASortedLongIntMap map = new DASortedLongIntMap(new RAMDirectory(path.toString()), "map", DAType.RAM, -1, 100);
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 3L, i);
+        }
+        map.optimize();
+        long heapBytes = map.getHeapBytes();
+        assertTrue(map.spill());
+        assertTrue(map.getHeapBytes() < heapBytes);
+        assertFalse(map.spill());
+        for (int i = 10_000; i < 12_000; i++) {
+            map.put(i * 3L, i);
+        }
+        for (int i = 0; i < 12_000; i++) {
+            assertEquals(i, map.get(i * 3L));
+        }
+        assertEquals(-1, map.get(1));
+        map.clear();
+    }
+}
@@ -22,8 +22,7 @@ import org.junit.jupiter.api.Test;
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -48,4 +47,35 @@ public class OSMElementTest {
         instance.setTags(null);
         assertFalse(instance.hasTag("test", "xy"));
     }
+
+    @Test
+    public void testSetAndRemoveTags() {
+        ReaderElement instance = new ReaderNode(1, 2, 3);
+        assertFalse(instance.hasTags());
+        for (int i = 0; i < 10; i++) {
+            instance.setTag("key" + i, "value" + i);
+        }
+        // a key that is not a literal and not interned
+        String highway = new StringBuilder("high").append("way").toString();
+        instance.setTag(highway, "primary");
+        instance.setTag("key3", "changed");
+        assertEquals("changed", instance.getTag("key3"));
+        assertEquals("primary", instance.getTag("highway"));
+        assertEquals("value9", instance.getTag(new String("key9")));
+        assertEquals(11, instance.getTags().size());
+
+        instance.removeTag("key0");
+        instance.removeTag("highway");
+        instance.removeTag("unknown");
+        assertNull(instance.getTag("key0"));
+        assertFalse(instance.hasTag("highway"));
+        assertEquals("value1", instance.getTag("key1"));
+        assertEquals("value9", instance.getTag("key9"));
+        assertEquals("key1=value1\nkey2=value2\nkey3=changed\nkey4=value4\nkey5=value5\nkey6=value6\nkey7=value7\n"
+                + "key8=value8\nkey9=value9\n", instance.tagsToString());
+
+        instance.clearTags();
+        assertFalse(instance.hasTags());
+        assertEquals(-1, instance.getTag("key1", -1));
+    }
 }
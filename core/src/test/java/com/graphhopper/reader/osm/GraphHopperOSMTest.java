@@ -31,6 +31,7 @@ import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.CHStorage;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
@@ -120,6 +121,232 @@ public class GraphHopperOSMTest {
         }
     }
 
+    @Test
+    public void testMMapWarmUp() throws InterruptedException {
+        String profile = "car_profile";
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", testOsm).
+                putObject("graph.location", ghLoc).
+                putObject("graph.dataaccess", "MMAP").
+                putObject("graph.flag_encoders", "car").
+                setProfiles(Collections.singletonList(new Profile(profile).setVehicle("car").setWeighting("fastest"))).
+                setCHProfiles(Collections.singletonList(new CHProfile(profile)));
+        GraphHopper hopper = new GraphHopper().init(config).importOrLoad();
+        // no warm-up after the import
+        assertNull(hopper.getMMapWarmUp());
+        assertTrue(hopper.isWarmedUp());
+        hopper.close();
+
+        config.putObject("graph.dataaccess.mmap.preload", "nodes, edges,shortcuts_*");
+        instance = new GraphHopper().init(config);
+        assertTrue(instance.load(ghLoc));
+        assertTrue(instance.getMMapWarmUp().awaitDone(10, TimeUnit.SECONDS));
+        assertTrue(instance.isWarmedUp());
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+    }
+
+    @Test
+    public void testMMapWarmUpAfterResumedImport() throws InterruptedException {
+        String profile = "car_profile";
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", testOsm).
+                putObject("graph.location", ghLoc).
+                putObject("graph.dataaccess", "MMAP").
+                putObject("graph.dataaccess.mmap.preload", "nodes, edges,shortcuts_*").
+                putObject("graph.flag_encoders", "car").
+                setProfiles(Collections.singletonList(new Profile(profile).setVehicle("car").setWeighting("fastest"))).
+                setCHProfiles(Collections.singletonList(new CHProfile(profile)));
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void prepareCH(boolean closeEarly) {
+                throw new IllegalStateException("simulated failure");
+            }
+        }.init(config);
+        assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        hopper.close();
+
+        // the resumed import is loaded like an existing graph, so it is warmed up as well
+        instance = new GraphHopper().init(config);
+        assertTrue(instance.load(ghLoc));
+        assertEquals("", instance.getGraphHopperStorage().getProperties().get("import.checkpoint"));
+        assertNotNull(instance.getMMapWarmUp());
+        assertTrue(instance.getMMapWarmUp().awaitDone(10, TimeUnit.SECONDS));
+        assertTrue(instance.isWarmedUp());
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+    }
+
+    @Test
+    public void testCompactEdges() {
+        String profile = "car_profile";
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", testOsm).
+                putObject("graph.location", ghLoc).
+                putObject("graph.compact_edges", true).
+                putObject("graph.flag_encoders", "car").
+                setProfiles(Collections.singletonList(new Profile(profile).setVehicle("car").setWeighting("fastest"))).
+                setCHProfiles(Collections.singletonList(new CHProfile(profile)));
+        GraphHopper hopper = new GraphHopper().init(config).importOrLoad();
+        assertTrue(hopper.getGraphHopperStorage().isCompact());
+        GHResponse rsp = hopper.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+        hopper.close();
+
+        instance = new GraphHopper().init(config);
+        assertTrue(instance.load(ghLoc));
+        assertTrue(instance.getGraphHopperStorage().isCompact());
+        rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+    }
+
+    @Test
+    public void testCSRAdjacency() {
+        String profile = "car_profile";
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("graph.location", ghLoc).
+                putObject("graph.flag_encoders", "car").
+                setProfiles(Collections.singletonList(new Profile(profile).setVehicle("car").setWeighting("fastest"))).
+                setLMProfiles(Collections.singletonList(new LMProfile(profile)));
+        GraphHopper hopper = new GraphHopper().init(config).importOrLoad();
+        assertFalse(hopper.getGraphHopperStorage().hasCSRAdjacency());
+        List<String> expected = routeRandomly(hopper, profile);
+        hopper.close();
+
+        // the index is only created during an import, as a loaded graph is not stored again
+        config.putObject("graph.csr_adjacency", true);
+        hopper = new GraphHopper().init(config).importOrLoad();
+        assertFalse(hopper.getGraphHopperStorage().hasCSRAdjacency());
+        hopper.close();
+        Helper.removeDir(new File(ghLoc));
+
+        hopper = new GraphHopper().init(config).importOrLoad();
+        assertTrue(hopper.getGraphHopperStorage().hasCSRAdjacency());
+        // the edges are iterated in the same order, so even the landmarks and the routes are the same
+        assertEquals(expected, routeRandomly(hopper, profile));
+        hopper.close();
+
+        instance = new GraphHopper().init(config);
+        assertTrue(instance.load(ghLoc));
+        assertTrue(instance.getGraphHopperStorage().hasCSRAdjacency());
+        assertEquals(expected, routeRandomly(instance, profile));
+    }
+
+    private static List<String> routeRandomly(GraphHopper hopper, String profile) {
+        Random rnd = new Random(42);
+        BBox bounds = hopper.getGraphHopperStorage().getBounds();
+        List<String> routes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            GHRequest req = new GHRequest(
+                    bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat), bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon),
+                    bounds.minLat + rnd.nextDouble() * (bounds.maxLat - bounds.minLat), bounds.minLon + rnd.nextDouble() * (bounds.maxLon - bounds.minLon)).
+                    setProfile(profile);
+            GHResponse rsp = hopper.route(req);
+            routes.add(rsp.hasErrors() ? rsp.getErrors().toString() : rsp.getBest().getDistance() + " " + rsp.getBest().getRouteWeight());
+        }
+        return routes;
+    }
+
+    @Test
+    public void testResumeInterruptedImport() {
+        final String profile = "car_profile";
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void prepareCH(boolean closeEarly) {
+                throw new IllegalStateException("simulated failure");
+            }
+        }.
+                setStoreOnFlush(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        IllegalStateException ex = assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        assertEquals("simulated failure", ex.getMessage());
+        hopper.close();
+
+        // the OSM file is not read again and the finished LM preparation is loaded
+        instance = new GraphHopper() {
+            @Override
+            protected void importOSM() {
+                throw new IllegalStateException("the import should have been resumed");
+            }
+        }.
+                setStoreOnFlush(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        instance.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        instance.importOrLoad();
+        assertFalse(instance.getLMPreparationHandler().getPreparations().get(0).isPrepared());
+        assertTrue(instance.getCHPreparationHandler().getPreparations().get(0).isPrepared());
+        assertEquals("", instance.getGraphHopperStorage().getProperties().get("import.checkpoint"));
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+        instance.close();
+
+        // the resumed import was stored completely
+        instance = new GraphHopper().
+                setStoreOnFlush(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest"));
+        instance.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        instance.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        assertTrue(instance.load(ghLoc));
+        assertFalse(instance.getCHPreparationHandler().getPreparations().get(0).isPrepared());
+        rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+    }
+
+    @Test
+    public void testRedoRemovedCHPreparation() {
+        final String profile = "car_profile";
+        GraphHopper hopper = new GraphHopper().
+                setStoreOnFlush(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+        hopper.close();
+
+        // replace the CH graph with an empty one like an update of the graph does, the date of the preparation is kept
+        GraphHopperStorage graph = new GraphBuilder(hopper.getEncodingManager()).setRAM(ghLoc, true).build();
+        assertTrue(graph.loadExisting());
+        assertFalse(graph.getProperties().get(Parameters.CH.PREPARE + "date." + profile).isEmpty());
+        Helper.removeDir(new File(ghLoc, "nodes_ch_" + profile));
+        Helper.removeDir(new File(ghLoc, "shortcuts_" + profile));
+        CHStorage chStore = new CHStorage(graph.getDirectory(), profile, -1, false);
+        chStore.create();
+        chStore.flush();
+        chStore.close();
+        graph.getProperties().put(Parameters.CH.PREPARE + "done", false);
+        graph.flush();
+        graph.close();
+
+        // the CH is prepared again when the graph is loaded, because no interrupted import is resumed
+        instance = new GraphHopper().
+                setStoreOnFlush(true).
+                setProfiles(new Profile(profile).setVehicle("car").setWeighting("fastest")).
+                setGraphHopperLocation(ghLoc).
+                setOSMFile(testOsm);
+        instance.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        instance.importOrLoad();
+        assertTrue(instance.getCHPreparationHandler().getPreparations().get(0).isPrepared());
+        assertTrue(instance.getGraphHopperStorage().getRoutingCHGraph(profile).getNodes() > 0);
+        GHResponse rsp = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4).setProfile(profile));
+        assertFalse(rsp.hasErrors());
+        assertEquals(3, rsp.getBest().getPoints().size());
+    }
+
     @Test
     public void testLoadOSMNoCH() {
         final String profile = "profile";
@@ -23,6 +23,8 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperTest;
 import com.graphhopper.config.Profile;
+import com.graphhopper.reader.OSMTurnRelation;
+import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.ElevationProvider;
@@ -46,6 +48,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -148,6 +151,22 @@ public class OSMReaderTest {
         return index.findClosest(lat, lon, EdgeFilter.ALL_EDGES).getClosestNode();
     }
 
+    @Test
+    public void testMemoryBudget() {
+        GraphHopper hopper = new GraphHopperFacade(file1);
+        // the temporary maps are spilled to disc right away
+        hopper.getReaderConfig().setMemoryBudget(1);
+        hopper.importOrLoad();
+        GraphHopperStorage graph = hopper.getGraphHopperStorage();
+        assertEquals(4, graph.getNodes());
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 51.2492152);
+        int n20 = AbstractGraphStorageTester.getIdOf(graph, 52);
+        assertEquals(GHUtility.asSet(n20), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n10)));
+        EdgeIterator iter = carOutExplorer.setBaseNode(n20);
+        assertTrue(iter.next());
+        AbstractGraphStorageTester.assertPList(Helper.createPointList(51.25, 9.43), iter.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
     @Test
     public void testSort() {
         GraphHopper hopper = new GraphHopperFacade(file1).setSortGraph(true).importOrLoad();
@@ -863,6 +882,25 @@ public class OSMReaderTest {
         assertEquals("2014-01-02T00:10:14Z", graph.getProperties().get("datareader.data.date"));
     }
 
+    @Test
+    public void testSkipOptions() throws Exception {
+        File file = new File(getClass().getResource("test-osm6.pbf").getFile());
+        assertEquals("[3, 0, 0, 0, 1, 2]", readTypes(file, SkipOptions.none()).toString());
+        assertEquals("[3, 1, 2]", readTypes(file, new SkipOptions(true, false, false)).toString());
+        assertEquals("[3, 0, 0, 0]", readTypes(file, new SkipOptions(false, true, true)).toString());
+    }
+
+    private static List<Integer> readTypes(File file, SkipOptions skipOptions) throws Exception {
+        List<Integer> types = new ArrayList<>();
+        try (OSMInput in = new OSMInputFile(file).setWorkerThreads(2).setSkipOptions(skipOptions).open()) {
+            ReaderElement item;
+            while ((item = in.getNext()) != null) {
+                types.add(item.getType());
+            }
+        }
+        return types;
+    }
+
     @Test
     public void testCrossBoundary_issue667() {
         GraphHopper hopper = new GraphHopperFacade("test-osm-waterway.xml").importOrLoad();
@@ -944,6 +982,125 @@ public class OSMReaderTest {
         assertEquals(RoadAccess.YES, edgeParis.get(roadAccessEnc));
     }
 
+    @Test
+    public void testWayThreads() throws IOException {
+        File file = new File("../core/files/monaco.osm.gz");
+        assertSameGraph(readWithWayThreads(file, 1), readWithWayThreads(file, 4));
+    }
+
+    @Test
+    public void testWayFlagsCache() throws IOException {
+        File file = new File("../core/files/monaco.osm.gz");
+        assertSameGraph(readWithConfig(file, new OSMReaderConfig()),
+                readWithConfig(file, new OSMReaderConfig().setWayFlagsCacheSize(50_000)));
+    }
+
+    @Test
+    public void testMissingNodes() throws IOException {
+        // nodes that are referenced by ways but missing in the file must not end up as nodes of the graph
+        File file = new File(getClass().getResource("test-osm-missing-nodes.xml").getFile());
+        GraphHopperStorage graph = readWithConfig(file, new OSMReaderConfig());
+        assertEquals(3, graph.getNodes());
+        assertEquals(2, graph.getEdges());
+        for (int node = 0; node < graph.getNodes(); node++) {
+            assertTrue(graph.getNodeAccess().getLat(node) > 51, "node " + node);
+            assertTrue(graph.getNodeAccess().getLon(node) > 9, "node " + node);
+        }
+        // the edge of the first way keeps its pillar node and the second way is cut at the first missing node
+        AllEdgesIterator iter = graph.getAllEdges();
+        int points = 0;
+        while (iter.next()) {
+            points += iter.fetchWayGeometry(FetchMode.ALL).size();
+        }
+        assertEquals(5, points);
+    }
+
+    @Test
+    public void testSortedTurnRelations() throws IOException {
+        File file = new File(getClass().getResource("test-restrictions-unsorted.xml").getFile());
+        List<String> fileOrder = readTurnCosts(file, true);
+        List<String> sorted = readTurnCosts(file, false);
+        // the relations with missing ways or via nodes are skipped in both cases
+        assertEquals(5, sorted.size(), sorted.toString());
+        assertEquals(fileOrder, sorted);
+
+        // an extract with many restrictions, where some of the ways are outside of the extract
+        file = new File("../core/files/moscow.osm.gz");
+        fileOrder = readTurnCosts(file, true);
+        sorted = readTurnCosts(file, false);
+        assertTrue(sorted.size() > 50, "turn cost entries: " + sorted.size());
+        assertEquals(fileOrder, sorted);
+    }
+
+    /**
+     * @param fileOrder true to store every turn relation as soon as it is read, like before they were sorted by
+     *                  their via node
+     * @return the turn cost entries of all nodes
+     */
+    private List<String> readTurnCosts(File file, boolean fileOrder) throws IOException {
+        EncodingManager em = EncodingManager.create("car|turn_costs=true,bike|turn_costs=true");
+        GraphHopperStorage graph = new GraphBuilder(em).withTurnCosts(true).build();
+        OSMReader reader = fileOrder ? new OSMReader(graph, new OSMReaderConfig()) {
+            @Override
+            protected void processRelation(ReaderRelation relation) {
+                if (!relation.hasTag("type", "restriction"))
+                    return;
+                for (OSMTurnRelation turnRelation : createTurnRelations(relation)) {
+                    if (getInternalNodeIdOfOsmNode(turnRelation.getViaOsmNodeId()) != EMPTY_NODE)
+                        em.handleTurnRelationTags(turnRelation, this, graph);
+                }
+            }
+        } : new OSMReader(graph, new OSMReaderConfig());
+        reader.setCountryRuleFactory(new CountryRuleFactory());
+        reader.setAreaIndex(createCountryIndex());
+        reader.setFile(file);
+        reader.readGraph();
+
+        DecimalEncodedValue carTCEnc = em.getDecimalEncodedValue(TurnCost.key("car"));
+        DecimalEncodedValue bikeTCEnc = em.getDecimalEncodedValue(TurnCost.key("bike"));
+        List<String> turnCosts = new ArrayList<>();
+        TurnCostStorage.TurnRelationIterator iter = graph.getTurnCostStorage().getAllTurnRelations();
+        while (iter.next()) {
+            turnCosts.add(iter.getFromEdge() + "-" + iter.getViaNode() + "-" + iter.getToEdge() + ": "
+                    + iter.getCost(carTCEnc) + ", " + iter.getCost(bikeTCEnc));
+        }
+        return turnCosts;
+    }
+
+    private static void assertSameGraph(GraphHopperStorage expectedGraph, GraphHopperStorage actualGraph) {
+        assertEquals(expectedGraph.getNodes(), actualGraph.getNodes());
+        assertEquals(expectedGraph.getEdges(), actualGraph.getEdges());
+        for (int node = 0; node < expectedGraph.getNodes(); node++) {
+            assertEquals(expectedGraph.getNodeAccess().getLat(node), actualGraph.getNodeAccess().getLat(node), 1e-9);
+            assertEquals(expectedGraph.getNodeAccess().getLon(node), actualGraph.getNodeAccess().getLon(node), 1e-9);
+        }
+        for (int edge = 0; edge < expectedGraph.getEdges(); edge++) {
+            EdgeIteratorState expected = expectedGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState actual = actualGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(expected.getBaseNode(), actual.getBaseNode());
+            assertEquals(expected.getAdjNode(), actual.getAdjNode());
+            assertEquals(expected.getDistance(), actual.getDistance(), 1e-9);
+            assertEquals(expected.getFlags(), actual.getFlags());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.fetchWayGeometry(FetchMode.ALL), actual.fetchWayGeometry(FetchMode.ALL));
+        }
+    }
+
+    private GraphHopperStorage readWithWayThreads(File file, int wayThreads) throws IOException {
+        return readWithConfig(file, new OSMReaderConfig().setWayThreads(wayThreads));
+    }
+
+    private GraphHopperStorage readWithConfig(File file, OSMReaderConfig config) throws IOException {
+        EncodingManager em = EncodingManager.create("car,bike,foot");
+        GraphHopperStorage graph = new GraphBuilder(em).build();
+        OSMReader reader = new OSMReader(graph, config);
+        reader.setCountryRuleFactory(new CountryRuleFactory());
+        reader.setAreaIndex(createCountryIndex());
+        reader.setFile(file);
+        reader.readGraph();
+        return graph;
+    }
+
     private AreaIndex<CustomArea> createCountryIndex() {
         return new AreaIndex<>(readCountries());
     }
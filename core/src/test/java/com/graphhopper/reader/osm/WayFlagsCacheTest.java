@@ -0,0 +1,105 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.Country;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.shapes.GHPoint;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WayFlagsCacheTest {
+    private final EncodingManager em = EncodingManager.create("car,bike");
+
+    private IntsRef handle(WayFlagsCache cache, ReaderWay way) {
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        assertTrue(em.acceptWay(way, acceptWay));
+        IntsRef relFlags = em.createRelationFlags();
+        IntsRef edgeFlags = cache.handleWayTags(em, way, acceptWay, relFlags);
+        assertEquals(em.handleWayTags(way, acceptWay, relFlags), edgeFlags);
+        return edgeFlags;
+    }
+
+    private static ReaderWay createWay(long id, String... tags) {
+        ReaderWay way = new ReaderWay(id);
+        for (int i = 0; i < tags.length; i += 2) {
+            way.setTag(tags[i], tags[i + 1]);
+        }
+        way.setTag("estimated_distance", 100.0 * id);
+        way.setTag("estimated_center", new GHPoint(id, id));
+        way.setTag("country", Country.DEU);
+        return way;
+    }
+
+    @Test
+    public void testSameTags() {
+        WayFlagsCache cache = new WayFlagsCache(100);
+        handle(cache, createWay(1, "highway", "residential", "name", "A"));
+        handle(cache, createWay(2, "name", "B", "highway", "residential"));
+        handle(cache, createWay(3, "highway", "residential", "ref", "B 1", "name:de", "C"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        handle(cache, createWay(4, "highway", "residential", "oneway", "yes"));
+        assertEquals(2, cache.getMisses());
+        ReaderWay way = createWay(5, "highway", "residential");
+        way.setTag("country", Country.AUT);
+        handle(cache, way);
+        assertEquals(3, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testNotCached() {
+        WayFlagsCache cache = new WayFlagsCache(100);
+        handle(cache, createWay(1, "route", "ferry", "motor_vehicle", "yes"));
+        handle(cache, createWay(2, "route", "ferry", "motor_vehicle", "yes"));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+
+        ReaderWay way = createWay(3, "highway", "primary");
+        way.setTag("custom_value", 5);
+        assertNull(WayFlagsCache.createKey(way, em.createRelationFlags()));
+        assertNotNull(WayFlagsCache.createKey(createWay(4, "highway", "primary"), em.createRelationFlags()));
+    }
+
+    @Test
+    public void testRelationFlags() {
+        ReaderWay way = createWay(1, "highway", "primary");
+        IntsRef relFlags = em.createRelationFlags();
+        WayFlagsCache.Key key = WayFlagsCache.createKey(way, relFlags);
+        assertEquals(key, WayFlagsCache.createKey(createWay(2, "highway", "primary"), relFlags));
+        relFlags.ints[0] = 1;
+        assertNotEquals(key, WayFlagsCache.createKey(way, relFlags));
+    }
+
+    @Test
+    public void testCopy() {
+        WayFlagsCache cache = new WayFlagsCache(1);
+        IntsRef flags = handle(cache, createWay(1, "highway", "track"));
+        flags.ints[0] = ~flags.ints[0];
+        handle(cache, createWay(2, "highway", "track"));
+        assertEquals(1, cache.getHits());
+        // the cache is cleared if it is full
+        handle(cache, createWay(3, "highway", "primary"));
+        handle(cache, createWay(4, "highway", "track"));
+        assertEquals(1, cache.getHits());
+    }
+}
@@ -30,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Random;
 
 import static com.graphhopper.util.EdgeIteratorState.REVERSE_STATE;
 import static com.graphhopper.util.FetchMode.*;
@@ -107,6 +108,111 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester {
         assertTrue(graph.isFrozen());
     }
 
+    @Test
+    public void testCompactEdges() {
+        // a small segment size to test records that would otherwise be distributed over two segments
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), true, 128).create(defaultSize);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+        na.setNode(2, 12, 12, 0.4);
+        EdgeIteratorState iter2 = GHUtility.setSpeed(60, true, true, carEncoder, graph.edge(0, 1).setDistance(100));
+        iter2.setWayGeometry(Helper.createPointList3D(1.5, 1, 0, 2, 3, 0));
+        EdgeIteratorState iter1 = GHUtility.setSpeed(60, true, true, carEncoder, graph.edge(0, 2).setDistance(200));
+        iter1.setWayGeometry(Helper.createPointList3D(3.5, 4.5, 0, 5, 6, 0));
+        GHUtility.setSpeed(60, true, true, carEncoder, graph.edge(9, 10).setDistance(200));
+        GHUtility.setSpeed(60, true, true, carEncoder, graph.edge(9, 11).setDistance(200));
+        GHUtility.setSpeed(60, true, false, carEncoder, graph.edge(1, 2).setDistance(120));
+        iter1.setName("named street1");
+        iter2.setName("named street2");
+        // a loop, a long distance and distant node ids need the wider fields
+        graph.edge(12, 12).setDistance(0);
+        graph.edge(13, 100_000).setDistance(50_000);
+        Random rnd = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            EdgeIteratorState edge = graph.edge(20 + rnd.nextInt(100), 20 + rnd.nextInt(100)).setDistance(rnd.nextDouble() * 1000);
+            if (rnd.nextBoolean())
+                edge.setName("street " + rnd.nextInt(10));
+        }
+        String edges = edgesToString(graph);
+
+        assertThrows(IllegalStateException.class, () -> graph.compactEdges());
+        graph.freeze();
+        graph.compactEdges();
+        assertTrue(graph.isCompact());
+        assertEquals(edges, edgesToString(graph));
+        checkGraph(graph);
+        assertEquals("named street1", graph.getEdgeIteratorState(iter1.getEdge(), iter1.getAdjNode()).getName());
+
+        // the flags can still be changed, but nothing else
+        EdgeIteratorState edge = graph.getEdgeIteratorState(iter2.getEdge(), 1);
+        edge.set(carAccessEnc, false, false);
+        assertFalse(graph.getEdgeIteratorState(iter2.getEdge(), 1).get(carAccessEnc));
+        edge.set(carAccessEnc, true, true);
+        assertThrows(IllegalStateException.class, () -> edge.setDistance(10));
+        assertThrows(IllegalStateException.class, () -> edge.setName("other"));
+
+        graph.flush();
+        graph.close();
+
+        graph = newGHStorage(new MMapDirectory(defaultGraphLoc), true);
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isCompact());
+        assertEquals(edges, edgesToString(graph));
+        checkGraph(graph);
+    }
+
+    @Test
+    public void testCSRAdjacency() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false, 128).create(defaultSize);
+        Random rnd = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            graph.edge(rnd.nextInt(100), rnd.nextInt(100)).setDistance(rnd.nextDouble() * 1000);
+        }
+        // a node without edges
+        graph.getNodeAccess().setNode(150, 1, 1);
+        String edges = edgesToString(graph);
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+
+        assertThrows(IllegalStateException.class, () -> graph.createCSRAdjacency());
+        graph.freeze();
+        graph.createCSRAdjacency();
+        assertTrue(graph.hasCSRAdjacency());
+        // the edges are iterated in the same order, with and without the index
+        assertEquals(edges, edgesToString(graph));
+        assertEquals(edges, edgesToString(graph, explorer));
+        EdgeIterator iter = graph.createEdgeExplorer().setBaseNode(150);
+        assertFalse(iter.next());
+        assertThrows(IllegalStateException.class, () -> iter.detach(false));
+
+        graph.flush();
+        graph.close();
+
+        graph = newGHStorage(new MMapDirectory(defaultGraphLoc), false);
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.hasCSRAdjacency());
+        assertEquals(edges, edgesToString(graph));
+        graph.compactEdges();
+        assertEquals(edges, edgesToString(graph));
+    }
+
+    private static String edgesToString(Graph g) {
+        return edgesToString(g, g.createEdgeExplorer());
+    }
+
+    private static String edgesToString(Graph g, EdgeExplorer explorer) {
+        StringBuilder sb = new StringBuilder();
+        for (int node = 0; node < g.getNodes(); node++) {
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                sb.append(iter.getEdge()).append(": ").append(iter.getBaseNode()).append("-").append(iter.getAdjNode())
+                        .append(", ").append(iter.getDistance()).append(", ").append(iter.getFlags())
+                        .append(", ").append(iter.getName()).append(", ").append(iter.fetchWayGeometry(ALL)).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
     protected void checkGraph(Graph g) {
         NodeAccess na = g.getNodeAccess();
         assertTrue(na.is3D());
@@ -59,4 +59,40 @@ public class MMapDataAccessTest extends DataAccessTest {
         assertEquals(123, da.getInt(7 * 4));
         da.close();
     }
+
+    @Test
+    public void testReadOnly() throws InterruptedException {
+        DataAccess da = createDataAccess(name);
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        // spans two segments
+        da.setBytes(120, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, 12);
+        da.setInt(200, -456);
+        da.flush();
+        da.close();
+
+        final DataAccess roDA = new MMapDataAccess(name, directory, defaultOrder, false, 128);
+        assertTrue(roDA.loadExisting());
+        assertEquals(DAType.MMAP, roDA.getType());
+        Thread[] threads = new Thread[4];
+        final int[] errors = new int[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                byte[] bytes = new byte[12];
+                for (int i = 0; i < 10_000; i++) {
+                    roDA.getBytes(120, bytes, bytes.length);
+                    if (roDA.getInt(7 * 4) != 123 || roDA.getInt(200) != -456 || roDA.getShort(127) != (short) (9 << 8 | 8)
+                            || roDA.getByte(131) != 12 || bytes[0] != 1 || bytes[11] != 12)
+                        errors[thread]++;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertArrayEquals(new int[threads.length], errors);
+        roDA.close();
+    }
 }
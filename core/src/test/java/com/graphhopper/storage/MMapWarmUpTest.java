@@ -0,0 +1,65 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MMapWarmUpTest {
+    @Test
+    public void testMatches() {
+        assertTrue(MMapWarmUp.matches(Arrays.asList("nodes", "shortcuts_*"), "nodes"));
+        assertTrue(MMapWarmUp.matches(Arrays.asList("nodes", "shortcuts_*"), "shortcuts_car"));
+        assertFalse(MMapWarmUp.matches(Arrays.asList("nodes", "shortcuts_*"), "nodes_ch_car"));
+        assertFalse(MMapWarmUp.matches(Collections.emptyList(), "nodes"));
+    }
+
+    @Test
+    public void testWarmUp(@TempDir Path path) throws InterruptedException {
+        Directory dir = new MMapDirectory(path.toString()).create();
+        dir.create("nodes", 128).create(1000);
+        dir.create("shortcuts_car", 128).create(500);
+        dir.create("geometry", 128).create(1000);
+        dir.create("edges", DAType.RAM, 128).create(1000);
+
+        MMapWarmUp warmUp = new MMapWarmUp(dir, Arrays.asList("nodes", "edges", "shortcuts_*"), 2);
+        assertFalse(warmUp.isDone());
+        assertEquals(0, warmUp.getProgress());
+        assertTrue(warmUp.start().awaitDone(10, TimeUnit.SECONDS));
+        assertEquals(1, warmUp.getProgress());
+        warmUp.stop();
+        dir.close();
+    }
+
+    @Test
+    public void testNothingToWarmUp(@TempDir Path path) throws InterruptedException {
+        Directory dir = new MMapDirectory(path.toString()).create();
+        dir.create("nodes", 128).create(1000);
+        MMapWarmUp warmUp = new MMapWarmUp(dir, Collections.singletonList("edges"), 1);
+        assertTrue(warmUp.isDone());
+        assertTrue(warmUp.start().awaitDone(10, TimeUnit.SECONDS));
+        dir.close();
+    }
+}
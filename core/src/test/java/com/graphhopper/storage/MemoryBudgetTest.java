@@ -0,0 +1,83 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryBudgetTest {
+    private static class Structure implements MemoryBudget.Spillable {
+        long bytes;
+        final boolean spillable;
+
+        Structure(long bytes, boolean spillable) {
+            this.bytes = bytes;
+            this.spillable = spillable;
+        }
+
+        @Override
+        public long getHeapBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean spill() {
+            if (!spillable || bytes == 0)
+                return false;
+            bytes = 0;
+            return true;
+        }
+    }
+
+    @Test
+    public void testSpillBiggestFirst() {
+        Structure small = new Structure(300, true);
+        Structure big = new Structure(600, true);
+        Structure fixed = new Structure(200, false);
+        MemoryBudget budget = new MemoryBudget(1000).register("small", small).register("big", big).register("fixed", fixed);
+        assertEquals(1100, budget.getHeapBytes());
+        assertTrue(budget.check());
+        assertEquals(0, big.bytes);
+        assertEquals(300, small.bytes);
+        assertEquals(1, budget.getSpills());
+
+        // the allocation that is about to happen counts as well
+        assertTrue(budget.check(600));
+        assertEquals(0, small.bytes);
+        assertEquals(2, budget.getSpills());
+
+        assertFalse(budget.check(900));
+        assertEquals(200, fixed.bytes);
+
+        budget.unregister("fixed");
+        assertTrue(budget.check(900));
+        assertEquals(0, budget.getHeapBytes());
+    }
+
+    @Test
+    public void testUnlimited() {
+        Structure structure = new Structure(Long.MAX_VALUE / 2, true);
+        MemoryBudget budget = new MemoryBudget(0).register("structure", structure);
+        assertFalse(budget.isLimited());
+        assertTrue(budget.check(Long.MAX_VALUE / 4));
+        assertEquals(0, budget.getSpills());
+        assertEquals(Long.MAX_VALUE / 2, structure.bytes);
+        assertThrows(IllegalArgumentException.class, () -> new MemoryBudget(-1));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapDataAccessTest extends DataAccessTest {
+    @Override
+    public DataAccess createDataAccess(String name, int segmentSize) {
+        return new OffHeapDataAccess(name, directory, defaultOrder, segmentSize);
+    }
+
+    @Test
+    public void testMixRAM2OffHeap() {
+        DataAccess da = new RAMDataAccess(name, directory, true, defaultOrder, 128);
+        assertFalse(da.loadExisting());
+        da.create(300);
+        da.setInt(7 * 4, 123);
+        da.setInt(200, 456);
+        da.setHeader(4, 7);
+        da.flush();
+        da.close();
+        da = createDataAccess(name, 128);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(456, da.getInt(200));
+        assertEquals(7, da.getHeader(4));
+        assertEquals(3, da.getSegments());
+        da.close();
+    }
+
+    @Test
+    public void testMixOffHeap2RAM() {
+        DataAccess da = createDataAccess(name);
+        assertFalse(da.loadExisting());
+        da.create(100);
+        da.setInt(7 * 4, 123);
+        da.flush();
+        da.close();
+        da = new RAMDataAccess(name, directory, true, defaultOrder, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testDirectory() {
+        Directory dir = new GHDirectory(directory, DAType.fromString("off_heap")).create();
+        DataAccess da = dir.create(name);
+        assertTrue(da instanceof OffHeapDataAccess);
+        assertEquals(DAType.OFF_HEAP, da.getType());
+        assertTrue(da.getType().isStoring());
+        assertFalse(da.getType().isInMemory());
+        assertEquals(DAType.OFF_HEAP, DAType.getPreferredInt(DAType.OFF_HEAP));
+        dir.clear();
+    }
+}
@@ -110,6 +110,49 @@ public class GHUtilityTest {
         assertEquals(1, newG.getEdgeIteratorState(2, Integer.MIN_VALUE).getBaseNode());
     }
 
+    @Test
+    public void testSortHilbert() {
+        Graph g = initUnsorted(createGraph(), carEncoder);
+        Graph newG = GHUtility.sortHilbert(g, createGraph());
+        assertEquals(g.getNodes(), newG.getNodes());
+        assertEquals(g.getEdges(), newG.getEdges());
+        assertEquals(getLengthOfAllEdges(g), getLengthOfAllEdges(newG), 1e-4);
+        // the curve starts in the south west, then goes north and ends in the south east
+        NodeAccess na = newG.getNodeAccess();
+        assertEquals(0, na.getLat(0), 1e-4); // 0
+        assertEquals(2.3, na.getLat(1), 1e-4); // 6
+        assertEquals(3.0, na.getLat(2), 1e-4); // 3
+        assertEquals(2.5, na.getLat(8), 1e-4); // 1
+
+        // edges are sorted by their smaller node: 1-0 comes first and 8-1 last
+        EdgeIteratorState edge = newG.getEdgeIteratorState(0, Integer.MIN_VALUE);
+        assertEquals(0, Math.min(edge.getBaseNode(), edge.getAdjNode()));
+        int prevMinNode = 0;
+        for (int i = 1; i < newG.getEdges(); i++) {
+            edge = newG.getEdgeIteratorState(i, Integer.MIN_VALUE);
+            int minNode = Math.min(edge.getBaseNode(), edge.getAdjNode());
+            assertTrue(minNode >= prevMinNode);
+            prevMinNode = minNode;
+        }
+    }
+
+    @Test
+    public void testHilbertIndex() {
+        int max = (1 << 16) - 1;
+        assertEquals(0, GHUtility.hilbertIndex(0, 0));
+        assertEquals(1, GHUtility.hilbertIndex(1, 0));
+        assertEquals(2, GHUtility.hilbertIndex(1, 1));
+        assertEquals(3, GHUtility.hilbertIndex(0, 1));
+        assertEquals(1L << 30, GHUtility.hilbertIndex(0, max / 2 + 1));
+        assertEquals((1L << 32) - 1, GHUtility.hilbertIndex(max, 0));
+        // the curve fills every block before it leaves it
+        for (int x = 0; x < 8; x++) {
+            for (int y = 0; y < 8; y++) {
+                assertTrue(GHUtility.hilbertIndex(x, y) < 64);
+            }
+        }
+    }
+
     @Test
     public void testSortDirected() {
         Graph g = createGraph();
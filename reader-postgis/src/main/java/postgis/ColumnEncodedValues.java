@@ -0,0 +1,116 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.IntsRef;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Writes the values of table columns directly into encoded values of the edge flags, without the detour via the
+ * string tags of a ReaderWay and the tag parsers. The mapping is configured as a comma separated list of encoded
+ * value names, each optionally followed by '=' and the column name if it differs, e.g.
+ * <code>province_id,district_id,max_width=berongnenl</code>. The encoded values must exist, i.e. be listed in
+ * graph.encoded_values, and null values are stored as 0 or false.
+ * <p>
+ * The values of a road are parsed once in readRoad and then applied to the flags of all its edges.
+ */
+class ColumnEncodedValues {
+    private final List<EncodedValue> encodedValues = new ArrayList<>();
+    private final List<String> columns = new ArrayList<>();
+    private final double[] values;
+
+    ColumnEncodedValues(EncodingManager encodingManager, String mapping) {
+        for (String entry : mapping.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty())
+                continue;
+            int index = entry.indexOf('=');
+            String name = index < 0 ? entry : entry.substring(0, index).trim();
+            String column = index < 0 ? entry : entry.substring(index + 1).trim();
+            if (!encodingManager.hasEncodedValue(name))
+                throw new IllegalArgumentException("Encoded value " + name + " for column " + column
+                        + " does not exist, add it to graph.encoded_values");
+            EncodedValue encodedValue = encodingManager.getEncodedValue(name, EncodedValue.class);
+            if (encodedValue instanceof EnumEncodedValue || encodedValue instanceof StringEncodedValue
+                    || !(encodedValue instanceof IntEncodedValue || encodedValue instanceof DecimalEncodedValue
+                    || encodedValue instanceof BooleanEncodedValue))
+                throw new IllegalArgumentException("Only boolean, integer and decimal encoded values can be read from columns: " + name);
+            encodedValues.add(encodedValue);
+            columns.add(column);
+        }
+        values = new double[encodedValues.size()];
+    }
+
+    boolean isEmpty() {
+        return encodedValues.isEmpty();
+    }
+
+    List<String> getColumns() {
+        return columns;
+    }
+
+    boolean contains(String column) {
+        return columns.contains(column);
+    }
+
+    /**
+     * Parses the values of the specified road, they are used for all following calls of apply.
+     */
+    void readRoad(Function<String, Object> road) {
+        for (int i = 0; i < values.length; i++) {
+            Object value = road.apply(columns.get(i));
+            if (value == null) {
+                values[i] = 0;
+            } else if (value instanceof Number) {
+                values[i] = ((Number) value).doubleValue();
+            } else if (encodedValues.get(i) instanceof BooleanEncodedValue) {
+                String str = value.toString();
+                values[i] = "true".equals(str) || "t".equals(str) || "1".equals(str) ? 1 : 0;
+            } else {
+                values[i] = Double.parseDouble(value.toString());
+            }
+        }
+    }
+
+    void apply(IntsRef edgeFlags) {
+        for (int i = 0; i < values.length; i++) {
+            EncodedValue encodedValue = encodedValues.get(i);
+            if (encodedValue instanceof BooleanEncodedValue) {
+                BooleanEncodedValue booleanEnc = (BooleanEncodedValue) encodedValue;
+                booleanEnc.setBool(false, edgeFlags, values[i] != 0);
+                if (booleanEnc.isStoreTwoDirections())
+                    booleanEnc.setBool(true, edgeFlags, values[i] != 0);
+            } else if (encodedValue instanceof DecimalEncodedValue) {
+                DecimalEncodedValue decimalEnc = (DecimalEncodedValue) encodedValue;
+                decimalEnc.setDecimal(false, edgeFlags, values[i]);
+                if (decimalEnc.isStoreTwoDirections())
+                    decimalEnc.setDecimal(true, edgeFlags, values[i]);
+            } else {
+                IntEncodedValue intEnc = (IntEncodedValue) encodedValue;
+                intEnc.setInt(false, edgeFlags, (int) values[i]);
+                if (intEnc.isStoreTwoDirections())
+                    intEnc.setInt(true, edgeFlags, (int) values[i]);
+            }
+        }
+    }
+}
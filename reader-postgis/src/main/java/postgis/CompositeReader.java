@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.reader.dem.ElevationProvider;
+import com.graphhopper.reader.osm.OSMReader;
+import com.graphhopper.routing.OSMReaderConfig;
+import com.graphhopper.routing.util.AreaIndex;
+import com.graphhopper.routing.util.CustomArea;
+import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
+import com.graphhopper.storage.GraphHopperStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Imports an OSM file and the roads of a PostGIS table into the same graph. The roads are read from the database
+ * and spooled in a separate thread while the OSM file is imported, so both sources are read at the same time. The
+ * graph itself is only written by the thread calling readGraph: the roads are added after the ways of the OSM file,
+ * still before the OSMReader releases the tag parsers.
+ * <p>
+ * Junctions of the roads and other points of them are connected to an OSM node if the node is within
+ * merge.max_distance meters (default 0.5), see NodeSpatialHash. Only the tower nodes of the OSM graph are
+ * considered, i.e. a road ending in the middle of an OSM way is not connected to it.
+ */
+public class CompositeReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompositeReader.class);
+    private final GraphHopperStorage ghStorage;
+    private final OSMPostgisReader postgisReader;
+    private final OSMReader osmReader;
+    private final double maxDistance;
+    private Future<?> postgisRead;
+
+    public CompositeReader(GraphHopperStorage ghStorage, OSMReaderConfig config, Map<String, String> postgisParams) {
+        this.ghStorage = ghStorage;
+        this.maxDistance = Double.parseDouble(postgisParams.getOrDefault("merge.max_distance", "0.5"));
+        // the OSMPostgisReader releases the temporary storage of its OSMReader base class, so it has to be created
+        // before the reader of the OSM file, which uses the same names in the graph directory
+        this.postgisReader = new OSMPostgisReader(ghStorage, postgisParams);
+        this.osmReader = new OSMReader(ghStorage, config) {
+            @Override
+            protected void finishedReading() {
+                mergeRoads();
+                super.finishedReading();
+            }
+        };
+    }
+
+    public CompositeReader setFile(File osmFile) {
+        osmReader.setFile(osmFile);
+        return this;
+    }
+
+    public CompositeReader setAreaIndex(AreaIndex<CustomArea> areaIndex) {
+        osmReader.setAreaIndex(areaIndex);
+        return this;
+    }
+
+    public CompositeReader setElevationProvider(ElevationProvider eleProvider) {
+        osmReader.setElevationProvider(eleProvider);
+        return this;
+    }
+
+    public CompositeReader setCountryRuleFactory(CountryRuleFactory countryRuleFactory) {
+        osmReader.setCountryRuleFactory(countryRuleFactory);
+        return this;
+    }
+
+    public OSMPostgisReader getPostgisReader() {
+        return postgisReader;
+    }
+
+    public void readGraph() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "postgis-roads");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            postgisRead = executor.submit(postgisReader::readRoadsForMerge);
+            osmReader.readGraph();
+        } finally {
+            // stops reading the roads if the import of the OSM file failed
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the roads and adds them to the graph, which is called from the thread writing the graph.
+     */
+    private void mergeRoads() {
+        try {
+            postgisRead.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading the roads", ex);
+        } catch (ExecutionException ex) {
+            throw Utils.asUnchecked(ex.getCause());
+        }
+        int osmNodes = ghStorage.getNodes();
+        int osmEdges = ghStorage.getEdges();
+        postgisReader.mergeRoads(new NodeSpatialHash(ghStorage, maxDistance));
+        LOGGER.info("Added " + nf(ghStorage.getNodes() - osmNodes) + " nodes and " + nf(ghStorage.getEdges() - osmEdges)
+                + " edges from PostGIS to the " + nf(osmNodes) + " nodes and " + nf(osmEdges) + " edges from OSM");
+    }
+
+    public Date getDataDate() {
+        return osmReader.getDataDate();
+    }
+}
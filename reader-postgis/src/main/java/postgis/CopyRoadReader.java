@@ -0,0 +1,194 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Streams a roads table via COPY ... TO STDOUT (FORMAT binary) instead of reading GeoTools features. The geometry is
+ * transferred as WKB and decoded straight into a reused RoadGeometry and the attributes are transferred as text, so
+ * apart from the attribute strings no objects are created per road.
+ * <p>
+ * As there are no features, overridden getFilter and acceptFeature methods of the PostgisReader are not applied and
+ * the table is always read in one stream. The configured filters are added as WHERE clause via getFilterSql.
+ */
+class CopyRoadReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CopyRoadReader.class);
+    private static final byte[] SIGNATURE = "PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int WKB_LINESTRING = 2;
+    private static final int WKB_MULTILINESTRING = 5;
+    private final PostgisReader reader;
+    private final Map<String, String> postgisParams;
+    private final String tableName;
+    private final String geometryColumn;
+    private final String[] columns;
+    private byte[] bytes = new byte[1 << 12];
+    private ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+    CopyRoadReader(PostgisReader reader, Map<String, String> postgisParams, String tableName, String[] columns) {
+        this.reader = reader;
+        this.postgisParams = postgisParams;
+        this.tableName = tableName;
+        this.geometryColumn = postgisParams.getOrDefault("copy.geometry_column", "geom");
+        this.columns = columns;
+    }
+
+    /**
+     * Passes the attributes, in the order of the columns, and the geometry of every road to the handler. Both
+     * arguments are reused for the next road.
+     */
+    void read(BiConsumer<String[], RoadGeometry> handler) {
+        String sql = createCopySql();
+        LOGGER.info("Reading " + tableName + " via " + sql);
+        String url = "jdbc:postgresql://" + postgisParams.get("host") + ":" + postgisParams.get("port") + "/"
+                + postgisParams.get("database");
+        try (Connection connection = DriverManager.getConnection(url, postgisParams.get("user"), postgisParams.get("passwd"));
+             InputStream in = new PGCopyInputStream(connection.unwrap(PGConnection.class), sql)) {
+            read(in, handler);
+        } catch (SQLException | IOException ex) {
+            throw Utils.asUnchecked(ex);
+        }
+    }
+
+    /**
+     * Reads the roads from a binary COPY stream with the geometry as first field followed by the columns.
+     */
+    void read(InputStream stream, BiConsumer<String[], RoadGeometry> handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        readHeader(in);
+        String[] attributes = new String[columns.length];
+        RoadGeometry geometry = new RoadGeometry();
+        while (true) {
+            int fields = in.readShort();
+            // the trailer is a field count of -1
+            if (fields == -1)
+                break;
+            if (fields != columns.length + 1)
+                throw new IllegalStateException("Expected " + (columns.length + 1) + " fields but got " + fields);
+
+            geometry.clear();
+            int length = readField(in);
+            if (length > 0)
+                decodeWkb(geometry);
+            for (int i = 0; i < columns.length; i++) {
+                length = readField(in);
+                attributes[i] = length < 0 ? null : new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            handler.accept(attributes, geometry);
+        }
+    }
+
+    private String createCopySql() {
+        StringBuilder sb = new StringBuilder("COPY (SELECT ST_AsBinary(ST_Force2D(")
+                .append(Utils.quoteIdentifier(geometryColumn)).append("))");
+        for (String column : columns) {
+            sb.append(", ").append(Utils.quoteIdentifier(column)).append("::text");
+        }
+        sb.append(" FROM ");
+        String schema = postgisParams.getOrDefault("schema", "");
+        if (!schema.isEmpty())
+            sb.append(Utils.quoteIdentifier(schema)).append('.');
+        sb.append(Utils.quoteIdentifier(tableName));
+        String filter = reader.getFilterSql(geometryColumn);
+        if (!filter.isEmpty())
+            sb.append(" WHERE ").append(filter);
+        sb.append(") TO STDOUT (FORMAT binary)");
+        return sb.toString();
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE))
+            throw new IllegalStateException("Not a binary COPY stream");
+        // flags
+        in.readInt();
+        int extensionLength = in.readInt();
+        in.skipBytes(extensionLength);
+    }
+
+    /**
+     * Reads the next field into the byte buffer.
+     *
+     * @return the length of the field or -1 for null
+     */
+    private int readField(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return length;
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        in.readFully(bytes, 0, length);
+        // cast for Java 8 compatibility, where the Buffer methods do not return a ByteBuffer
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit(length);
+        return length;
+    }
+
+    private void decodeWkb(RoadGeometry geometry) {
+        int type = readWkbHeader();
+        if (type == WKB_LINESTRING) {
+            decodeLineString(geometry);
+        } else if (type == WKB_MULTILINESTRING) {
+            int lines = buffer.getInt();
+            for (int i = 0; i < lines; i++) {
+                type = readWkbHeader();
+                if (type != WKB_LINESTRING)
+                    throw new IllegalArgumentException("Unsupported geometry type " + type + " in multi line string");
+                decodeLineString(geometry);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type " + type + " in " + tableName);
+        }
+    }
+
+    private int readWkbHeader() {
+        buffer.order(buffer.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        return buffer.getInt();
+    }
+
+    private void decodeLineString(RoadGeometry geometry) {
+        int points = buffer.getInt();
+        for (int i = 0; i < points; i++) {
+            double lon = buffer.getDouble();
+            double lat = buffer.getDouble();
+            geometry.addPoint(lat, lon);
+        }
+        geometry.finishLine();
+    }
+}
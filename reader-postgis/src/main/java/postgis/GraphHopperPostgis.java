@@ -19,16 +19,32 @@ package postgis;
 
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.Profile;
 import com.graphhopper.reader.osm.OSMReader;
+import com.graphhopper.routing.DefaultWeightingFactory;
 import com.graphhopper.routing.RouterConfig;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.Subnetwork;
+import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks;
+import com.graphhopper.routing.subnetwork.PrepareRoutingSubnetworks.PrepareJob;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.AreaIndex;
 import com.graphhopper.routing.util.CustomArea;
-import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.Parameters.CH;
+import com.graphhopper.util.Parameters.Landmark;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.util.*;
 
 import static com.graphhopper.util.GHUtility.readCountries;
@@ -44,6 +60,12 @@ public class GraphHopperPostgis extends GraphHopper {
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final HashSet<OSMPostgisReader.EdgeAddedListener> edgeAddedListeners = new HashSet<>();
     private final Map<String, String> postgisParams = new HashMap<>();
+    private final String updateColumn;
+    private final DAType dataAccessType;
+    private final int segmentSize;
+    private final int minNetworkSize;
+    // an OSM file that is imported together with the roads table, see CompositeReader
+    private final String mergeOSMFile;
 
     public GraphHopperPostgis(GraphHopperConfig ghConfig) {
         super.setOSMFile(ghConfig.getString("datareader.file", ""));
@@ -56,6 +78,159 @@ public class GraphHopperPostgis extends GraphHopper {
         postgisParams.put("passwd", ghConfig.getString("db.passwd", ""));
         postgisParams.put("tags_to_copy", ghConfig.getString("db.tags_to_copy", ""));
         postgisParams.put("datareader.file", ghConfig.getString("datareader.file", ""));
+        postgisParams.put("single_pass", ghConfig.getString("db.single_pass", "false"));
+        postgisParams.put("coord_state.dataaccess", ghConfig.getString("db.coord_state.dataaccess", ""));
+        // used by the GeoTools JDBC DataStore, a fetch size > 0 makes PostgreSQL stream the rows via a cursor
+        postgisParams.put("fetch size", ghConfig.getString("db.fetch_size", "1000"));
+        postgisParams.put("partition.column", ghConfig.getString("db.partition.column", ""));
+        postgisParams.put("partition.values", ghConfig.getString("db.partition.values", ""));
+        postgisParams.put("partition.ranges", ghConfig.getString("db.partition.ranges", "0"));
+        postgisParams.put("fetch_threads", ghConfig.getString("db.fetch_threads", "4"));
+        postgisParams.put("fetch_queue_size", ghConfig.getString("db.fetch_queue_size", "10000"));
+        postgisParams.put("filter.bbox", ghConfig.getString("db.filter.bbox", ""));
+        postgisParams.put("filter.column", ghConfig.getString("db.filter.column", ""));
+        postgisParams.put("filter.values", ghConfig.getString("db.filter.values", ""));
+        postgisParams.put("edge_threads", ghConfig.getString("db.edge_threads", "1"));
+        postgisParams.put("encoded_value_columns", ghConfig.getString("db.encoded_value_columns", ""));
+        postgisParams.put("copy", ghConfig.getString("db.copy", "false"));
+        postgisParams.put("copy.geometry_column", ghConfig.getString("db.copy.geometry_column", "geom"));
+        postgisParams.put("memory_budget", ghConfig.getString("datareader.memory_budget", "0"));
+        postgisParams.put("merge.max_distance", ghConfig.getString("db.merge.max_distance", "0.5"));
+        mergeOSMFile = ghConfig.getString("db.merge.osm_file", "");
+        updateColumn = ghConfig.getString("db.update.column", "");
+        postgisParams.put("update.column", updateColumn);
+        if (!updateColumn.isEmpty() && ghConfig.getBool("graph.do_sort", false))
+            throw new IllegalArgumentException("db.update.column cannot be used with graph.do_sort as sorting changes the edge ids");
+        if (!updateColumn.isEmpty() && !mergeOSMFile.isEmpty())
+            throw new IllegalArgumentException("db.update.column cannot be used with db.merge.osm_file");
+        dataAccessType = DAType.fromString(ghConfig.getString("graph.dataaccess", "RAM_STORE"));
+        segmentSize = ghConfig.getInt("graph.dataaccess.segment_size", -1);
+        minNetworkSize = ghConfig.getInt("prepare.min_network_size", 200);
+    }
+
+    /**
+     * Also called by init for graph.compact_edges.
+     */
+    @Override
+    public GraphHopper setCompactEdges(boolean compactEdges) {
+        if (compactEdges && !updateColumn.isEmpty())
+            throw new IllegalArgumentException("db.update.column cannot be used with graph.compact_edges as compacted edges cannot be changed");
+        return super.setCompactEdges(compactEdges);
+    }
+
+    @Override
+    public GraphHopper importOrLoad() {
+        if (!updateColumn.isEmpty())
+            updateGraph();
+        return super.importOrLoad();
+    }
+
+    /**
+     * Applies the roads changed since the last import to an existing graph, before it is loaded. Only the
+     * preparations that depend on the changed data are removed, so that they are redone when loading the graph. If
+     * the changes cannot be applied in place the graph is removed, which results in a full import.
+     */
+    private void updateGraph() {
+        if (!new File(getGraphHopperLocation()).exists())
+            return;
+        EncodingManager em = getEncodingManager();
+        GHDirectory dir = new GHDirectory(getGraphHopperLocation(), dataAccessType);
+        GraphHopperStorage ghStorage = new GraphHopperStorage(dir, em, hasElevation(), em.needsTurnCostsSupport(), segmentSize);
+        if (!ghStorage.loadExisting())
+            return;
+
+        boolean fullImport = false;
+        try {
+            StorableProperties properties = ghStorage.getProperties();
+            String importDate = properties.get("datareader.import.date");
+            if (importDate.isEmpty()) {
+                logger.warn("Cannot update the graph as datareader.import.date is missing");
+                return;
+            }
+            DateFormat f = createFormatter();
+            Date since = f.parse(importDate);
+            Date updateDate = new Date();
+            logger.info("start updating graph with roads changed since " + importDate);
+            OSMPostgisReader reader = new OSMPostgisReader(ghStorage, postgisParams);
+            OSMPostgisReader.UpdateStats stats = reader.updateGraph(since);
+            if (stats == null) {
+                fullImport = true;
+                return;
+            }
+
+            if (stats.getWeightChanges() > 0) {
+                prepareSubnetworks(ghStorage);
+                removeCHPreparations(ghStorage);
+                removeFiles("landmarks_", "subnetwork_landmarks_");
+                properties.put(Landmark.PREPARE + "done", false);
+            }
+            if (stats.getGeometryChanges() > 0)
+                removeFiles("location_index");
+            properties.put("datareader.import.date", f.format(updateDate));
+            ghStorage.flush();
+        } catch (ParseException ex) {
+            throw new IllegalStateException("Cannot parse datareader.import.date of " + getGraphHopperLocation(), ex);
+        } finally {
+            ghStorage.close();
+        }
+
+        if (fullImport) {
+            logger.warn("Removing " + getGraphHopperLocation() + " as the changed roads cannot be applied in place");
+            clean();
+        }
+    }
+
+    /**
+     * The flags of the updated edges were recreated from the tags, so the subnetworks have to be searched again.
+     */
+    private void prepareSubnetworks(GraphHopperStorage ghStorage) {
+        EncodingManager em = ghStorage.getEncodingManager();
+        List<PrepareJob> jobs = new ArrayList<>();
+        List<BooleanEncodedValue> subnetworkEncs = new ArrayList<>();
+        for (Profile profile : getProfiles()) {
+            Weighting weighting = new DefaultWeightingFactory(ghStorage, em).createWeighting(profile,
+                    new PMap().putObject(Parameters.Routing.U_TURN_COSTS, 0), false);
+            BooleanEncodedValue subnetworkEnc = em.getBooleanEncodedValue(Subnetwork.key(profile.getName()));
+            subnetworkEncs.add(subnetworkEnc);
+            jobs.add(new PrepareJob(subnetworkEnc, weighting));
+        }
+        AllEdgesIterator iter = ghStorage.getAllEdges();
+        while (iter.next()) {
+            for (BooleanEncodedValue subnetworkEnc : subnetworkEncs) {
+                iter.set(subnetworkEnc, false);
+            }
+        }
+        new PrepareRoutingSubnetworks(ghStorage, jobs).setMinNetworkSize(minNetworkSize).doWork();
+    }
+
+    /**
+     * Replaces the CH graphs with empty ones, which are prepared again when the graph is loaded.
+     */
+    private void removeCHPreparations(GraphHopperStorage ghStorage) {
+        for (CHProfile chProfile : getCHPreparationHandler().getCHProfiles()) {
+            String name = chProfile.getProfile();
+            removeFiles("nodes_ch_" + name, "shortcuts_" + name);
+            CHStorage chStore = new CHStorage(ghStorage.getDirectory(), name, segmentSize, getProfile(name).isTurnCosts());
+            chStore.create();
+            chStore.flush();
+            chStore.close();
+            ghStorage.getProperties().remove(CH.PREPARE + "date." + name);
+        }
+        ghStorage.getProperties().put(CH.PREPARE + "done", false);
+    }
+
+    private void removeFiles(String... prefixes) {
+        File[] files = new File(getGraphHopperLocation()).listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            for (String prefix : prefixes) {
+                if (file.getName().startsWith(prefix)) {
+                    removeDir(file);
+                    break;
+                }
+            }
+        }
     }
 
     @Override
@@ -66,17 +241,46 @@ public class GraphHopperPostgis extends GraphHopper {
 
         RouterConfig routerConfig = super.getRouterConfig();
 
+        if (!mergeOSMFile.isEmpty()) {
+            importMerged(ghStorage);
+            return;
+        }
         OSMReader reader = new OSMPostgisReader(ghStorage, postgisParams).setFile(_getOSMFile()).
                 setElevationProvider(super.getElevationProvider()).
                 setCountryRuleFactory(super.getCountryRuleFactory());
         logger.info("using " + ghStorage.toString() + ", memory:" + getMemInfo());
+        Date importDate = new Date();
         try {
             reader.readGraph();
         } catch (IOException ex) {
             throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
         }
         DateFormat f = createFormatter();
-        ghStorage.getProperties().put("datareader.import.date", f.format(new Date()));
+        // use the start of the import, so that roads changed while reading are part of the next update
+        ghStorage.getProperties().put("datareader.import.date", f.format(importDate));
+        if (reader.getDataDate() != null)
+            ghStorage.getProperties().put("datareader.data.date", f.format(reader.getDataDate()));
+    }
+
+    /**
+     * Imports the roads table together with the OSM file of db.merge.osm_file into one graph.
+     */
+    private void importMerged(GraphHopperStorage ghStorage) {
+        logger.info("merging the roads with " + mergeOSMFile);
+        CompositeReader reader = new CompositeReader(ghStorage, getReaderConfig(), postgisParams).
+                setFile(new File(mergeOSMFile)).
+                setAreaIndex(new AreaIndex<>(readCountries())).
+                setElevationProvider(super.getElevationProvider()).
+                setCountryRuleFactory(super.getCountryRuleFactory());
+        logger.info("using " + ghStorage.toString() + ", memory:" + getMemInfo());
+        Date importDate = new Date();
+        try {
+            reader.readGraph();
+        } catch (IOException ex) {
+            throw new RuntimeException("Cannot read file " + mergeOSMFile, ex);
+        }
+        DateFormat f = createFormatter();
+        ghStorage.getProperties().put("datareader.import.date", f.format(importDate));
         if (reader.getDataDate() != null)
             ghStorage.getProperties().put("datareader.data.date", f.format(reader.getDataDate()));
     }
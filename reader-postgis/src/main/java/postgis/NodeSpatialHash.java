@@ -0,0 +1,95 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.coll.GHLongIntHashMap;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+
+import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
+
+/**
+ * Finds the node of a graph that is closest to a coordinate within a small distance. The nodes are put into the
+ * cells of a grid, where the size of a cell is the maximum distance, so only the cells around the coordinate have
+ * to be searched. The nodes of a cell are chained via an array, i.e. the index needs about 20 bytes per node.
+ * <p>
+ * Nodes added to the graph after the creation of the index are not found.
+ */
+class NodeSpatialHash {
+    private static final double METERS_PER_DEGREE = DIST_EARTH.calcDist(0, 0, 1, 0);
+    private final DistanceCalc distCalc = DIST_EARTH;
+    private final NodeAccess nodeAccess;
+    private final double maxDistance;
+    private final double cellSize;
+    // the first node + 1 of every cell, 0 means an empty cell
+    private final GHLongIntHashMap cells;
+    // the next node + 1 of the same cell for every node
+    private final int[] next;
+
+    /**
+     * @param maxDistance the maximum distance in meters between a coordinate and the node found for it
+     */
+    NodeSpatialHash(Graph graph, double maxDistance) {
+        if (maxDistance < 0)
+            throw new IllegalArgumentException("maxDistance must not be negative but was " + maxDistance);
+        this.nodeAccess = graph.getNodeAccess();
+        this.maxDistance = maxDistance;
+        // a tiny cell size would make the grid pointless, but also works for a maximum distance of 0
+        this.cellSize = Math.max(maxDistance, 0.1) / METERS_PER_DEGREE;
+        int nodes = graph.getNodes();
+        this.cells = new GHLongIntHashMap(nodes, 0.7f);
+        this.next = new int[nodes];
+        for (int node = 0; node < nodes; node++) {
+            long cell = cellKey(cell(nodeAccess.getLat(node)), cell(nodeAccess.getLon(node)));
+            next[node] = cells.put(cell, node + 1);
+        }
+    }
+
+    private int cell(double degree) {
+        return (int) Math.floor(degree / cellSize);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the closest node within the maximum distance or -1 if there is none
+     */
+    int findNode(double lat, double lon) {
+        int latCell = cell(lat);
+        int lonCell = cell(lon);
+        // a cell is narrower than maxDistance in east-west direction, except at the equator
+        int lonCells = (int) Math.ceil(1 / Math.max(Math.cos(Math.toRadians(Math.abs(lat) + cellSize)), 0.01));
+        int closest = -1;
+        double closestDistance = maxDistance;
+        for (int y = latCell - 1; y <= latCell + 1; y++) {
+            for (int x = lonCell - lonCells; x <= lonCell + lonCells; x++) {
+                for (int node = cells.get(cellKey(y, x)) - 1; node >= 0; node = next[node] - 1) {
+                    double distance = distCalc.calcDist(lat, lon, nodeAccess.getLat(node), nodeAccess.getLon(node));
+                    if (distance <= closestDistance) {
+                        closest = node;
+                        closestDistance = distance;
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+}
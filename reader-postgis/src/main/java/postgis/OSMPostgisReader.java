@@ -17,25 +17,39 @@
  */
 package postgis;
 
-import com.graphhopper.coll.GHObjectIntHashMap;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
+import com.graphhopper.coll.DALongIntHashMap;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.coll.GHLongHashSet;
+import com.graphhopper.coll.GHLongIntHashMap;
+import com.graphhopper.coll.LongIntMap;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.ev.BooleanEncodedValue;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EncodingManager;
-import com.graphhopper.storage.GraphHopperStorage;
-import com.graphhopper.storage.IntsRef;
+import com.graphhopper.storage.*;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
-import org.geotools.data.DataStore;
-import org.geotools.feature.FeatureIterator;
-import org.locationtech.jts.geom.Coordinate;
+import org.geotools.factory.CommonFactoryFinder;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
 import static com.graphhopper.util.Helper.nf;
@@ -52,18 +66,52 @@ import static com.graphhopper.util.Helper.toLowerCase;
 public class OSMPostgisReader extends PostgisReader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OSMPostgisReader.class);
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
 
     private static final int COORD_STATE_UNKNOWN = 0;
     private static final int COORD_STATE_PILLAR = -2;
+    // a tower node without an id yet, see readRoadsForMerge
+    private static final int COORD_STATE_TOWER = -1;
     private static final int FIRST_NODE_ID = 1;
+    /**
+     * The columns read in addEdge, tagsToCopy and the columns of encoded_value_columns are appended to them in
+     * roadColumns
+     */
+    private static final String[] ROAD_COLUMNS = {"osm_id", "berongnenl", "berongnenn", "military_id",
+            "province_id", "district_id", "commune_id", "loaiduongb", "maxspeed", "oneway"};
     private final String[] tagsToCopy;
+    // the attributes of a road are passed around as a string array in the order of this array
+    private final String[] roadColumns;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final Map<String, String> postgisParams;
+    private final boolean copy;
+    private final ColumnEncodedValues columnEncodedValues;
+    private final boolean singlePass;
+    private final int edgeThreads;
+    private static final int EDGE_BATCH_SIZE = 1000;
+    private RoadSpool roadSpool;
     private File roadsFile;
-    private GHObjectIntHashMap<Coordinate> coordState = new GHObjectIntHashMap<>(1000, 0.7f);
+    private static final double COORD_KEY_FACTOR = 1e6;
+    private final String coordStateType;
+    // maps the rounded coordinates, packed into a long via coordKey, to the node id or state
+    private LongIntMap coordState;
     private final DistanceCalc distCalc = DIST_EARTH;
     private final HashSet<EdgeAddedListener> edgeAddedListeners = new HashSet<>();
     private int nextNodeId = FIRST_NODE_ID;
+    // the node ids are only assigned in mergeRoads if the roads are read concurrently to the graph
+    private boolean deferNodeIds;
+    // the state of a node is its id plus this offset, as node 0 of an existing graph can be used when merging
+    private int nodeIdOffset = 0;
+    private int deferredTowers;
     protected long zeroCounter = 0;
     private final IntsRef tempRelFlags;
+    private final GHLongHashSet tmpSet = new GHLongHashSet();
+    private int tmpJunctionCounter = 0;
+    private int tmpEdgeCounter = 0;
+    private static final String EDGE_OSM_IDS = "postgis_edge_osm_ids";
+    private final String updateColumn;
+    // the osm_id of the road of every edge, only kept if updates are enabled
+    private DataAccess edgeOsmIds;
 
     public OSMPostgisReader(GraphHopperStorage ghStorage, Map<String, String> postgisParams) {
         super(ghStorage, postgisParams);
@@ -74,6 +122,24 @@ public class OSMPostgisReader extends PostgisReader {
         } else {
             this.tagsToCopy = tmpTagsToCopy.split(",");
         }
+        String tmpEncodedValueColumns = postgisParams.get("encoded_value_columns");
+        this.columnEncodedValues = new ColumnEncodedValues(encodingManager,
+                tmpEncodedValueColumns == null ? "" : tmpEncodedValueColumns);
+        Set<String> tmpColumns = new LinkedHashSet<>(Arrays.asList(ROAD_COLUMNS));
+        tmpColumns.addAll(Arrays.asList(tagsToCopy));
+        tmpColumns.addAll(columnEncodedValues.getColumns());
+        this.roadColumns = tmpColumns.toArray(new String[0]);
+        for (int i = 0; i < roadColumns.length; i++) {
+            columnIndex.put(roadColumns[i], i);
+        }
+        this.postgisParams = postgisParams;
+        this.copy = Boolean.parseBoolean(postgisParams.get("copy"));
+        this.singlePass = Boolean.parseBoolean(postgisParams.get("single_pass"));
+        String tmpCoordStateType = postgisParams.get("coord_state.dataaccess");
+        this.coordStateType = tmpCoordStateType == null ? "" : tmpCoordStateType;
+        this.edgeThreads = Integer.parseInt(postgisParams.getOrDefault("edge_threads", "1"));
+        String tmpUpdateColumn = postgisParams.get("update.column");
+        this.updateColumn = tmpUpdateColumn == null ? "" : tmpUpdateColumn;
         tempRelFlags = encodingManager.createRelationFlags();
         if (tempRelFlags.length != 2)
             throw new IllegalArgumentException("Cannot use relation flags with != 2 integers");
@@ -84,164 +150,586 @@ public class OSMPostgisReader extends PostgisReader {
 
     @Override
     void processJunctions() {
-        DataStore dataStore = null;
-        FeatureIterator<SimpleFeature> roads = null;
-        int tmpJunctionCounter = 0;
-
-        try {
-            dataStore = openPostGisStore();
-            roads = getFeatureIterator(dataStore, roadsFile.getName());
-            HashSet<Coordinate> tmpSet = new HashSet<>();
-            while (roads.hasNext()) {
-                SimpleFeature road = roads.next();
+        coordState = createCoordStateMap();
+        registerCoordState();
+        if (singlePass)
+            roadSpool = new RoadSpool(graphStorage.getDirectory());
 
-                if (!acceptFeature(road)) {
-                    continue;
-                }
+        readRoads((attributes, geometry) -> {
+            processJunctions(geometry);
 
-                for (Coordinate[] points : getCoords(road)) {
-                    tmpSet.clear();
-                    for (int i = 0; i < points.length; i++) {
-                        Coordinate c = points[i];
-                        c = roundCoordinate(c);
-
-                        // don't add the same coord twice for the same edge - happens with bad geometry, i.e.
-                        // duplicate coords or a road which forms a circle (e.g. roundabout)
-                        if (tmpSet.contains(c))
-                            continue;
-
-                        tmpSet.add(c);
-
-                        // skip if its already a node
-                        int state = coordState.get(c);
-                        if (state >= FIRST_NODE_ID) {
-                            continue;
-                        }
-
-                        if (i == 0 || i == points.length - 1 || state == COORD_STATE_PILLAR) {
-                            // turn into a node if its the first or last
-                            // point, or already appeared in another edge
-                            int nodeId = nextNodeId++;
-                            coordState.put(c, nodeId);
-                            saveTowerPosition(nodeId, c);
-                        } else if (state == COORD_STATE_UNKNOWN) {
-                            // mark it as a pillar (which may get upgraded
-                            // to an edge later)
-                            coordState.put(c, COORD_STATE_PILLAR);
-                        }
-
-                        if (++tmpJunctionCounter % 100_000 == 0) {
-                            LOGGER.info(nf(tmpJunctionCounter) + " (junctions), junctionMap:" + nf(coordState.size())
-                                    + " " + Helper.getMemInfo());
-                        }
-                    }
-                }
-            }
-        } finally {
-            if (roads != null) {
-                roads.close();
-            }
-            if (dataStore != null) {
-                dataStore.dispose();
-            }
-        }
+            if (roadSpool != null)
+                roadSpool.addRoad(attributes, geometry);
+        });
 
         if (nextNodeId == FIRST_NODE_ID)
             throw new IllegalArgumentException("No data found for roads file " + roadsFile);
 
         LOGGER.info("Number of junction points : " + (nextNodeId - FIRST_NODE_ID));
+        if (roadSpool != null)
+            LOGGER.info("Spooled roads: " + nf(roadSpool.getRoads()) + " (" + roadSpool.getCapacity() / Helper.MB + "MB)");
     }
 
-    @Override
-    void processRoads() {
+    /**
+     * The coordinate states are kept on the heap by default. Use e.g. MMAP as coord_state.dataaccess to store them
+     * in a temporary file of the graph folder instead.
+     */
+    private LongIntMap createCoordStateMap() {
+        if (coordStateType.isEmpty())
+            return new GHLongIntHashMap(1000, 0.7f);
+
+        Directory dir = graphStorage.getDirectory();
+        new File(dir.getLocation()).mkdirs();
+        return new DALongIntHashMap(dir, "tmp_postgis_coord_state", DAType.fromString(coordStateType),
+                1000, COORD_STATE_UNKNOWN);
+    }
 
-        DataStore dataStore = null;
-        FeatureIterator<SimpleFeature> roads = null;
+    /**
+     * Lets the memory budget track the coordinate states and move them to a memory-mapped file if necessary.
+     * Spilling is only done from processJunctions, i.e. while no other thread reads the states.
+     */
+    private void registerCoordState() {
+        getMemoryBudget().register("coord_state", new MemoryBudget.Spillable() {
+            @Override
+            public long getHeapBytes() {
+                if (coordState instanceof GHLongIntHashMap)
+                    return 12L * ((GHLongIntHashMap) coordState).keys.length;
+                return coordState instanceof DALongIntHashMap ? ((DALongIntHashMap) coordState).getHeapBytes() : 0;
+            }
 
-        int tmpEdgeCounter = 0;
+            @Override
+            public boolean spill() {
+                if (coordState instanceof DALongIntHashMap)
+                    return ((DALongIntHashMap) coordState).spill();
+                if (!(coordState instanceof GHLongIntHashMap))
+                    return false;
+                GHLongIntHashMap heapMap = (GHLongIntHashMap) coordState;
+                Directory dir = graphStorage.getDirectory();
+                new File(dir.getLocation()).mkdirs();
+                DALongIntHashMap mmapMap = new DALongIntHashMap(dir, "tmp_postgis_coord_state", DAType.MMAP,
+                        heapMap.size(), COORD_STATE_UNKNOWN);
+                for (LongIntCursor cursor : heapMap) {
+                    mmapMap.put(cursor.key, cursor.value);
+                }
+                coordState = mmapMap;
+                return true;
+            }
+        });
+    }
 
-        try {
-            dataStore = openPostGisStore();
-            roads = getFeatureIterator(dataStore, roadsFile.getName());
+    /**
+     * Reads the roads either via COPY or via GeoTools features and passes their attributes, in the order of
+     * roadColumns, and their geometry to the handler. Both arguments are reused for the next road.
+     */
+    void readRoads(BiConsumer<String[], RoadGeometry> handler) {
+        if (copy) {
+            new CopyRoadReader(this, postgisParams, roadsFile.getName(), roadColumns).read(handler);
+            return;
+        }
 
-            while (roads.hasNext()) {
-                SimpleFeature road = roads.next();
+        String[] attributes = new String[roadColumns.length];
+        RoadGeometry geometry = new RoadGeometry();
+        readFeatures(roadsFile.getName(), (road, lines) -> {
+            readAttributes(road, attributes);
+            geometry.setLines(lines);
+            handler.accept(attributes, geometry);
+        });
+    }
 
-                if (!acceptFeature(road)) {
+    /**
+     * Reads the roads that were changed since the specified date like readRoads, but the attributes and the
+     * geometry are new objects for every road, as the change set is kept in memory.
+     */
+    void readChangedRoads(Date since, BiConsumer<String[], RoadGeometry> handler) {
+        Filter changedFilter = FF.greater(FF.property(updateColumn), FF.literal(since));
+        readFeatures(roadsFile.getName(), changedFilter, (road, lines) -> {
+            String[] attributes = new String[roadColumns.length];
+            readAttributes(road, attributes);
+            RoadGeometry geometry = new RoadGeometry();
+            geometry.setLines(lines);
+            handler.accept(attributes, geometry);
+        });
+    }
+
+    /**
+     * @return the columns of a road in the order of the attributes passed to the handler of readRoads
+     */
+    String[] getRoadColumns() {
+        return roadColumns;
+    }
+
+    private void readAttributes(SimpleFeature road, String[] attributes) {
+        for (int i = 0; i < roadColumns.length; i++) {
+            Object value = road.getAttribute(roadColumns[i]);
+            attributes[i] = value == null ? null : value.toString();
+        }
+    }
+
+    /**
+     * @return a view on the attributes of a road by column name as used in addEdge
+     */
+    private Function<String, Object> toRoad(String[] attributes) {
+        return column -> {
+            Integer index = columnIndex.get(column);
+            return index == null ? null : attributes[index];
+        };
+    }
+
+    private void processJunctions(RoadGeometry geometry) {
+        for (int line = 0; line < geometry.getLines(); line++) {
+            tmpSet.clear();
+            int start = geometry.getLineStart(line);
+            int end = geometry.getLineEnd(line);
+            for (int i = start; i < end; i++) {
+                long key = coordKey(geometry, i);
+
+                // don't add the same coord twice for the same edge - happens with bad geometry, i.e.
+                // duplicate coords or a road which forms a circle (e.g. roundabout)
+                if (!tmpSet.add(key))
+                    continue;
+
+                // skip if its already a node
+                int state = coordState.get(key);
+                if (state >= FIRST_NODE_ID || state == COORD_STATE_TOWER) {
                     continue;
                 }
 
-                for (Coordinate[] points : getCoords(road)) {
-                    // Parse all points in the geometry, splitting into
-                    // individual GraphHopper edges
-                    // whenever we find a node in the list of points
-                    Coordinate startTowerPnt = null;
-                    List<Coordinate> pillars = new ArrayList<Coordinate>();
-                    for (Coordinate point : points) {
-                        point = roundCoordinate(point);
-                        if (startTowerPnt == null) {
-                            startTowerPnt = point;
-                        } else {
-                            int state = coordState.get(point);
-                            if (state >= FIRST_NODE_ID) {
-                                int fromTowerNodeId = coordState.get(startTowerPnt);
-                                int toTowerNodeId = state;
-
-                                // get distance and estimated centre
-                                GHPoint estmCentre = new GHPoint(
-                                        0.5 * (lat(startTowerPnt) + lat(point)),
-                                        0.5 * (lng(startTowerPnt) + lng(point)));
-                                PointList pillarNodes = new PointList(pillars.size(), false);
-
-                                for (Coordinate pillar : pillars) {
-                                    pillarNodes.add(lat(pillar), lng(pillar));
-                                }
-
-                                double distance = getWayLength(startTowerPnt, pillars, point);
-                                addEdge(fromTowerNodeId, toTowerNodeId, road, distance, estmCentre,
-                                        pillarNodes);
-                                startTowerPnt = point;
-                                pillars.clear();
-
-                                if (++tmpEdgeCounter % 1_000_000 == 0) {
-                                    LOGGER.info(nf(tmpEdgeCounter) + " (edges) " + Helper.getMemInfo());
-                                }
-                            } else {
-                                pillars.add(point);
-                            }
-                        }
+                if (i == start || i == end - 1 || state == COORD_STATE_PILLAR) {
+                    // turn into a node if its the first or last
+                    // point, or already appeared in another edge
+                    if (deferNodeIds) {
+                        coordState.put(key, COORD_STATE_TOWER);
+                        deferredTowers++;
+                    } else {
+                        int nodeId = nextNodeId++;
+                        coordState.put(key, nodeId);
+                        saveTowerPosition(nodeId, geometry.getLat(i), geometry.getLon(i));
                     }
+                } else if (state == COORD_STATE_UNKNOWN) {
+                    // mark it as a pillar (which may get upgraded
+                    // to an edge later)
+                    coordState.put(key, COORD_STATE_PILLAR);
                 }
 
+                if (++tmpJunctionCounter % 100_000 == 0) {
+                    getMemoryBudget().check();
+                    LOGGER.info(nf(tmpJunctionCounter) + " (junctions), junctionMap:" + nf(coordState.getSize())
+                            + " (" + coordState.getMemoryUsage() + "MB) " + Helper.getMemInfo());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the roads and finds their junctions like processJunctions, but without writing to the graph. The nodes
+     * only get their ids in mergeRoads, so this can be called from another thread while the graph is written, see
+     * CompositeReader. The roads are spooled, so the database is not queried a second time.
+     */
+    void readRoadsForMerge() {
+        if (!updateColumn.isEmpty())
+            throw new IllegalArgumentException("update.column cannot be used when merging the roads into another graph");
+        deferNodeIds = true;
+        coordState = createCoordStateMap();
+        registerCoordState();
+        roadSpool = new RoadSpool(graphStorage.getDirectory());
+        readRoads((attributes, geometry) -> {
+            processJunctions(geometry);
+            roadSpool.addRoad(attributes, geometry);
+        });
+        if (deferredTowers == 0)
+            throw new IllegalArgumentException("No data found for roads file " + roadsFile);
+
+        LOGGER.info("Number of junction points : " + nf(deferredTowers) + ", spooled roads: " + nf(roadSpool.getRoads())
+                + " (" + roadSpool.getCapacity() / Helper.MB + "MB)");
+    }
+
+    /**
+     * Adds the roads of readRoadsForMerge to the graph, which must be called from the thread writing the graph.
+     * Every junction of the roads and every other point of them that is close to an existing node is connected to
+     * this node instead of creating a new one.
+     */
+    void mergeRoads(NodeSpatialHash existingNodes) {
+        if (!deferNodeIds)
+            throw new IllegalStateException("Call readRoadsForMerge first");
+        // the existing nodes start at 0, but a node state must be at least FIRST_NODE_ID
+        nodeIdOffset = FIRST_NODE_ID;
+        nextNodeId = graph.getNodes();
+        int firstNewNode = nextNodeId;
+        int[] mergedNodes = {0};
+        replayRoads((attributes, geometry) -> mergedNodes[0] += assignNodeIds(geometry, existingNodes));
+        LOGGER.info("Merged " + nf(mergedNodes[0]) + " points of the roads with existing nodes, created "
+                + nf(nextNodeId - firstNewNode) + " new nodes");
+        processRoads();
+        finishReading();
+    }
+
+    /**
+     * @return the number of points of the geometry that were connected to an existing node
+     */
+    private int assignNodeIds(RoadGeometry geometry, NodeSpatialHash existingNodes) {
+        int merged = 0;
+        for (int line = 0; line < geometry.getLines(); line++) {
+            for (int i = geometry.getLineStart(line); i < geometry.getLineEnd(line); i++) {
+                long key = coordKey(geometry, i);
+                int state = coordState.get(key);
+                if (state != COORD_STATE_TOWER && state != COORD_STATE_PILLAR)
+                    continue;
+                int nodeId = existingNodes.findNode(geometry.getLat(i), geometry.getLon(i));
+                if (nodeId >= 0) {
+                    merged++;
+                } else if (state == COORD_STATE_TOWER) {
+                    nodeId = nextNodeId++;
+                    saveTowerPosition(nodeId, geometry.getLat(i), geometry.getLon(i));
+                } else {
+                    continue;
+                }
+                coordState.put(key, nodeId + nodeIdOffset);
             }
+        }
+        return merged;
+    }
+
+    @Override
+    void processRoads() {
+        if (!updateColumn.isEmpty())
+            edgeOsmIds = graphStorage.getDirectory().create(EDGE_OSM_IDS).create(1000);
+
+        RoadEdgePipeline pipeline = null;
+        BiConsumer<String[], RoadGeometry> handler;
+        if (edgeThreads > 1) {
+            pipeline = new RoadEdgePipeline(edgeThreads, roadColumns.length, EDGE_BATCH_SIZE, this::splitRoad,
+                    (attributes, edges) -> addEdges(toRoad(attributes), edges));
+            handler = pipeline::add;
+        } else {
+            RoadEdges edges = new RoadEdges();
+            handler = (attributes, geometry) -> {
+                edges.clear();
+                splitRoad(geometry, edges);
+                addEdges(toRoad(attributes), edges);
+            };
+        }
+
+        try {
+            if (roadSpool != null)
+                replayRoads(handler);
+            else
+                readRoads(handler);
+            if (pipeline != null)
+                pipeline.finish();
         } finally {
-            if (roads != null) {
-                roads.close();
+            if (pipeline != null)
+                pipeline.close();
+        }
+    }
+
+    /**
+     * Passes the roads spooled in processJunctions to the handler instead of reading them from the database again.
+     */
+    private void replayRoads(BiConsumer<String[], RoadGeometry> handler) {
+        String[] attributes = new String[roadColumns.length];
+        RoadGeometry geometry = new RoadGeometry();
+        long pointer = 0;
+        long end = roadSpool.getEndPointer();
+        while (pointer < end) {
+            pointer = roadSpool.readRoad(pointer, attributes, geometry);
+            handler.accept(attributes, geometry);
+        }
+    }
+
+    /**
+     * Splits all line strings of the road into edges whenever a point is a tower node. This only reads the
+     * coordinate states, so it can be called from several threads in the edge pass.
+     */
+    private void splitRoad(RoadGeometry geometry, RoadEdges edges) {
+        for (int line = 0; line < geometry.getLines(); line++) {
+            int start = geometry.getLineStart(line);
+            int end = geometry.getLineEnd(line);
+            if (start == end)
+                continue;
+            int startTower = start;
+            int startTowerNodeId = coordState.get(coordKey(geometry, start)) - nodeIdOffset;
+            for (int i = start + 1; i < end; i++) {
+                int state = coordState.get(coordKey(geometry, i));
+                if (state >= FIRST_NODE_ID) {
+                    int nodeId = state - nodeIdOffset;
+                    edges.add(startTowerNodeId, nodeId, calcWayLength(geometry, startTower, i),
+                            0.5 * (geometry.getLat(startTower) + geometry.getLat(i)),
+                            0.5 * (geometry.getLon(startTower) + geometry.getLon(i)),
+                            getPillarNodes(geometry, startTower, i));
+                    startTower = i;
+                    startTowerNodeId = nodeId;
+                }
             }
+        }
+    }
+
+    private void addEdges(Function<String, Object> road, RoadEdges edges) {
+        columnEncodedValues.readRoad(road);
+        for (int i = 0; i < edges.size(); i++) {
+            addEdge(edges.getFromNode(i), edges.getToNode(i), road, checkWayLength(edges.getDistance(i)),
+                    new GHPoint(edges.getCentreLat(i), edges.getCentreLon(i)), edges.getPillarNodes(i));
 
-            if (dataStore != null) {
-                dataStore.dispose();
+            if (++tmpEdgeCounter % 1_000_000 == 0) {
+                LOGGER.info(nf(tmpEdgeCounter) + " (edges), junctionMap:" + coordState.getMemoryUsage() + "MB "
+                        + Helper.getMemInfo());
             }
         }
     }
 
     @Override
     protected void finishReading() {
-        this.coordState.clear();
+        getMemoryBudget().unregister("coord_state");
+        if (roadSpool != null) {
+            roadSpool.clear();
+            roadSpool = null;
+        }
+        if (coordState instanceof DALongIntHashMap)
+            ((DALongIntHashMap) coordState).clear();
         this.coordState = null;
+        if (edgeOsmIds != null) {
+            edgeOsmIds.flush();
+            edgeOsmIds.close();
+            edgeOsmIds = null;
+        }
         LOGGER.info("Finished reading. Zero Counter " + nf(zeroCounter) + " " + Helper.getMemInfo());
     }
 
-    protected double getWayLength(Coordinate start, List<Coordinate> pillars, Coordinate end) {
-        double distance = 0;
+    /**
+     * Applies the roads that were changed since the specified date to the already imported graph, i.e. the edge
+     * flags, names, distances and pillar nodes are overwritten in place. This is only possible if the tower nodes of
+     * every changed road are still the same. New roads, new junctions or removed junctions require a full import.
+     * To detect new junctions the coordinates of all nodes and pillar nodes of the graph are indexed, i.e. an
+     * update needs about as much memory as the coordinate states of the import.
+     *
+     * @return the statistics of the update or null if the changes cannot be applied in place
+     */
+    public UpdateStats updateGraph(Date since) {
+        if (updateColumn.isEmpty())
+            throw new IllegalStateException("Updating the graph requires update.column");
+
+        DataAccess osmIds = graphStorage.getDirectory().create(EDGE_OSM_IDS);
+        try {
+            if (!osmIds.loadExisting()) {
+                LOGGER.warn("Cannot update the graph as it was imported without " + EDGE_OSM_IDS);
+                return null;
+            }
+            return updateRoads(osmIds, since);
+        } finally {
+            osmIds.close();
+        }
+    }
+
+    private UpdateStats updateRoads(DataAccess osmIds, Date since) {
+        // the changed roads are kept in memory, change sets are expected to be small compared to the whole network
+        Map<Long, String[]> changedAttributes = new LinkedHashMap<>();
+        Map<Long, RoadGeometry> changedGeometries = new HashMap<>();
+        boolean[] ambiguous = {false};
+        readChangedRoads(since, (attributes, geometry) -> {
+            long id = getOSMId(toRoad(attributes));
+            if (changedAttributes.put(id, attributes) != null || id == 0)
+                ambiguous[0] = true;
+            changedGeometries.put(id, geometry);
+        });
+        LOGGER.info("Found " + nf(changedAttributes.size()) + " roads changed since " + since);
+        UpdateStats stats = new UpdateStats();
+        if (changedAttributes.isEmpty())
+            return stats;
+        if (ambiguous[0]) {
+            LOGGER.warn("The changed roads cannot be matched to the edges as their osm_id is missing or not unique");
+            return null;
+        }
+
+        // edge ids are assigned in the order of the road geometry, so the edges of every road are sorted already
+        Map<Long, IntArrayList> changedEdges = new HashMap<>();
+        GHBitSet isChangedEdge = new GHBitSetImpl(graph.getEdges());
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            long pointer = 8L * edge;
+            long id = ((long) osmIds.getInt(pointer) << 32) | (osmIds.getInt(pointer + 4) & 0xFFFFFFFFL);
+            if (changedAttributes.containsKey(id)) {
+                changedEdges.computeIfAbsent(id, k -> new IntArrayList()).add(edge);
+                isChangedEdge.add(edge);
+            }
+        }
+        for (Long id : changedAttributes.keySet()) {
+            if (!changedEdges.containsKey(id)) {
+                LOGGER.warn("Road " + id + " is new, the graph needs a full import");
+                return null;
+            }
+        }
+
+        // all roads are checked before the first one is changed, so the graph stays untouched if a full import is needed
+        GHLongIntHashMap graphCoords = indexCoordinates(isChangedEdge);
+        for (Map.Entry<Long, IntArrayList> entry : changedEdges.entrySet()) {
+            if (!checkJunctions(changedGeometries.get(entry.getKey()), entry.getValue(), graphCoords)) {
+                LOGGER.warn("Road " + entry.getKey() + " has a new junction, the graph needs a full import");
+                return null;
+            }
+        }
+
+        List<BooleanEncodedValue> subnetworkEncs = new ArrayList<>();
+        for (EncodedValue ev : encodingManager.getEncodedValues()) {
+            if (ev.getName().endsWith("_subnetwork"))
+                subnetworkEncs.add((BooleanEncodedValue) ev);
+        }
+
+        for (Map.Entry<Long, String[]> entry : changedAttributes.entrySet()) {
+            IntArrayList edges = changedEdges.get(entry.getKey());
+            if (!updateRoad(entry.getKey(), changedGeometries.get(entry.getKey()), toRoad(entry.getValue()), edges,
+                    subnetworkEncs, stats)) {
+                LOGGER.warn("The junctions of road " + entry.getKey() + " changed, the graph needs a full import");
+                return null;
+            }
+        }
+        LOGGER.info("Updated " + nf(changedAttributes.size()) + " roads, " + stats);
+        return stats;
+    }
+
+    /**
+     * @return the node id of every node of the graph by coordKey and COORD_STATE_PILLAR for the pillar nodes of all
+     * edges except the changed ones, whose pillar nodes are replaced
+     */
+    private GHLongIntHashMap indexCoordinates(GHBitSet isChangedEdge) {
+        NodeAccess na = graph.getNodeAccess();
+        GHLongIntHashMap coords = new GHLongIntHashMap(graph.getNodes() * 2, 0.7f);
+        for (int node = 0; node < graph.getNodes(); node++) {
+            coords.put(coordKey(na.getLat(node), na.getLon(node)), node);
+        }
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (isChangedEdge.contains(iter.getEdge()))
+                continue;
+            PointList pillarNodes = iter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+            for (int i = 0; i < pillarNodes.size(); i++) {
+                long key = coordKey(pillarNodes.getLat(i), pillarNodes.getLon(i));
+                if (!coords.containsKey(key))
+                    coords.put(key, COORD_STATE_PILLAR);
+            }
+        }
+        return coords;
+    }
+
+    /**
+     * Checks that the new geometry of the road only touches other roads at its own tower nodes. Otherwise the import
+     * would have created a junction there. The points of the road are added to the coordinates afterwards, so two
+     * changed roads crossing each other are detected as well.
+     *
+     * @return false if the new geometry has a junction with another road that the graph does not have
+     */
+    private boolean checkJunctions(RoadGeometry geometry, IntArrayList edges, GHLongIntHashMap graphCoords) {
+        GHIntHashSet towers = new GHIntHashSet(edges.size() * 2);
+        for (int i = 0; i < edges.size(); i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE);
+            towers.add(edge.getBaseNode());
+            towers.add(edge.getAdjNode());
+        }
+        GHLongHashSet ownPoints = new GHLongHashSet();
+        for (int i = 0; i < geometry.getPoints(); i++) {
+            long key = coordKey(geometry, i);
+            if (!ownPoints.add(key))
+                continue;
+            if (!graphCoords.containsKey(key))
+                continue;
+            int state = graphCoords.get(key);
+            if (state == COORD_STATE_PILLAR || !towers.contains(state))
+                return false;
+        }
+        for (LongCursor point : ownPoints) {
+            if (!graphCoords.containsKey(point.value))
+                graphCoords.put(point.value, COORD_STATE_PILLAR);
+        }
+        return true;
+    }
+
+    /**
+     * Splits the new geometry of the road at the tower nodes of its existing edges and overwrites these edges.
+     *
+     * @return false if the road does not fit to its edges anymore
+     */
+    private boolean updateRoad(long id, RoadGeometry geometry, Function<String, Object> road, IntArrayList edges,
+                               List<BooleanEncodedValue> subnetworkEncs, UpdateStats stats) {
+        NodeAccess na = graph.getNodeAccess();
+        GHLongIntHashMap towers = new GHLongIntHashMap(edges.size() * 2, 0.7f);
+        for (int i = 0; i < edges.size(); i++) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(edges.get(i), Integer.MIN_VALUE);
+            towers.put(coordKey(na.getLat(edge.getBaseNode()), na.getLon(edge.getBaseNode())), edge.getBaseNode());
+            towers.put(coordKey(na.getLat(edge.getAdjNode()), na.getLon(edge.getAdjNode())), edge.getAdjNode());
+        }
+
+        columnEncodedValues.readRoad(road);
+        int edgeIndex = 0;
+        for (int line = 0; line < geometry.getLines(); line++) {
+            int start = geometry.getLineStart(line);
+            int end = geometry.getLineEnd(line);
+            if (end - start < 2 || !towers.containsKey(coordKey(geometry, start))
+                    || !towers.containsKey(coordKey(geometry, end - 1)))
+                return false;
+
+            int startTower = start;
+            for (int i = start + 1; i < end; i++) {
+                if (!towers.containsKey(coordKey(geometry, i)))
+                    continue;
+                if (edgeIndex >= edges.size())
+                    return false;
+                EdgeIteratorState edge = graph.getEdgeIteratorState(edges.get(edgeIndex++), Integer.MIN_VALUE);
+                if (edge.getBaseNode() != towers.get(coordKey(geometry, startTower))
+                        || edge.getAdjNode() != towers.get(coordKey(geometry, i)))
+                    return false;
+
+                double distance = getWayLength(geometry, startTower, i);
+                ReaderWay way = createWay(id, road, distance, getEstimatedCentre(geometry, startTower, i));
+                updateEdge(edge, way, distance, getPillarNodes(geometry, startTower, i), subnetworkEncs, stats);
+                startTower = i;
+            }
+        }
+        return edgeIndex == edges.size();
+    }
+
+    private void updateEdge(EdgeIteratorState edge, ReaderWay way, double distance, PointList pillarNodes,
+                            List<BooleanEncodedValue> subnetworkEncs, UpdateStats stats) {
+        IntsRef oldFlags = edge.getFlags();
+        IntsRef edgeFlags = encodingManager.createEdgeFlags();
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        if (encodingManager.acceptWay(way, acceptWay)) {
+            edgeFlags = encodingManager.handleWayTags(way, acceptWay, tempRelFlags);
+            columnEncodedValues.apply(edgeFlags);
+        }
+        // the subnetworks are not part of the tags, keep them to detect if the flags really changed
+        for (BooleanEncodedValue subnetworkEnc : subnetworkEncs) {
+            subnetworkEnc.setBool(false, edgeFlags, subnetworkEnc.getBool(false, oldFlags));
+        }
 
-        Coordinate previous = start;
-        for (Coordinate point : pillars) {
-            distance += distCalc.calcDist(lat(previous), lng(previous), lat(point), lng(point));
-            previous = point;
+        if (!edgeFlags.equals(oldFlags) || Math.abs(edge.getDistance() - distance) > 0.001) {
+            edge.setDistance(distance);
+            edge.setFlags(edgeFlags);
+            stats.weightChanges++;
         }
-        distance += distCalc.calcDist(lat(previous), lng(previous), lat(end), lng(end));
+        if (!edge.fetchWayGeometry(FetchMode.PILLAR_ONLY).equals(pillarNodes)) {
+            edge.setWayGeometry(pillarNodes);
+            stats.geometryChanges++;
+        }
+        String oldName = edge.getName();
+        encodingManager.applyWayTags(way, edge);
+        if (!oldName.equals(edge.getName()))
+            stats.nameChanges++;
+    }
 
+    /**
+     * @return the length of the way between the specified points of the geometry
+     */
+    protected double getWayLength(RoadGeometry geometry, int from, int to) {
+        return checkWayLength(calcWayLength(geometry, from, to));
+    }
+
+    private double calcWayLength(RoadGeometry geometry, int from, int to) {
+        double distance = 0;
+        for (int i = from; i < to; i++) {
+            distance += distCalc.calcDist(geometry.getLat(i), geometry.getLon(i),
+                    geometry.getLat(i + 1), geometry.getLon(i + 1));
+        }
+        return distance;
+    }
+
+    private double checkWayLength(double distance) {
         if (distance < 0.0001) {
             // As investigation shows often two paths should have crossed via one identical point
             // but end up in two very close points.
@@ -257,70 +745,143 @@ public class OSMPostgisReader extends PostgisReader {
         return distance;
     }
 
+    private GHPoint getEstimatedCentre(RoadGeometry geometry, int from, int to) {
+        return new GHPoint(
+                0.5 * (geometry.getLat(from) + geometry.getLat(to)),
+                0.5 * (geometry.getLon(from) + geometry.getLon(to)));
+    }
+
+    private PointList getPillarNodes(RoadGeometry geometry, int from, int to) {
+        PointList pillarNodes = new PointList(to - from - 1, false);
+        for (int i = from + 1; i < to; i++) {
+            pillarNodes.add(geometry.getLat(i), geometry.getLon(i));
+        }
+        return pillarNodes;
+    }
+
     @Override
     public Date getDataDate() {
         return null;
     }
 
+    public static class UpdateStats {
+        private int weightChanges;
+        private int geometryChanges;
+        private int nameChanges;
+
+        /**
+         * @return the number of edges with changed flags or distance, which makes the preparations outdated
+         */
+        public int getWeightChanges() {
+            return weightChanges;
+        }
+
+        /**
+         * @return the number of edges with changed pillar nodes, which makes the location index outdated
+         */
+        public int getGeometryChanges() {
+            return geometryChanges;
+        }
+
+        public int getNameChanges() {
+            return nameChanges;
+        }
+
+        @Override
+        public String toString() {
+            return "edges with changed weights: " + nf(weightChanges) + ", geometries: " + nf(geometryChanges)
+                    + ", names: " + nf(nameChanges);
+        }
+    }
+
     public static interface EdgeAddedListener {
         void edgeAdded(ReaderWay way, EdgeIteratorState edge);
     }
 
-    private void addEdge(int fromTower, int toTower, SimpleFeature road, double distance,
-                         GHPoint estmCentre, PointList pillarNodes) {
+    private void addEdge(int fromTower, int toTower, Function<String, Object> road, double distance,
+                         GHPoint estimatedCentre, PointList pillarNodes) {
         EdgeIteratorState edge = graph.edge(fromTower, toTower);
 
         long id = getOSMId(road);
+        if (edgeOsmIds != null) {
+            long pointer = 8L * edge.getEdge();
+            edgeOsmIds.ensureCapacity(pointer + 8);
+            edgeOsmIds.setInt(pointer, (int) (id >>> 32));
+            edgeOsmIds.setInt(pointer + 4, (int) id);
+        }
+
+        ReaderWay way = createWay(id, road, distance, estimatedCentre);
+
+        // Process the flags using the encoders
+        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
+        if (!encodingManager.acceptWay(way, acceptWay)) {
+            return;
+        }
+
+        IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, tempRelFlags);
+        if (edgeFlags.isEmpty())
+            return;
+        columnEncodedValues.apply(edgeFlags);
+
+        edge.setDistance(distance);
+        edge.setFlags(edgeFlags);
+        edge.setWayGeometry(pillarNodes);
+        encodingManager.applyWayTags(way, edge);
+
+        if (edgeAddedListeners.size() > 0) {
+            // check size first so we only allocate the iterator if we have
+            // listeners
+            for (EdgeAddedListener l : edgeAddedListeners) {
+                l.edgeAdded(way, edge);
+            }
+        }
+    }
 
+    private ReaderWay createWay(long id, Function<String, Object> road, double distance, GHPoint estmCentre) {
         ReaderWay way = new ReaderWay(id);
 
         way.setTag("estimated_distance", distance);
         way.setTag("estimated_center", estmCentre);
 
+        // columns which are written directly into the edge flags are not needed as tags
         // Bề rộng nền lớn nhất
-        Object maxWidth = road.getAttribute("berongnenl");
-        if (maxWidth != null) {
+        Object maxWidth = road.apply("berongnenl");
+        if (maxWidth != null && !columnEncodedValues.contains("berongnenl")) {
             way.setTag("max_with", Double.parseDouble(maxWidth.toString()));
         }
 
         // Bề rộng nền nhỏ nhất
-        Object minWidth = road.getAttribute("berongnenn");
-        if (minWidth != null) {
+        Object minWidth = road.apply("berongnenn");
+        if (minWidth != null && !columnEncodedValues.contains("berongnenn")) {
             way.setTag("min_with", Double.parseDouble(minWidth.toString()));
         }
 
         // Quan khu
         String dValue = "0";
-        Object militaryId = road.getAttribute("military_id");
-        if (militaryId != null) {
+        Object militaryId = road.apply("military_id");
+        if (militaryId != null && !columnEncodedValues.contains("military_id")) {
             way.setTag("military_id", militaryId.toString());
         }
         // Tinh Thanh
         String provinceKey = "province_id";
-        Object provinceId = road.getAttribute("province_id");
-        if (provinceId != null) {
-            way.setTag(provinceKey, provinceId.toString());
-        }else{
-            way.setTag(provinceKey, dValue);
+        if (!columnEncodedValues.contains(provinceKey)) {
+            Object provinceId = road.apply(provinceKey);
+            way.setTag(provinceKey, provinceId != null ? provinceId.toString() : dValue);
         }
         // Quan Huyen
         String districtKey = "district_id";
-        Object districtId = road.getAttribute(districtKey);
-        if (districtId != null) {
-            way.setTag(districtKey, districtId.toString());
-        }else{
-            way.setTag(districtKey, dValue);
+        if (!columnEncodedValues.contains(districtKey)) {
+            Object districtId = road.apply(districtKey);
+            way.setTag(districtKey, districtId != null ? districtId.toString() : dValue);
         }
         // Xa
         String communeKey = "commune_id";
-        Object communeId = road.getAttribute("commune_id");
-        if (communeId != null) {
-            way.setTag(communeKey, communeId.toString());
-        }else{
-            way.setTag(communeKey, dValue);
+        if (!columnEncodedValues.contains(communeKey)) {
+            Object communeId = road.apply(communeKey);
+            way.setTag(communeKey, communeId != null ? communeId.toString() : dValue);
         }
         // Loại đường bộ
-        Object highwayType = road.getAttribute("loaiduongb");
+        Object highwayType = road.apply("loaiduongb");
         String highway = "primary";
         if (highwayType != null)
             switch (highwayType.toString()) {
@@ -352,13 +913,13 @@ public class OSMPostgisReader extends PostgisReader {
 
         // read maxspeed filtering for 0 which for Geofabrik shapefiles appears
         // to correspond to no tag
-        Object maxSpeed = road.getAttribute("maxspeed");
+        Object maxSpeed = road.apply("maxspeed");
         if (maxSpeed != null && !maxSpeed.toString().trim().equals("0")) {
             way.setTag("maxspeed", maxSpeed.toString());
         }
 
         for (String tag : tagsToCopy) {
-            Object val = road.getAttribute(tag);
+            Object val = road.apply(tag);
             if (val != null) {
                 way.setTag(tag, val);
             } else {
@@ -367,7 +928,7 @@ public class OSMPostgisReader extends PostgisReader {
         }
 
         // read oneway
-        Object oneway = road.getAttribute("oneway");
+        Object oneway = road.apply("oneway");
         if (oneway != null) {
             // Geofabrik is using an odd convention for oneway field in
             // shapefile.
@@ -390,48 +951,30 @@ public class OSMPostgisReader extends PostgisReader {
 
             way.setTag("oneway", val);
         }
-
-        // Process the flags using the encoders
-        EncodingManager.AcceptWay acceptWay = new EncodingManager.AcceptWay();
-        if (!encodingManager.acceptWay(way, acceptWay)) {
-            return;
-        }
-
-        IntsRef edgeFlags = encodingManager.handleWayTags(way, acceptWay, tempRelFlags);
-        if (edgeFlags.isEmpty())
-            return;
-
-        edge.setDistance(distance);
-        edge.setFlags(edgeFlags);
-        edge.setWayGeometry(pillarNodes);
-        encodingManager.applyWayTags(way, edge);
-
-        if (edgeAddedListeners.size() > 0) {
-            // check size first so we only allocate the iterator if we have
-            // listeners
-            for (EdgeAddedListener l : edgeAddedListeners) {
-                l.edgeAdded(way, edge);
-            }
-        }
+        return way;
     }
 
-    private long getOSMId(SimpleFeature road) {
+    private long getOSMId(Function<String, Object> road) {
         try {
-            long id = Long.parseLong(road.getAttribute("osm_id").toString());
+            long id = Long.parseLong(road.apply("osm_id").toString());
             return id;
         } catch (Exception e) {
             return 0;
         }
     }
 
-    private Coordinate roundCoordinate(Coordinate c) {
-        c.x = Helper.round6(c.x);
-        c.y = Helper.round6(c.y);
-
-        if (!Double.isNaN(c.z))
-            c.z = Helper.round6(c.z);
+    /**
+     * Packs the coordinate, which has to be rounded to 6 decimal places, into a long with the latitude in the upper
+     * and the longitude in the lower 32 bits.
+     */
+    private static long coordKey(RoadGeometry geometry, int point) {
+        return coordKey(geometry.getLat(point), geometry.getLon(point));
+    }
 
-        return c;
+    private static long coordKey(double lat, double lon) {
+        long latInt = Math.round(lat * COORD_KEY_FACTOR);
+        long lonInt = Math.round(lon * COORD_KEY_FACTOR);
+        return (latInt << 32) | (lonInt & 0xFFFFFFFFL);
     }
 
     public void addListener(EdgeAddedListener l) {
@@ -0,0 +1,220 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.locationtech.jts.geom.Coordinate;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.PropertyName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Splits a table into partitions via a column and fetches the partitions concurrently, each with its own
+ * DataStore and therefore its own connection. The features are decoded in the fetching threads and handed over to
+ * the calling thread through a bounded queue, so the graph is still written from a single thread only.
+ * <p>
+ * The partitions are either given as a list of column values, e.g. province ids, or as a number of equally sized
+ * ranges between the minimum and the maximum value of a numeric column, e.g. the primary key. In both cases the rows
+ * with a null value are fetched in an additional partition.
+ */
+class PartitionedFeatureReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedFeatureReader.class);
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+    private static final Object END_OF_PARTITION = new Object();
+    private final PostgisReader reader;
+    private final String tableName;
+    private final String column;
+    private final List<String> values;
+    private final int ranges;
+    private final int threads;
+    private final int queueSize;
+
+    PartitionedFeatureReader(PostgisReader reader, String tableName, String column, List<String> values,
+                             int ranges, int threads, int queueSize) {
+        if (values.isEmpty() && ranges < 1)
+            throw new IllegalArgumentException("Partitioning by " + column + " requires values or a number of ranges");
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one fetch thread is required but was " + threads);
+        this.reader = reader;
+        this.tableName = tableName;
+        this.column = column;
+        this.values = values;
+        this.ranges = ranges;
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    void read(BiConsumer<SimpleFeature, List<Coordinate[]>> handler) {
+        List<Filter> partitions = createPartitionFilters();
+        if (partitions.isEmpty())
+            return;
+        LOGGER.info("Reading " + tableName + " in " + partitions.size() + " partitions by " + column
+                + " with " + threads + " threads");
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(queueSize);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, partitions.size()));
+        try {
+            for (Filter partition : partitions) {
+                executor.execute(() -> fetchPartition(partition, queue));
+            }
+
+            int finishedPartitions = 0;
+            while (finishedPartitions < partitions.size()) {
+                Object item = queue.take();
+                if (item == END_OF_PARTITION) {
+                    finishedPartitions++;
+                } else if (item instanceof FetchFailure) {
+                    throw Utils.asUnchecked(((FetchFailure) item).cause);
+                } else {
+                    FetchedFeature fetched = (FetchedFeature) item;
+                    handler.accept(fetched.feature, fetched.lines);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading " + tableName, ex);
+        } finally {
+            // stops the fetching threads if the handler failed
+            executor.shutdownNow();
+        }
+    }
+
+    private void fetchPartition(Filter partition, BlockingQueue<Object> queue) {
+        DataStore dataStore = null;
+        FeatureIterator<SimpleFeature> features = null;
+        try {
+            dataStore = reader.openPostGisStore();
+            features = reader.getFeatureIterator(dataStore, tableName, partition);
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                queue.put(new FetchedFeature(feature, reader.getCoords(feature)));
+            }
+            queue.put(END_OF_PARTITION);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            try {
+                queue.put(new FetchFailure(t));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            if (features != null)
+                features.close();
+            if (dataStore != null)
+                dataStore.dispose();
+        }
+    }
+
+    private List<Filter> createPartitionFilters() {
+        PropertyName property = FF.property(column);
+        List<Filter> partitions = new ArrayList<>();
+        if (!values.isEmpty()) {
+            for (String value : values) {
+                partitions.add(FF.equals(property, FF.literal(value)));
+            }
+            // all remaining rows are fetched in one additional partition so that nothing is lost
+            partitions.add(FF.or(FF.not(FF.or(new ArrayList<>(partitions))), FF.isNull(property)));
+            return partitions;
+        }
+
+        Number min, max;
+        DataStore dataStore = reader.openPostGisStore();
+        try {
+            FeatureSource<SimpleFeatureType, SimpleFeature> source = dataStore.getFeatureSource(tableName);
+            FeatureCollection<SimpleFeatureType, SimpleFeature> collection = source.getFeatures(reader.getFilter(source));
+            MinVisitor minVisitor = new MinVisitor(column);
+            collection.accepts(minVisitor, null);
+            MaxVisitor maxVisitor = new MaxVisitor(column);
+            collection.accepts(maxVisitor, null);
+            min = (Number) minVisitor.getResult().getValue();
+            max = (Number) maxVisitor.getResult().getValue();
+        } catch (Exception ex) {
+            throw Utils.asUnchecked(ex);
+        } finally {
+            dataStore.dispose();
+        }
+        return createRangeFilters(column, min == null ? null : min.longValue(), max == null ? null : max.longValue(), ranges);
+    }
+
+    /**
+     * @param min the minimum value of the column or null if there are no rows with a value
+     * @return a filter for every range and one for the null values
+     */
+    static List<Filter> createRangeFilters(String column, Long min, Long max, int ranges) {
+        PropertyName property = FF.property(column);
+        List<Filter> partitions = new ArrayList<>();
+        if (min != null) {
+            for (long[] range : createRanges(min, max, ranges)) {
+                Filter partition = FF.greaterOrEqual(property, FF.literal(range[0]));
+                if (range[1] != Long.MAX_VALUE)
+                    partition = FF.and(partition, FF.less(property, FF.literal(range[1])));
+                partitions.add(partition);
+            }
+        }
+        // the comparisons are never true for null, so these rows need their own partition like in the values mode
+        partitions.add(FF.isNull(property));
+        return partitions;
+    }
+
+    /**
+     * Splits the values between min and max into equally sized ranges.
+     *
+     * @return the start and the exclusive end of every range, the end of the last range is Long.MAX_VALUE
+     */
+    static List<long[]> createRanges(long min, long max, int ranges) {
+        List<long[]> result = new ArrayList<>();
+        long step = Math.max(1, (max - min + ranges) / ranges);
+        for (long from = min; from <= max; from += step) {
+            result.add(new long[]{from, max - from >= step ? from + step : Long.MAX_VALUE});
+        }
+        return result;
+    }
+
+    private static class FetchedFeature {
+        final SimpleFeature feature;
+        final List<Coordinate[]> lines;
+
+        FetchedFeature(SimpleFeature feature, List<Coordinate[]> lines) {
+            this.feature = feature;
+            this.lines = lines;
+        }
+    }
+
+    private static class FetchFailure {
+        final Throwable cause;
+
+        FetchFailure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -23,9 +23,11 @@ import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.shapes.BBox;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
 import org.geotools.data.FeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.locationtech.jts.geom.Coordinate;
@@ -34,12 +36,14 @@ import org.locationtech.jts.geom.MultiLineString;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * PostgisReader takes care of reading a PostGIS table and writing it to a road network graph
@@ -53,27 +57,61 @@ public abstract class PostgisReader extends OSMReader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgisReader.class);
 
-    private final GraphHopperStorage graphStorage;
+    protected final GraphHopperStorage graphStorage;
     private final NodeAccess nodeAccess;
     protected final Graph graph;
     protected EncodingManager encodingManager;
 
-    private Map<String, String> postgisParams;
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
+    private final Map<String, String> postgisParams;
+    private final String partitionColumn;
+    private final List<String> partitionValues;
+    private final int partitionRanges;
+    private final int fetchThreads;
+    private final int fetchQueueSize;
+    private final BBox filterBBox;
+    private final String filterColumn;
+    private final List<String> filterValues;
 
     public PostgisReader(GraphHopperStorage ghStorage,
                          Map<String, String> postgisParams) {
 
-        super(ghStorage, new OSMReaderConfig());
+        super(ghStorage, new OSMReaderConfig().
+                setMemoryBudget(Integer.parseInt(postgisParams.getOrDefault("memory_budget", "0"))));
+        // the roads are not read like an OSM file
+        releaseTemporaryStorage();
         this.graphStorage = ghStorage;
         this.graph = ghStorage;
         this.nodeAccess = graph.getNodeAccess();
         this.encodingManager = ghStorage.getEncodingManager();
         this.postgisParams = postgisParams;
+        this.partitionColumn = postgisParams.getOrDefault("partition.column", "");
+        this.partitionValues = parseValues(postgisParams.getOrDefault("partition.values", ""));
+        this.partitionRanges = Integer.parseInt(postgisParams.getOrDefault("partition.ranges", "0"));
+        this.fetchThreads = Integer.parseInt(postgisParams.getOrDefault("fetch_threads", "4"));
+        this.fetchQueueSize = Integer.parseInt(postgisParams.getOrDefault("fetch_queue_size", "10000"));
+        String tmpBBox = postgisParams.getOrDefault("filter.bbox", "");
+        this.filterBBox = tmpBBox.isEmpty() ? null : BBox.parseBBoxString(tmpBBox);
+        this.filterColumn = postgisParams.getOrDefault("filter.column", "");
+        this.filterValues = parseValues(postgisParams.getOrDefault("filter.values", ""));
+        if (!filterColumn.isEmpty() && filterValues.isEmpty())
+            throw new IllegalArgumentException("Filtering by " + filterColumn + " requires filter.values");
+    }
+
+    private static List<String> parseValues(String values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.trim().isEmpty())
+                list.add(value.trim());
+        }
+        return list;
     }
 
     @Override
     public void readGraph() {
         graphStorage.create(1000);
+        if (graphStorage.getDirectory().getDefaultType().isInMemory())
+            getMemoryBudget().register("graph", graphStorage::getCapacity);
         processJunctions();
         processRoads();
         finishReading();
@@ -88,8 +126,59 @@ public abstract class PostgisReader extends OSMReader {
      */
     protected abstract void finishReading();
 
+    /**
+     * Reads all accepted features of the specified table and passes them together with their coordinates to the
+     * handler. If a partition column is configured the partitions are fetched and decoded concurrently, but the
+     * handler and acceptFeature are always called from the calling thread.
+     */
+    protected void readFeatures(String tableName, BiConsumer<SimpleFeature, List<Coordinate[]>> handler) {
+        readFeatures(tableName, null, handler);
+    }
+
+    /**
+     * @param filter restricts the features in addition to getFilter, can be null. Filtered reads are meant for small
+     *               result sets like change sets and are therefore never partitioned.
+     */
+    protected void readFeatures(String tableName, Filter filter, BiConsumer<SimpleFeature, List<Coordinate[]>> handler) {
+        if (filter == null && !partitionColumn.isEmpty()) {
+            new PartitionedFeatureReader(this, tableName, partitionColumn, partitionValues, partitionRanges,
+                    fetchThreads, fetchQueueSize).read((feature, lines) -> {
+                if (acceptFeature(feature))
+                    handler.accept(feature, lines);
+            });
+            return;
+        }
+
+        DataStore dataStore = null;
+        FeatureIterator<SimpleFeature> features = null;
+        try {
+            dataStore = openPostGisStore();
+            features = getFeatureIterator(dataStore, tableName, filter);
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                if (acceptFeature(feature))
+                    handler.accept(feature, getCoords(feature));
+            }
+        } finally {
+            if (features != null) {
+                features.close();
+            }
+            if (dataStore != null) {
+                dataStore.dispose();
+            }
+        }
+    }
+
     protected FeatureIterator<SimpleFeature> getFeatureIterator(
             DataStore dataStore, String tableName) {
+        return getFeatureIterator(dataStore, tableName, null);
+    }
+
+    /**
+     * @param partitionFilter restricts the features in addition to getFilter, can be null
+     */
+    protected FeatureIterator<SimpleFeature> getFeatureIterator(
+            DataStore dataStore, String tableName, Filter partitionFilter) {
 
         if (dataStore == null)
             throw new IllegalArgumentException("DataStore cannot be null for getFeatureIterator");
@@ -100,8 +189,9 @@ public abstract class PostgisReader extends OSMReader {
             FeatureSource<SimpleFeatureType, SimpleFeature> source =
                     dataStore.getFeatureSource(tableName);
             Filter filter = getFilter(source);
+            if (partitionFilter != null)
+                filter = filter == Filter.INCLUDE ? partitionFilter : FF.and(filter, partitionFilter);
             FeatureCollection<SimpleFeatureType, SimpleFeature> collection = source.getFeatures(filter);
-            int size = collection.size();
             FeatureIterator<SimpleFeature> features = collection.features();
             return features;
 
@@ -117,10 +207,49 @@ public abstract class PostgisReader extends OSMReader {
      * It's easy to filter geometries that have a certain attributes, are in certain BBoxes, Polygons, etc.
      * You can find a lot of sample filters here: https://github.com/geotools/geotools/blob/master/docs/src/main/java/org/geotools/main/FilterExamples.java
      * <p>
-     * By default, all features are returned.
+     * By default, the features are restricted to the bounding box filter.bbox and to the rows where filter.column has
+     * one of the filter.values, if configured. Both are translated into the WHERE clause of the query. Without them
+     * all features are returned.
      */
     protected Filter getFilter(FeatureSource source) {
-        return Filter.INCLUDE;
+        List<Filter> filters = new ArrayList<>();
+        if (filterBBox != null) {
+            String geometry = ((SimpleFeatureType) source.getSchema()).getGeometryDescriptor().getLocalName();
+            filters.add(FF.bbox(geometry, filterBBox.minLon, filterBBox.minLat, filterBBox.maxLon, filterBBox.maxLat,
+                    "EPSG:4326"));
+        }
+        if (!filterColumn.isEmpty()) {
+            List<Filter> equals = new ArrayList<>();
+            for (String value : filterValues) {
+                equals.add(FF.equals(FF.property(filterColumn), FF.literal(value)));
+            }
+            filters.add(equals.size() == 1 ? equals.get(0) : FF.or(equals));
+        }
+        if (filters.isEmpty())
+            return Filter.INCLUDE;
+        return filters.size() == 1 ? filters.get(0) : FF.and(filters);
+    }
+
+    /**
+     * The configured filters of getFilter as SQL condition for queries that do not use GeoTools.
+     *
+     * @return the condition or an empty string if all rows are read
+     */
+    String getFilterSql(String geometryColumn) {
+        List<String> conditions = new ArrayList<>();
+        if (filterBBox != null)
+            conditions.add(Utils.quoteIdentifier(geometryColumn) + " && ST_MakeEnvelope(" + filterBBox.minLon + ", "
+                    + filterBBox.minLat + ", " + filterBBox.maxLon + ", " + filterBBox.maxLat + ", 4326)");
+        if (!filterColumn.isEmpty()) {
+            StringBuilder sb = new StringBuilder(Utils.quoteIdentifier(filterColumn)).append(" IN (");
+            for (int i = 0; i < filterValues.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                sb.append(Utils.quoteLiteral(filterValues.get(i)));
+            }
+            conditions.add(sb.append(')').toString());
+        }
+        return String.join(" AND ", conditions);
     }
 
     protected DataStore openPostGisStore() {
@@ -183,7 +312,7 @@ public abstract class PostgisReader extends OSMReader {
         return coordinate.getOrdinate(1);
     }
 
-    protected void saveTowerPosition(int nodeId, Coordinate point) {
-        nodeAccess.setNode(nodeId, lat(point), lng(point));
+    protected void saveTowerPosition(int nodeId, double lat, double lon) {
+        nodeAccess.setNode(nodeId, lat, lon);
     }
 }
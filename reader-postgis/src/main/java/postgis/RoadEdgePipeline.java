@@ -0,0 +1,151 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/**
+ * Splits the roads of the edge pass into RoadEdges on several worker threads while the edges are still added to
+ * the graph by a single thread, i.e. the thread calling add, which also reads the roads. The roads are processed in
+ * batches and the batches are written in the order they were added, so the node and edge ids are the same as for a
+ * sequential import.
+ * <p>
+ * At most threads * 2 batches are in flight, their attributes, geometries and edges are reused for later batches.
+ */
+class RoadEdgePipeline {
+    private final ExecutorService executor;
+    private final int columns;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final BiConsumer<RoadGeometry, RoadEdges> splitter;
+    private final BiConsumer<String[], RoadEdges> writer;
+    private final ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+    private Batch current;
+
+    /**
+     * @param splitter fills the edges of a road from its geometry, is called concurrently
+     * @param writer   adds the edges of a road to the graph, is called from the thread calling add and finish
+     */
+    RoadEdgePipeline(int threads, int columns, int batchSize, BiConsumer<RoadGeometry, RoadEdges> splitter,
+                     BiConsumer<String[], RoadEdges> writer) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one edge thread is required but was " + threads);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "postgis-edges");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.columns = columns;
+        this.batchSize = batchSize;
+        this.maxPendingBatches = threads * 2;
+        this.splitter = splitter;
+        this.writer = writer;
+    }
+
+    /**
+     * Copies the road into the current batch, so both arguments can be reused by the caller.
+     */
+    void add(String[] attributes, RoadGeometry geometry) {
+        if (current == null)
+            current = nextBatch();
+        current.add(attributes, geometry);
+        if (current.size == batchSize) {
+            submit(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Writes all remaining roads.
+     */
+    void finish() {
+        if (current != null) {
+            submit(current);
+            current = null;
+        }
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Stops the worker threads, also if the import failed.
+     */
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private Batch nextBatch() {
+        if (pending.size() < maxPendingBatches)
+            return new Batch();
+        // all batches are in use, write the oldest one to get it back
+        return writeOldest();
+    }
+
+    private void submit(Batch batch) {
+        pending.add(executor.submit(() -> {
+            for (int i = 0; i < batch.size; i++) {
+                splitter.accept(batch.geometries[i], batch.edges[i]);
+            }
+            return batch;
+        }));
+    }
+
+    private Batch writeOldest() {
+        Batch batch;
+        try {
+            batch = pending.poll().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while creating the edges", ex);
+        } catch (ExecutionException ex) {
+            throw Utils.asUnchecked(ex.getCause());
+        }
+        for (int i = 0; i < batch.size; i++) {
+            writer.accept(batch.attributes[i], batch.edges[i]);
+        }
+        batch.size = 0;
+        return batch;
+    }
+
+    private class Batch {
+        final String[][] attributes = new String[batchSize][columns];
+        final RoadGeometry[] geometries = new RoadGeometry[batchSize];
+        final RoadEdges[] edges = new RoadEdges[batchSize];
+        int size;
+
+        Batch() {
+            for (int i = 0; i < batchSize; i++) {
+                geometries[i] = new RoadGeometry();
+                edges[i] = new RoadEdges();
+            }
+        }
+
+        void add(String[] roadAttributes, RoadGeometry geometry) {
+            System.arraycopy(roadAttributes, 0, attributes[size], 0, columns);
+            geometries[size].copyFrom(geometry);
+            edges[size].clear();
+            size++;
+        }
+    }
+}
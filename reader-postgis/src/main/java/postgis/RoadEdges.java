@@ -0,0 +1,91 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.util.PointList;
+
+import java.util.Arrays;
+
+/**
+ * The edges of one road, i.e. its line strings split at the tower nodes, with everything that can be computed
+ * without writing to the graph: the tower nodes, the length, the estimated centre and the pillar nodes.
+ */
+class RoadEdges {
+    private int size;
+    private int[] fromNodes = new int[4];
+    private int[] toNodes = new int[4];
+    private double[] distances = new double[4];
+    private double[] centreLats = new double[4];
+    private double[] centreLons = new double[4];
+    private PointList[] pillarNodes = new PointList[4];
+
+    void clear() {
+        Arrays.fill(pillarNodes, 0, size, null);
+        size = 0;
+    }
+
+    void add(int fromNode, int toNode, double distance, double centreLat, double centreLon, PointList pillars) {
+        if (size == fromNodes.length) {
+            int newLength = size * 2;
+            fromNodes = Arrays.copyOf(fromNodes, newLength);
+            toNodes = Arrays.copyOf(toNodes, newLength);
+            distances = Arrays.copyOf(distances, newLength);
+            centreLats = Arrays.copyOf(centreLats, newLength);
+            centreLons = Arrays.copyOf(centreLons, newLength);
+            pillarNodes = Arrays.copyOf(pillarNodes, newLength);
+        }
+        fromNodes[size] = fromNode;
+        toNodes[size] = toNode;
+        distances[size] = distance;
+        centreLats[size] = centreLat;
+        centreLons[size] = centreLon;
+        pillarNodes[size] = pillars;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getFromNode(int index) {
+        return fromNodes[index];
+    }
+
+    int getToNode(int index) {
+        return toNodes[index];
+    }
+
+    /**
+     * @return the sum of the segment lengths, which is not yet checked for zero or NaN
+     */
+    double getDistance(int index) {
+        return distances[index];
+    }
+
+    double getCentreLat(int index) {
+        return centreLats[index];
+    }
+
+    double getCentreLon(int index) {
+        return centreLons[index];
+    }
+
+    PointList getPillarNodes(int index) {
+        return pillarNodes[index];
+    }
+}
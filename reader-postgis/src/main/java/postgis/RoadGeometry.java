@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.util.Helper;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The line strings of a road in primitive arrays. The readers reuse one instance for all roads, so no objects are
+ * created per road or per point. The coordinates are rounded to 6 decimal places, i.e. the precision that is used
+ * to detect junctions.
+ */
+class RoadGeometry {
+    private double[] lats = new double[64];
+    private double[] lons = new double[64];
+    private int[] lineEnds = new int[4];
+    private int points;
+    private int lines;
+
+    void clear() {
+        points = 0;
+        lines = 0;
+    }
+
+    /**
+     * Adds a point to the current line. Call finishLine after the last point of every line.
+     */
+    void addPoint(double lat, double lon) {
+        if (points == lats.length) {
+            lats = Arrays.copyOf(lats, points * 2);
+            lons = Arrays.copyOf(lons, points * 2);
+        }
+        lats[points] = Helper.round6(lat);
+        lons[points] = Helper.round6(lon);
+        points++;
+    }
+
+    void finishLine() {
+        if (lines == lineEnds.length)
+            lineEnds = Arrays.copyOf(lineEnds, lines * 2);
+        lineEnds[lines++] = points;
+    }
+
+    /**
+     * Replaces the current content with the specified line strings, which use the long-lat order.
+     */
+    void setLines(List<Coordinate[]> coordinates) {
+        clear();
+        for (Coordinate[] line : coordinates) {
+            for (Coordinate c : line) {
+                addPoint(c.getOrdinate(1), c.getOrdinate(0));
+            }
+            finishLine();
+        }
+    }
+
+    /**
+     * Replaces the current content with a copy of the specified geometry.
+     */
+    void copyFrom(RoadGeometry other) {
+        if (lats.length < other.points) {
+            lats = new double[other.lats.length];
+            lons = new double[other.lats.length];
+        }
+        if (lineEnds.length < other.lines)
+            lineEnds = new int[other.lineEnds.length];
+        System.arraycopy(other.lats, 0, lats, 0, other.points);
+        System.arraycopy(other.lons, 0, lons, 0, other.points);
+        System.arraycopy(other.lineEnds, 0, lineEnds, 0, other.lines);
+        points = other.points;
+        lines = other.lines;
+    }
+
+    int getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the index of the first point of the specified line
+     */
+    int getLineStart(int line) {
+        return line == 0 ? 0 : lineEnds[line - 1];
+    }
+
+    /**
+     * @return the index after the last point of the specified line
+     */
+    int getLineEnd(int line) {
+        return lineEnds[line];
+    }
+
+    int getPoints() {
+        return points;
+    }
+
+    double getLat(int point) {
+        return lats[point];
+    }
+
+    double getLon(int point) {
+        return lons[point];
+    }
+}
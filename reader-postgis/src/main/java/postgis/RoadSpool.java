@@ -0,0 +1,150 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Temporary memory-mapped storage of the roads read in the junction pass. It allows the edge pass to replay the
+ * roads without querying the database a second time.
+ * <p>
+ * Every road is stored as its attribute values (UTF-8, padded to 4 bytes) followed by its line strings. Coordinates
+ * are stored as integers with 6 decimal places, i.e. the precision of RoadGeometry, so decoding them gives exactly
+ * the coordinates of the first pass.
+ */
+class RoadSpool {
+    private static final double FACTOR = 1e6;
+    private static final int NULL_VALUE = -1;
+    private final Directory dir;
+    private final DataAccess da;
+    private long writePointer;
+    private int roads;
+    private byte[] bytes = new byte[64];
+
+    RoadSpool(Directory dir) {
+        this.dir = dir;
+        // the spool is always memory-mapped, even if the graph itself is kept in RAM
+        new File(dir.getLocation()).mkdirs();
+        this.da = dir.create("tmp_postgis_roads", DAType.MMAP).create(1 << 20);
+    }
+
+    /**
+     * Appends a road to the spool.
+     */
+    void addRoad(String[] attributes, RoadGeometry geometry) {
+        setInt(attributes.length);
+        for (String value : attributes) {
+            if (value == null) {
+                setInt(NULL_VALUE);
+                continue;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            setInt(utf8.length);
+            da.ensureCapacity(writePointer + utf8.length + 4);
+            da.setBytes(writePointer, utf8, utf8.length);
+            // keep the following ints aligned as they must not be distributed over two segments
+            writePointer += (utf8.length + 3) & ~3;
+        }
+
+        setInt(geometry.getLines());
+        for (int line = 0; line < geometry.getLines(); line++) {
+            int start = geometry.getLineStart(line);
+            int end = geometry.getLineEnd(line);
+            setInt(end - start);
+            da.ensureCapacity(writePointer + 8L * (end - start));
+            for (int i = start; i < end; i++) {
+                da.setInt(writePointer, (int) Math.round(geometry.getLat(i) * FACTOR));
+                da.setInt(writePointer + 4, (int) Math.round(geometry.getLon(i) * FACTOR));
+                writePointer += 8;
+            }
+        }
+        roads++;
+    }
+
+    /**
+     * Reads the road starting at the specified pointer.
+     *
+     * @param attributes is filled with the attribute values, must have the length used in addRoad
+     * @param geometry   is cleared and then filled with the line strings of the road
+     * @return the pointer of the next road
+     */
+    long readRoad(long pointer, String[] attributes, RoadGeometry geometry) {
+        int attributeCount = da.getInt(pointer);
+        if (attributeCount != attributes.length)
+            throw new IllegalStateException("Spooled road at " + pointer + " has " + attributeCount
+                    + " attributes but expected " + attributes.length);
+        pointer += 4;
+        for (int i = 0; i < attributeCount; i++) {
+            int length = da.getInt(pointer);
+            pointer += 4;
+            if (length == NULL_VALUE) {
+                attributes[i] = null;
+                continue;
+            }
+            if (bytes.length < length)
+                bytes = new byte[length];
+            da.getBytes(pointer, bytes, length);
+            attributes[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            pointer += (length + 3) & ~3;
+        }
+
+        geometry.clear();
+        int lineCount = da.getInt(pointer);
+        pointer += 4;
+        for (int i = 0; i < lineCount; i++) {
+            int pointCount = da.getInt(pointer);
+            pointer += 4;
+            for (int j = 0; j < pointCount; j++) {
+                geometry.addPoint(da.getInt(pointer) / FACTOR, da.getInt(pointer + 4) / FACTOR);
+                pointer += 8;
+            }
+            geometry.finishLine();
+        }
+        return pointer;
+    }
+
+    /**
+     * @return the pointer after the last road, i.e. reading stops when this pointer is reached
+     */
+    long getEndPointer() {
+        return writePointer;
+    }
+
+    int getRoads() {
+        return roads;
+    }
+
+    long getCapacity() {
+        return da.getCapacity();
+    }
+
+    void clear() {
+        dir.remove(da);
+    }
+
+    private void setInt(int value) {
+        da.ensureCapacity(writePointer + 4);
+        da.setInt(writePointer, value);
+        writePointer += 4;
+    }
+}
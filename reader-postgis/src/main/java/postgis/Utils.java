@@ -30,4 +30,15 @@ public class Utils {
         return new RuntimeException(e);
     }
 
+    public static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Quotes a value as SQL string literal. PostgreSQL converts it to the type of the column it is compared with.
+     */
+    public static String quoteLiteral(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
 }
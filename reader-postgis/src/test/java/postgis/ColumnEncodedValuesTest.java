@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.IntsRef;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnEncodedValuesTest {
+    private final EncodingManager em = EncodingManager.start().add(new CarFlagEncoder())
+            .add(new UnsignedIntEncodedValue("province_id", 7, false))
+            .add(new UnsignedDecimalEncodedValue("max_width", 7, 0.1, false))
+            .add(new SimpleBooleanEncodedValue("oneway_road", true))
+            .add(new EnumEncodedValue<>(RoadClass.KEY, RoadClass.class))
+            .build();
+    private final IntEncodedValue provinceEnc = em.getIntEncodedValue("province_id");
+    private final DecimalEncodedValue maxWidthEnc = em.getDecimalEncodedValue("max_width");
+    private final BooleanEncodedValue onewayEnc = em.getBooleanEncodedValue("oneway_road");
+
+    @Test
+    public void testMapping() {
+        ColumnEncodedValues values = new ColumnEncodedValues(em, " province_id , max_width = berongnenl,,oneway_road=one_way ");
+        assertEquals(Arrays.asList("province_id", "berongnenl", "one_way"), values.getColumns());
+        assertTrue(values.contains("berongnenl"));
+        assertFalse(values.contains("max_width"));
+        assertFalse(values.isEmpty());
+
+        assertTrue(new ColumnEncodedValues(em, "").isEmpty());
+        assertTrue(new ColumnEncodedValues(em, " , ").isEmpty());
+    }
+
+    @Test
+    public void testInvalidMapping() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new ColumnEncodedValues(em, "district_id=huyen"));
+        assertTrue(ex.getMessage().contains("district_id"), ex.getMessage());
+        assertTrue(ex.getMessage().contains("graph.encoded_values"), ex.getMessage());
+
+        ex = assertThrows(IllegalArgumentException.class, () -> new ColumnEncodedValues(em, "road_class"));
+        assertTrue(ex.getMessage().contains("road_class"), ex.getMessage());
+    }
+
+    @Test
+    public void testValues() {
+        ColumnEncodedValues values = new ColumnEncodedValues(em, "province_id,max_width=berongnenl,oneway_road=one_way");
+        Map<String, Object> road = new HashMap<>();
+        // numbers as returned by the database
+        road.put("province_id", 12L);
+        road.put("berongnenl", 3.5);
+        road.put("one_way", true);
+        IntsRef edgeFlags = apply(values, road);
+        assertEquals(12, provinceEnc.getInt(false, edgeFlags));
+        assertEquals(3.5, maxWidthEnc.getDecimal(false, edgeFlags), 1e-6);
+        assertTrue(onewayEnc.getBool(false, edgeFlags));
+        assertTrue(onewayEnc.getBool(true, edgeFlags));
+
+        // strings, e.g. from the spool or a text column
+        road.put("province_id", "7");
+        road.put("berongnenl", "2.5");
+        road.put("one_way", "t");
+        edgeFlags = apply(values, road);
+        assertEquals(7, provinceEnc.getInt(false, edgeFlags));
+        assertEquals(2.5, maxWidthEnc.getDecimal(false, edgeFlags), 1e-6);
+        assertTrue(onewayEnc.getBool(false, edgeFlags));
+
+        road.put("one_way", "1");
+        assertTrue(onewayEnc.getBool(false, apply(values, road)));
+        road.put("one_way", "false");
+        assertFalse(onewayEnc.getBool(false, apply(values, road)));
+        road.put("one_way", "f");
+        assertFalse(onewayEnc.getBool(true, apply(values, road)));
+
+        // null values are stored as 0 or false and do not keep the values of the previous road
+        road.put("one_way", true);
+        apply(values, road);
+        road.clear();
+        edgeFlags = apply(values, road);
+        assertEquals(0, provinceEnc.getInt(false, edgeFlags));
+        assertEquals(0, maxWidthEnc.getDecimal(false, edgeFlags), 1e-6);
+        assertFalse(onewayEnc.getBool(false, edgeFlags));
+
+        road.put("province_id", "abc");
+        assertThrows(NumberFormatException.class, () -> values.readRoad(road::get));
+    }
+
+    private IntsRef apply(ColumnEncodedValues values, Map<String, Object> road) {
+        values.readRoad(road::get);
+        IntsRef edgeFlags = em.createEdgeFlags();
+        values.apply(edgeFlags);
+        return edgeFlags;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyRoadReaderTest {
+    private static final String[] COLUMNS = {"osm_id", "maxspeed"};
+
+    @Test
+    public void testRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1));
+        // flags and a header extension, which must be skipped
+        out.writeInt(0);
+        out.writeInt(3);
+        out.write(new byte[3]);
+
+        writeRow(out, lineString(ByteOrder.LITTLE_ENDIAN, 10.0, 50.0, 10.1, 50.1, 10.2, 50.2), "1", "50");
+        writeRow(out, multiLineString(ByteOrder.BIG_ENDIAN,
+                new double[]{11.0, 51.0, 11.1, 51.1}, new double[]{12.0, 52.0, 12.1, 52.1}), "2", null);
+        writeRow(out, null, "3", "ÄÖ");
+        // the trailer
+        out.writeShort(-1);
+        out.flush();
+
+        List<String[]> attributes = new ArrayList<>();
+        List<List<double[]>> lines = new ArrayList<>();
+        new CopyRoadReader(null, Collections.emptyMap(), "roads", COLUMNS).read(new ByteArrayInputStream(bytes.toByteArray()),
+                (roadAttributes, geometry) -> {
+                    // both arguments are reused for the next road
+                    attributes.add(roadAttributes.clone());
+                    List<double[]> roadLines = new ArrayList<>();
+                    for (int line = 0; line < geometry.getLines(); line++) {
+                        double[] points = new double[2 * (geometry.getLineEnd(line) - geometry.getLineStart(line))];
+                        for (int i = geometry.getLineStart(line); i < geometry.getLineEnd(line); i++) {
+                            points[2 * (i - geometry.getLineStart(line))] = geometry.getLat(i);
+                            points[2 * (i - geometry.getLineStart(line)) + 1] = geometry.getLon(i);
+                        }
+                        roadLines.add(points);
+                    }
+                    lines.add(roadLines);
+                });
+
+        assertEquals(3, attributes.size());
+        assertArrayEquals(new String[]{"1", "50"}, attributes.get(0));
+        assertArrayEquals(new String[]{"2", null}, attributes.get(1));
+        assertArrayEquals(new String[]{"3", "ÄÖ"}, attributes.get(2));
+
+        assertEquals(1, lines.get(0).size());
+        assertArrayEquals(new double[]{50.0, 10.0, 50.1, 10.1, 50.2, 10.2}, lines.get(0).get(0), 1e-9);
+        assertEquals(2, lines.get(1).size());
+        assertArrayEquals(new double[]{51.0, 11.0, 51.1, 11.1}, lines.get(1).get(0), 1e-9);
+        assertArrayEquals(new double[]{52.0, 12.0, 52.1, 12.1}, lines.get(1).get(1), 1e-9);
+        // a null geometry results in an empty one
+        assertEquals(0, lines.get(2).size());
+    }
+
+    @Test
+    public void testWrongFieldCount() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write("PGCOPY\n\377\r\n\0".getBytes(StandardCharsets.ISO_8859_1));
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeShort(2);
+        out.flush();
+        CopyRoadReader reader = new CopyRoadReader(null, Collections.emptyMap(), "roads", COLUMNS);
+        assertThrows(IllegalStateException.class, () -> reader.read(new ByteArrayInputStream(bytes.toByteArray()),
+                (attributes, geometry) -> fail("no road expected")));
+    }
+
+    @Test
+    public void testWrongSignature() {
+        byte[] bytes = "COPY\n".getBytes(StandardCharsets.ISO_8859_1);
+        CopyRoadReader reader = new CopyRoadReader(null, Collections.emptyMap(), "roads", COLUMNS);
+        assertThrows(IOException.class, () -> reader.read(new ByteArrayInputStream(bytes),
+                (attributes, geometry) -> fail("no road expected")));
+    }
+
+    private static void writeRow(DataOutputStream out, byte[] wkb, String... attributes) throws IOException {
+        out.writeShort(1 + attributes.length);
+        writeField(out, wkb);
+        for (String attribute : attributes) {
+            writeField(out, attribute == null ? null : attribute.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeField(DataOutputStream out, byte[] field) throws IOException {
+        if (field == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(field.length);
+            out.write(field);
+        }
+    }
+
+    /**
+     * @param lonLats the coordinates in WKB order, i.e. longitude first
+     */
+    private static byte[] lineString(ByteOrder order, double... lonLats) {
+        ByteBuffer buffer = ByteBuffer.allocate(9 + 8 * lonLats.length).order(order);
+        putLineString(buffer, lonLats);
+        return buffer.array();
+    }
+
+    private static byte[] multiLineString(ByteOrder order, double[]... lines) {
+        int size = 9;
+        for (double[] lonLats : lines) {
+            size += 9 + 8 * lonLats.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        buffer.put(order == ByteOrder.BIG_ENDIAN ? (byte) 0 : (byte) 1);
+        buffer.putInt(5);
+        buffer.putInt(lines.length);
+        for (double[] lonLats : lines) {
+            putLineString(buffer, lonLats);
+        }
+        return buffer.array();
+    }
+
+    private static void putLineString(ByteBuffer buffer, double[] lonLats) {
+        buffer.put(buffer.order() == ByteOrder.BIG_ENDIAN ? (byte) 0 : (byte) 1);
+        buffer.putInt(2);
+        buffer.putInt(lonLats.length / 2);
+        for (double coordinate : lonLats) {
+            buffer.putDouble(coordinate);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.GraphHopperConfig;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphHopperPostgisTest {
+
+    @Test
+    public void testUpdateColumnRequiresChangeableEdges() {
+        GraphHopperConfig config = new GraphHopperConfig().
+                putObject("datareader.file", "roads").
+                putObject("db.update.column", "updated");
+        new GraphHopperPostgis(config);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> new GraphHopperPostgis(new GraphHopperConfig(config).putObject("graph.do_sort", true)));
+        assertTrue(ex.getMessage().contains("graph.do_sort"), ex.getMessage());
+        GraphHopperConfig compactConfig = new GraphHopperConfig(config).putObject("graph.compact_edges", true);
+        ex = assertThrows(IllegalArgumentException.class, () -> new GraphHopperPostgis(compactConfig).init(compactConfig));
+        assertTrue(ex.getMessage().contains("graph.compact_edges"), ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> new GraphHopperPostgis(config).setCompactEdges(true));
+
+        // without updates the edges can be compacted
+        new GraphHopperPostgis(new GraphHopperConfig().putObject("datareader.file", "roads")).setCompactEdges(true);
+    }
+}
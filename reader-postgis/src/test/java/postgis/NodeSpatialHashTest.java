@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import org.junit.jupiter.api.Test;
+
+import static com.graphhopper.util.DistanceCalcEarth.DIST_EARTH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class NodeSpatialHashTest {
+    // the length of one degree of latitude in meters
+    private static final double LAT_METERS = DIST_EARTH.calcDist(0, 0, 1, 0);
+
+    private GraphHopperStorage createGraph(double... latLons) {
+        GraphHopperStorage graph = new GraphBuilder(EncodingManager.create("car")).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < latLons.length; i += 2) {
+            na.setNode(i / 2, latLons[i], latLons[i + 1]);
+        }
+        return graph;
+    }
+
+    @Test
+    public void testClosestNode() {
+        GraphHopperStorage graph = createGraph(
+                50.0, 10.0,
+                50.0 + 4 / LAT_METERS, 10.0,
+                50.0 + 8 / LAT_METERS, 10.0);
+        NodeSpatialHash hash = new NodeSpatialHash(graph, 10);
+        assertEquals(0, hash.findNode(50.0, 10.0));
+        assertEquals(1, hash.findNode(50.0 + 3 / LAT_METERS, 10.0));
+        assertEquals(2, hash.findNode(50.0 + 7 / LAT_METERS, 10.0));
+        assertEquals(2, hash.findNode(50.0 + 17 / LAT_METERS, 10.0));
+        assertEquals(-1, hash.findNode(50.0 + 19 / LAT_METERS, 10.0));
+        assertEquals(-1, hash.findNode(50.0, 11.0));
+    }
+
+    @Test
+    public void testCellBorders() {
+        // the cells are 10m high and 10m / cos(lat) wide in degrees, i.e. at 60 degrees a node 9m east or west of a
+        // coordinate in the middle of a cell is two cells away in east-west direction
+        double cellSize = 10 / LAT_METERS;
+        double lat = (Math.floor(60 / cellSize) + 0.5) * cellSize;
+        double lon = (Math.floor(20 / cellSize) + 0.5) * cellSize;
+        assertFound(lat, lon, 0, 9);
+        assertFound(lat, lon, 0, -9);
+        assertFound(lat, lon, 9, 0);
+        assertFound(lat, lon, -9, 0);
+        assertFound(lat, lon, 6, 7);
+        assertFound(lat, lon, -6, -7);
+
+        // the cells are negative west of Greenwich and south of the equator
+        assertFound(-lat, -lon, 0, -9);
+        assertFound(-lat, -lon, -9, 0);
+        assertFound(-lat, -lon, 6, 7);
+    }
+
+    /**
+     * Asserts that a node north and east of the coordinate is found with a maximum distance of 10m, but not with a
+     * maximum distance of 8m.
+     */
+    private void assertFound(double lat, double lon, double metersNorth, double metersEast) {
+        double lonMeters = LAT_METERS * Math.cos(Math.toRadians(lat));
+        GraphHopperStorage graph = createGraph(lat + metersNorth / LAT_METERS, lon + metersEast / lonMeters);
+        assertEquals(0, new NodeSpatialHash(graph, 10).findNode(lat, lon));
+        assertEquals(-1, new NodeSpatialHash(graph, 8).findNode(lat, lon));
+    }
+
+    @Test
+    public void testMaxDistance() {
+        double lat = 52.0, lon = 13.0;
+        double lonMeters = LAT_METERS * Math.cos(Math.toRadians(lat));
+        GraphHopperStorage graph = createGraph(lat, lon);
+        NodeAccess na = graph.getNodeAccess();
+        double queryLat = lat + 3 / LAT_METERS;
+        double queryLon = lon + 4 / lonMeters;
+        double distance = DIST_EARTH.calcDist(queryLat, queryLon, na.getLat(0), na.getLon(0));
+        assertEquals(5, distance, 0.1);
+
+        // a node at exactly the maximum distance is found
+        assertEquals(0, new NodeSpatialHash(graph, distance).findNode(queryLat, queryLon));
+        // but not if it is just beyond
+        assertEquals(-1, new NodeSpatialHash(graph, distance - 0.001).findNode(queryLat, queryLon));
+        assertEquals(-1, new NodeSpatialHash(graph, 10).findNode(lat + 6 / LAT_METERS, lon + 8.01 / lonMeters));
+
+        // a maximum distance of 0 only finds the node itself
+        assertEquals(0, new NodeSpatialHash(graph, 0).findNode(na.getLat(0), na.getLon(0)));
+        assertEquals(-1, new NodeSpatialHash(graph, 0).findNode(queryLat, queryLon));
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.FetchMode;
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the update of an imported graph with roads that are passed in directly instead of being read from Postgis.
+ */
+public class OSMPostgisReaderTest {
+    private final EncodingManager em = EncodingManager.create("car");
+    private final Map<String, String> params = new HashMap<>();
+    private File location;
+
+    @BeforeEach
+    public void setUp(@TempDir File tempDir) {
+        location = tempDir;
+        params.put("datareader.file", "roads");
+        params.put("update.column", "updated");
+    }
+
+    /**
+     * Two parallel roads from west to east which are connected by a third road at their east end, i.e. there are four
+     * tower nodes and the first two roads have one pillar node each.
+     */
+    private List<Road> createRoads() {
+        List<Road> roads = new ArrayList<>();
+        roads.add(new Road(1, "50", 50.000, 10.000, 50.000, 10.001, 50.000, 10.002));
+        roads.add(new Road(2, "50", 50.001, 10.000, 50.001, 10.001, 50.001, 10.002));
+        roads.add(new Road(3, "50", 50.000, 10.002, 50.001, 10.002));
+        return roads;
+    }
+
+    private void importGraph(List<Road> roads) {
+        GraphHopperStorage ghStorage = new GraphBuilder(em).setRAM(location.getAbsolutePath(), true).build();
+        new TestReader(ghStorage, roads, Collections.emptyList()).readGraph();
+        ghStorage.flush();
+        // the node ids start at 1
+        assertEquals(5, ghStorage.getNodes());
+        assertEquals(3, ghStorage.getEdges());
+        ghStorage.close();
+    }
+
+    private GraphHopperStorage loadGraph() {
+        GraphHopperStorage ghStorage = new GraphBuilder(em).setRAM(location.getAbsolutePath(), true).build();
+        assertTrue(ghStorage.loadExisting());
+        return ghStorage;
+    }
+
+    @Test
+    public void testUpdateInPlace() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        // road 1 gets a new pillar node and a different speed, the new point is not used by any other road
+        List<Road> changed = Collections.singletonList(
+                new Road(1, "30", 50.000, 10.000, 49.9995, 10.001, 50.000, 10.002));
+        OSMPostgisReader.UpdateStats stats = new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0));
+        assertNotNull(stats);
+        assertEquals(1, stats.getWeightChanges());
+        assertEquals(1, stats.getGeometryChanges());
+        assertEquals(0, stats.getNameChanges());
+
+        PointList pillarNodes = ghStorage.getEdgeIteratorState(0, Integer.MIN_VALUE).fetchWayGeometry(FetchMode.PILLAR_ONLY);
+        assertEquals(1, pillarNodes.size());
+        assertEquals(49.9995, pillarNodes.getLat(0), 1e-6);
+        assertEquals(10.001, pillarNodes.getLon(0), 1e-6);
+        ghStorage.close();
+    }
+
+    @Test
+    public void testUpdateWithSameGeometry() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        List<Road> changed = Collections.singletonList(createRoads().get(1));
+        OSMPostgisReader.UpdateStats stats = new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0));
+        assertNotNull(stats);
+        assertEquals(0, stats.getWeightChanges());
+        assertEquals(0, stats.getGeometryChanges());
+        ghStorage.close();
+    }
+
+    @Test
+    public void testNewJunctionWithPillarNode() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        // the new pillar node of road 1 is the pillar node of road 2, the import would create a junction there
+        List<Road> changed = Collections.singletonList(
+                new Road(1, "50", 50.000, 10.000, 50.001, 10.001, 50.000, 10.002));
+        assertNull(new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0)));
+        assertUnchanged(ghStorage);
+        ghStorage.close();
+    }
+
+    @Test
+    public void testNewJunctionWithTowerNode() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        // the new pillar node of road 1 is the start of road 2
+        List<Road> changed = Collections.singletonList(
+                new Road(1, "50", 50.000, 10.000, 50.001, 10.000, 50.000, 10.002));
+        assertNull(new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0)));
+        assertUnchanged(ghStorage);
+        ghStorage.close();
+    }
+
+    @Test
+    public void testNewJunctionOfChangedRoads() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        // both roads are moved to the same new pillar node, which is not part of the graph yet
+        List<Road> changed = Arrays.asList(
+                new Road(1, "50", 50.000, 10.000, 50.0005, 10.001, 50.000, 10.002),
+                new Road(2, "50", 50.001, 10.000, 50.0005, 10.001, 50.001, 10.002));
+        assertNull(new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0)));
+        ghStorage.close();
+    }
+
+    @Test
+    public void testNewRoad() {
+        importGraph(createRoads());
+        GraphHopperStorage ghStorage = loadGraph();
+        List<Road> changed = Collections.singletonList(new Road(4, "50", 50.002, 10.000, 50.002, 10.002));
+        assertNull(new TestReader(ghStorage, createRoads(), changed).updateGraph(new Date(0)));
+        ghStorage.close();
+    }
+
+    @Test
+    public void testEdgeThreads() {
+        // a grid of roads, more than the batch size of the edge pipeline, with junctions at every crossing
+        List<Road> roads = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            double[] points = new double[2 * 6];
+            for (int j = 0; j < 6; j++) {
+                double lat = 50 + 0.001 * (i % 2 == 0 ? i / 2 : j * 100);
+                double lon = 10 + 0.001 * (i % 2 == 0 ? j * 100 : i / 2);
+                points[2 * j] = lat;
+                points[2 * j + 1] = lon;
+            }
+            roads.add(new Road(i + 1, Integer.toString(30 + 10 * (i % 5)), points));
+        }
+        GraphHopperStorage sequential = importWithEdgeThreads(roads, 1);
+        GraphHopperStorage parallel = importWithEdgeThreads(roads, 4);
+        // the roads are split at the crossings
+        assertTrue(sequential.getEdges() > roads.size());
+        assertEquals(sequential.getNodes(), parallel.getNodes());
+        assertEquals(sequential.getEdges(), parallel.getEdges());
+        for (int node = 0; node < sequential.getNodes(); node++) {
+            assertEquals(sequential.getNodeAccess().getLat(node), parallel.getNodeAccess().getLat(node), 1e-9);
+            assertEquals(sequential.getNodeAccess().getLon(node), parallel.getNodeAccess().getLon(node), 1e-9);
+        }
+        for (int edge = 0; edge < sequential.getEdges(); edge++) {
+            EdgeIteratorState expected = sequential.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState actual = parallel.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(expected.getBaseNode(), actual.getBaseNode());
+            assertEquals(expected.getAdjNode(), actual.getAdjNode());
+            assertEquals(expected.getDistance(), actual.getDistance(), 1e-9);
+            assertEquals(expected.getFlags(), actual.getFlags());
+            assertEquals(expected.fetchWayGeometry(FetchMode.ALL), actual.fetchWayGeometry(FetchMode.ALL));
+        }
+    }
+
+    @Test
+    public void testSinglePass() {
+        params.put("tags_to_copy", "ten");
+        List<Road> roads = createRoads();
+        roads.get(0).setName("Đường 3/2");
+        roads.get(1).setName("12");
+        List<String> twoPassTags = new ArrayList<>();
+        GraphHopperStorage twoPass = importSinglePass(roads, false, twoPassTags);
+        List<String> singlePassTags = new ArrayList<>();
+        GraphHopperStorage singlePass = importSinglePass(roads, true, singlePassTags);
+
+        // the values of tags_to_copy are strings in both modes, also if they look like numbers
+        assertEquals(Arrays.asList("Đường 3/2", "12", "không tên"), twoPassTags);
+        assertEquals(twoPassTags, singlePassTags);
+        assertEquals(twoPass.getNodes(), singlePass.getNodes());
+        assertEquals(twoPass.getEdges(), singlePass.getEdges());
+        for (int edge = 0; edge < twoPass.getEdges(); edge++) {
+            EdgeIteratorState expected = twoPass.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState actual = singlePass.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(expected.getFlags(), actual.getFlags());
+            assertEquals(expected.fetchWayGeometry(FetchMode.ALL), actual.fetchWayGeometry(FetchMode.ALL));
+        }
+    }
+
+    @Test
+    public void testFilterSql() {
+        GraphHopperStorage ghStorage = new GraphBuilder(em).build();
+        assertEquals("", new OSMPostgisReader(ghStorage, params).getFilterSql("geom"));
+
+        params.put("filter.bbox", "10.0,10.5,50.0,50.5");
+        assertEquals("\"geom\" && ST_MakeEnvelope(10.0, 50.0, 10.5, 50.5, 4326)",
+                new OSMPostgisReader(ghStorage, params).getFilterSql("geom"));
+
+        // the values are trimmed and the quotes within identifiers and values are escaped
+        params.remove("filter.bbox");
+        params.put("filter.column", "ma\"tinh");
+        params.put("filter.values", " 79 , Hồ Chí Minh's,'; DROP TABLE roads; --");
+        assertEquals("\"ma\"\"tinh\" IN ('79', 'Hồ Chí Minh''s', '''; DROP TABLE roads; --')",
+                new OSMPostgisReader(ghStorage, params).getFilterSql("geom"));
+
+        params.put("filter.bbox", "10.0,10.5,50.0,50.5");
+        params.put("filter.values", "79");
+        assertEquals("\"the\"\"geom\" && ST_MakeEnvelope(10.0, 50.0, 10.5, 50.5, 4326) AND \"ma\"\"tinh\" IN ('79')",
+                new OSMPostgisReader(ghStorage, params).getFilterSql("the\"geom"));
+
+        params.put("filter.values", " , ");
+        assertThrows(IllegalArgumentException.class, () -> new OSMPostgisReader(ghStorage, params));
+    }
+
+    private GraphHopperStorage importSinglePass(List<Road> roads, boolean singlePass, List<String> copiedTags) {
+        params.put("single_pass", Boolean.toString(singlePass));
+        GraphHopperStorage ghStorage = new GraphBuilder(em).setRAM(new File(location, "single_pass_" + singlePass).getAbsolutePath(), false).build();
+        TestReader reader = new TestReader(ghStorage, roads, Collections.emptyList());
+        reader.addListener((way, edge) -> copiedTags.add((String) way.getTag("ten")));
+        reader.readGraph();
+        // the roads are replayed from the spool instead of being read again
+        assertEquals(singlePass ? 1 : 2, reader.readRoadsCalls);
+        return ghStorage;
+    }
+
+    private GraphHopperStorage importWithEdgeThreads(List<Road> roads, int edgeThreads) {
+        params.put("edge_threads", Integer.toString(edgeThreads));
+        GraphHopperStorage ghStorage = new GraphBuilder(em).build();
+        new TestReader(ghStorage, roads, Collections.emptyList()).readGraph();
+        return ghStorage;
+    }
+
+    private void assertUnchanged(GraphHopperStorage ghStorage) {
+        // no road must be updated if one of them needs a full import
+        AllEdgesIterator iter = ghStorage.getAllEdges();
+        while (iter.next()) {
+            PointList pillarNodes = iter.fetchWayGeometry(FetchMode.PILLAR_ONLY);
+            for (int i = 0; i < pillarNodes.size(); i++) {
+                assertEquals(10.001, pillarNodes.getLon(i), 1e-6);
+                double lat = pillarNodes.getLat(i);
+                assertTrue(Math.abs(lat - 50.000) < 1e-6 || Math.abs(lat - 50.001) < 1e-6, "moved pillar node " + lat);
+            }
+        }
+    }
+
+    private static class Road {
+        final long id;
+        final String maxSpeed;
+        final double[] points;
+        String name;
+
+        Road(long id, String maxSpeed, double... points) {
+            this.id = id;
+            this.maxSpeed = maxSpeed;
+            this.points = points;
+        }
+
+        Road setName(String name) {
+            this.name = name;
+            return this;
+        }
+    }
+
+    /**
+     * Passes the specified roads to the handlers instead of reading them from Postgis.
+     */
+    private class TestReader extends OSMPostgisReader {
+        private final List<Road> roads;
+        private final List<Road> changedRoads;
+        private int readRoadsCalls;
+
+        TestReader(GraphHopperStorage ghStorage, List<Road> roads, List<Road> changedRoads) {
+            super(ghStorage, params);
+            this.roads = roads;
+            this.changedRoads = changedRoads;
+        }
+
+        @Override
+        void readRoads(BiConsumer<String[], RoadGeometry> handler) {
+            readRoadsCalls++;
+            pass(roads, handler);
+        }
+
+        @Override
+        void readChangedRoads(Date since, BiConsumer<String[], RoadGeometry> handler) {
+            pass(changedRoads, handler);
+        }
+
+        private void pass(List<Road> roads, BiConsumer<String[], RoadGeometry> handler) {
+            List<String> columns = Arrays.asList(getRoadColumns());
+            for (Road road : roads) {
+                String[] attributes = new String[columns.size()];
+                attributes[columns.indexOf("osm_id")] = Long.toString(road.id);
+                attributes[columns.indexOf("maxspeed")] = road.maxSpeed;
+                if (columns.contains("ten"))
+                    attributes[columns.indexOf("ten")] = road.name;
+                RoadGeometry geometry = new RoadGeometry();
+                for (int i = 0; i < road.points.length; i += 2) {
+                    geometry.addPoint(road.points[i], road.points[i + 1]);
+                }
+                geometry.finishLine();
+                handler.accept(attributes, geometry);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.jupiter.api.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartitionedFeatureReaderTest {
+
+    @Test
+    public void testRanges() {
+        assertRangesCover(1, 100, 4);
+        assertRangesCover(-7, 13, 3);
+        assertRangesCover(5, 5, 4);
+        // more ranges than values
+        assertRangesCover(0, 2, 8);
+        assertRangesCover(10, 1009, 7);
+        assertEquals(4, PartitionedFeatureReader.createRanges(1, 100, 4).size());
+    }
+
+    /**
+     * Asserts that every value between min and max is in exactly one range and the last range is unbounded.
+     */
+    private static void assertRangesCover(long min, long max, int ranges) {
+        List<long[]> result = PartitionedFeatureReader.createRanges(min, max, ranges);
+        assertEquals(min, result.get(0)[0]);
+        for (int i = 1; i < result.size(); i++) {
+            assertEquals(result.get(i - 1)[1], result.get(i)[0]);
+        }
+        long[] last = result.get(result.size() - 1);
+        assertEquals(Long.MAX_VALUE, last[1]);
+        assertTrue(last[0] <= max);
+    }
+
+    @Test
+    public void testRangeFiltersCoverEveryRow() throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("roads", "gid:Long");
+        List<SimpleFeature> rows = new ArrayList<>();
+        for (Long gid : new Long[]{3L, 4L, 17L, 50L, 99L, 100L, null, null}) {
+            rows.add(SimpleFeatureBuilder.build(type, new Object[]{gid}, "roads." + rows.size()));
+        }
+        assertEveryRowInOnePartition(PartitionedFeatureReader.createRangeFilters("gid", 3L, 100L, 4), rows);
+        assertEveryRowInOnePartition(PartitionedFeatureReader.createRangeFilters("gid", 3L, 100L, 200), rows);
+
+        // only null values
+        List<SimpleFeature> nullRows = rows.subList(rows.size() - 2, rows.size());
+        List<Filter> partitions = PartitionedFeatureReader.createRangeFilters("gid", null, null, 4);
+        assertEquals(1, partitions.size());
+        assertEveryRowInOnePartition(partitions, nullRows);
+    }
+
+    private static void assertEveryRowInOnePartition(List<Filter> partitions, List<SimpleFeature> rows) {
+        for (SimpleFeature row : rows) {
+            int matches = 0;
+            for (Filter partition : partitions) {
+                if (partition.evaluate(row))
+                    matches++;
+            }
+            assertEquals(1, matches, "partitions of " + row.getID());
+        }
+    }
+}
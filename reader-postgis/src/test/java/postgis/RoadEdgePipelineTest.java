@@ -0,0 +1,127 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.util.PointList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoadEdgePipelineTest {
+
+    @Test
+    public void testRoadOrder() {
+        // the batch size is small, so the batches are reused and written while later ones are still split
+        List<String> sequential = writeRoads(1, 1000, 7);
+        List<String> parallel = writeRoads(4, 1000, 7);
+        assertEquals(expectedEdges(1000), sequential);
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testPartialBatch() {
+        List<String> parallel = writeRoads(3, 10, 4);
+        assertEquals(expectedEdges(10), parallel);
+    }
+
+    @Test
+    public void testSplitterFailure() {
+        RoadEdgePipeline pipeline = new RoadEdgePipeline(2, 1, 4, (geometry, edges) -> {
+            throw new IllegalArgumentException("invalid geometry");
+        }, (attributes, edges) -> fail("no road expected"));
+        try {
+            RoadGeometry geometry = createGeometry(0);
+            pipeline.add(new String[]{"0"}, geometry);
+            IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, pipeline::finish);
+            assertEquals("invalid geometry", ex.getMessage());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Passes the roads through the pipeline and returns the edges in the order they were written.
+     */
+    private List<String> writeRoads(int threads, int roads, int batchSize) {
+        List<String> written = new ArrayList<>();
+        Random random = new Random(123);
+        int[] delays = new int[roads];
+        for (int i = 0; i < roads; i++) {
+            delays[i] = random.nextInt(10) == 0 ? 1 : 0;
+        }
+        RoadEdgePipeline pipeline = new RoadEdgePipeline(threads, 1, batchSize, (geometry, edges) -> {
+            // delay some of the batches, so the threads finish them in a different order than they were added
+            int road = (int) geometry.getLat(0);
+            if (delays[road] > 0)
+                sleep(delays[road]);
+            for (int i = 1; i < geometry.getPoints(); i++) {
+                edges.add(road * 100 + i - 1, road * 100 + i, 1, 0, 0, PointList.EMPTY);
+            }
+        }, (attributes, edges) -> {
+            for (int i = 0; i < edges.size(); i++) {
+                written.add(attributes[0] + ":" + edges.getFromNode(i) + "-" + edges.getToNode(i));
+            }
+        });
+        try {
+            String[] attributes = new String[1];
+            for (int road = 0; road < roads; road++) {
+                // the caller reuses both arguments
+                attributes[0] = Integer.toString(road);
+                pipeline.add(attributes, createGeometry(road));
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.close();
+        }
+        return written;
+    }
+
+    private static List<String> expectedEdges(int roads) {
+        List<String> edges = new ArrayList<>();
+        for (int road = 0; road < roads; road++) {
+            for (int i = 1; i < 2 + road % 3; i++) {
+                edges.add(road + ":" + (road * 100 + i - 1) + "-" + (road * 100 + i));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return a line with 2 to 4 points and the road number as latitude
+     */
+    private static RoadGeometry createGeometry(int road) {
+        RoadGeometry geometry = new RoadGeometry();
+        for (int i = 0; i < 2 + road % 3; i++) {
+            geometry.addPoint(road, i);
+        }
+        geometry.finishLine();
+        return geometry;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
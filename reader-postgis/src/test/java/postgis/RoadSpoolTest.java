@@ -0,0 +1,118 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoadSpoolTest {
+
+    @Test
+    public void testRoundTrip(@TempDir File tempDir) {
+        RoadSpool spool = new RoadSpool(new GHDirectory(tempDir.getAbsolutePath(), DAType.RAM));
+        // values with every length modulo 4, null, empty and multi-byte UTF-8 values
+        String[][] attributes = {
+                {"1", "ab", "abc", "abcd"},
+                {null, "", "không tên", "Đường 3/2"},
+                {"-12.5", "2147483648", null, null}};
+        RoadGeometry[] geometries = {
+                createGeometry(new double[]{10.123456, 106.654321, 10.2, 106.7}),
+                createGeometry(new double[]{-33.9, 18.4, -33.95, 18.45, -34.0, 18.5}, new double[]{-1, -2, -3, -4}),
+                new RoadGeometry()};
+        for (int i = 0; i < attributes.length; i++) {
+            spool.addRoad(attributes[i], geometries[i]);
+        }
+        assertEquals(3, spool.getRoads());
+
+        String[] readAttributes = new String[4];
+        RoadGeometry readGeometry = new RoadGeometry();
+        long pointer = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            pointer = spool.readRoad(pointer, readAttributes, readGeometry);
+            // the values are always read back as strings
+            assertArrayEquals(attributes[i], readAttributes);
+            assertEquals(geometries[i].getLines(), readGeometry.getLines());
+            assertEquals(geometries[i].getPoints(), readGeometry.getPoints());
+            for (int line = 0; line < readGeometry.getLines(); line++) {
+                assertEquals(geometries[i].getLineStart(line), readGeometry.getLineStart(line));
+                assertEquals(geometries[i].getLineEnd(line), readGeometry.getLineEnd(line));
+            }
+            for (int p = 0; p < readGeometry.getPoints(); p++) {
+                assertEquals(geometries[i].getLat(p), readGeometry.getLat(p), 1e-6);
+                assertEquals(geometries[i].getLon(p), readGeometry.getLon(p), 1e-6);
+            }
+        }
+        assertEquals(spool.getEndPointer(), pointer);
+
+        // the attribute count is checked
+        assertThrows(IllegalStateException.class, () -> spool.readRoad(0, new String[3], new RoadGeometry()));
+        spool.clear();
+    }
+
+    @Test
+    public void testManySegments(@TempDir File tempDir) {
+        RoadSpool spool = new RoadSpool(new GHDirectory(tempDir.getAbsolutePath(), DAType.RAM));
+        // long values and lines, so the roads span the boundaries of the 1MB segments
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String longValue = sb.toString();
+        int roads = 3000;
+        for (int i = 0; i < roads; i++) {
+            RoadGeometry geometry = new RoadGeometry();
+            for (int p = 0; p < 1 + i % 50; p++) {
+                geometry.addPoint(i * 1e-3, p * 1e-3);
+            }
+            geometry.finishLine();
+            spool.addRoad(new String[]{Integer.toString(i), longValue.substring(i % 1000)}, geometry);
+        }
+        assertTrue(spool.getCapacity() > 2 << 20);
+
+        String[] attributes = new String[2];
+        RoadGeometry geometry = new RoadGeometry();
+        long pointer = 0;
+        for (int i = 0; i < roads; i++) {
+            pointer = spool.readRoad(pointer, attributes, geometry);
+            assertEquals(Integer.toString(i), attributes[0]);
+            assertEquals(longValue.substring(i % 1000), attributes[1]);
+            assertEquals(1 + i % 50, geometry.getPoints());
+            assertEquals(i * 1e-3, geometry.getLat(geometry.getPoints() - 1), 1e-6);
+            assertEquals((geometry.getPoints() - 1) * 1e-3, geometry.getLon(geometry.getPoints() - 1), 1e-6);
+        }
+        assertEquals(spool.getEndPointer(), pointer);
+        spool.clear();
+    }
+
+    private static RoadGeometry createGeometry(double[]... lines) {
+        RoadGeometry geometry = new RoadGeometry();
+        for (double[] latLons : lines) {
+            for (int i = 0; i < latLons.length; i += 2) {
+                geometry.addPoint(latLons[i], latLons[i + 1]);
+            }
+            geometry.finishLine();
+        }
+        return geometry;
+    }
+}
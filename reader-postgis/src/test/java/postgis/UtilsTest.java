@@ -0,0 +1,49 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package postgis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UtilsTest {
+
+    @Test
+    public void testQuoteIdentifier() {
+        assertEquals("\"roads\"", Utils.quoteIdentifier("roads"));
+        // keeps the case, which PostgreSQL would otherwise fold to lower case
+        assertEquals("\"MaTinh\"", Utils.quoteIdentifier("MaTinh"));
+        assertEquals("\"tên đường\"", Utils.quoteIdentifier("tên đường"));
+        assertEquals("\"a\"\"b\"", Utils.quoteIdentifier("a\"b"));
+        assertEquals("\"\"\"; DROP TABLE roads; --\"", Utils.quoteIdentifier("\"; DROP TABLE roads; --"));
+        // single quotes need no escaping within an identifier
+        assertEquals("\"it's\"", Utils.quoteIdentifier("it's"));
+    }
+
+    @Test
+    public void testQuoteLiteral() {
+        assertEquals("'79'", Utils.quoteLiteral("79"));
+        assertEquals("''", Utils.quoteLiteral(""));
+        assertEquals("'Hồ Chí Minh'", Utils.quoteLiteral("Hồ Chí Minh"));
+        assertEquals("'it''s'", Utils.quoteLiteral("it's"));
+        assertEquals("''''''", Utils.quoteLiteral("''"));
+        assertEquals("'''; DROP TABLE roads; --'", Utils.quoteLiteral("'; DROP TABLE roads; --"));
+        // double quotes need no escaping within a literal
+        assertEquals("'a\"b'", Utils.quoteLiteral("a\"b"));
+    }
+}
@@ -113,6 +113,8 @@ public class Measurement {
         int count = args.getInt("measurement.count", 5000);
         put("measurement.name", args.getString("measurement.name", "no_name"));
         put("measurement.map", args.getString("datareader.file", "unknown"));
+        // allows comparing the node orderings via graph.do_sort and graph.sort_order
+        put("measurement.sort", args.getBool("graph.do_sort", false) ? args.getString("graph.sort_order", "dfs") : "none");
         String blockAreaStr = args.getString("measurement.block_area", "");
         final boolean useMeasurementTimeAsRefTime = args.getBool("measurement.use_measurement_time_as_ref_time", false);
         if (useMeasurementTimeAsRefTime && !useJson) {
@@ -40,11 +40,32 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 
 import javax.inject.Inject;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the current GraphHopper instance for the duration of a request, so that a graph reload does not
+     * close it while the request is still using it.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        @Inject
+        GraphHopperManaged graphHopperManaged;
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+            graphHopperManaged.release(instance);
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -145,6 +166,22 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         }
     }
 
+    static class TriangulatorFactory implements Factory<Triangulator> {
+
+        @Inject
+        GraphHopper graphHopper;
+
+        @Override
+        public Triangulator provide() {
+            return new JTSTriangulator(graphHopper.getRouterConfig());
+        }
+
+        @Override
+        public void dispose(Triangulator instance) {
+
+        }
+    }
+
     static class PathDetailsBuilderFactoryFactory implements Factory<PathDetailsBuilderFactory> {
 
         @Inject
@@ -233,9 +270,15 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
+                if (graphHopperManaged.isReloadable()) {
+                    bind(graphHopperManaged).to(GraphHopperManaged.class);
+                    bindFactory(GraphHopperFactory.class).to(GraphHopper.class).in(RequestScoped.class);
+                } else {
+                    // the pt resources include a singleton, which cannot hold a request scoped instance
+                    bind(graphHopper).to(GraphHopper.class);
+                }
 
-                bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bindFactory(TriangulatorFactory.class).to(Triangulator.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
                 bindFactory(HasElevation.class).to(Boolean.class).named("hasElevation");
@@ -274,7 +317,9 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         environment.jersey().register(SPTResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        if (graphHopperManaged.isReloadable())
+            environment.admin().addTask(new ReloadGraphTask(graphHopperManaged));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged::getGraphHopper));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthcheckResource.class);
     }
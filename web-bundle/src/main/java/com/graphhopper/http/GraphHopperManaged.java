@@ -20,6 +20,7 @@ package com.graphhopper.http;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.Profile;
@@ -27,23 +28,63 @@ import com.graphhopper.gtfs.GraphHopperGtfs;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.routing.weighting.custom.CustomProfile;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
+import com.graphhopper.storage.MMapWarmUp;
 import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.shapes.BBox;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import postgis.GraphHopperPostgis;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+/**
+ * Manages the lifecycle of the GraphHopper instance. Unless GTFS is used the instance can be replaced while the
+ * server is running: reload builds a new graph folder in the background, either by a new import or from a copy of
+ * an existing graph folder, loads and warms it and then swaps it in. Requests use acquire and release, so requests
+ * that are in flight during the swap finish on the old instance, which is closed afterwards.
+ */
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    private final GraphHopperConfig configuration;
+    private final Map<GraphHopper, ManagedInstance> instances = new ConcurrentHashMap<>();
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "graphhopper-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ManagedInstance current;
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        String customModelFolder = configuration.getString("custom_model_folder", "");
+        List<Profile> newProfiles = resolveCustomModelFiles(customModelFolder, configuration.getProfiles());
+        configuration.setProfiles(newProfiles);
+
+        this.configuration = configuration;
+        current = new ManagedInstance(createGraphHopper(configuration), false);
+        instances.put(current.graphHopper, current);
+    }
+
+    private static GraphHopper createGraphHopper(GraphHopperConfig configuration) {
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else if (configuration.has("db.host")) {
@@ -51,12 +92,8 @@ public class GraphHopperManaged implements Managed {
         } else {
             graphHopper = new GraphHopper();
         }
-
-        String customModelFolder = configuration.getString("custom_model_folder", "");
-        List<Profile> newProfiles = resolveCustomModelFiles(customModelFolder, configuration.getProfiles());
-        configuration.setProfiles(newProfiles);
-
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     public static List<Profile> resolveCustomModelFiles(String customModelFolder, List<Profile> profiles) {
@@ -103,7 +140,12 @@ public class GraphHopperManaged implements Managed {
 
     @Override
     public void start() {
+        GraphHopper graphHopper = current.graphHopper;
         graphHopper.importOrLoad();
+        logLoaded(graphHopper);
+    }
+
+    private static void logLoaded(GraphHopper graphHopper) {
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} ints for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
                 graphHopper.getEncodingManager().toEncodedValuesAsString(),
@@ -111,14 +153,189 @@ public class GraphHopperManaged implements Managed {
                 graphHopper.getGraphHopperStorage().toDetailsString());
     }
 
+    /**
+     * @return the instance that is currently serving requests. It can be closed at any time after a reload, so use
+     * acquire and release when accessing the graph.
+     */
     public GraphHopper getGraphHopper() {
+        return current.graphHopper;
+    }
+
+    /**
+     * @return the current instance, which is not closed before release is called with it
+     */
+    public GraphHopper acquire() {
+        while (true) {
+            ManagedInstance instance = current;
+            instance.users.incrementAndGet();
+            // a reload could have retired the instance in the meantime, then it might already be closed
+            if (instance == current)
+                return instance.graphHopper;
+            release(instance);
+        }
+    }
+
+    public void release(GraphHopper graphHopper) {
+        ManagedInstance instance = instances.get(graphHopper);
+        if (instance == null)
+            throw new IllegalArgumentException("Unknown GraphHopper instance " + graphHopper.getGraphHopperLocation());
+        release(instance);
+    }
+
+    private void release(ManagedInstance instance) {
+        instance.users.decrementAndGet();
+        closeIfUnused(instance);
+    }
+
+    public boolean isReloadable() {
+        return !configuration.has("gtfs.file");
+    }
+
+    /**
+     * Starts a reload in the background, see reload.
+     */
+    public Future<GraphHopper> reloadAsync(String snapshotLocation) {
+        return reloadExecutor.submit(() -> reload(snapshotLocation));
+    }
+
+    /**
+     * Builds a new graph folder next to graph.location, loads and warms it and then makes it the current instance.
+     * The warm-up includes the preload of the memory-mapped graph, so the new instance is healthy right away.
+     * Requests are served by the previous instance until then, which is closed when its last request is released.
+     *
+     * @param snapshotLocation an existing graph folder that is copied into the new folder and then loaded, e.g. a
+     *                         graph-cache created by the import command. With PostGIS and db.update.column the
+     *                         roads changed since the snapshot are applied while loading. If empty the graph is
+     *                         imported from scratch.
+     */
+    public synchronized GraphHopper reload(String snapshotLocation) {
+        if (!isReloadable())
+            throw new IllegalStateException("Reloading the graph is not supported for GTFS");
+
+        String location = configuration.getString("graph.location", "graph-cache") + "-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.ROOT).format(new Date());
+        if (new File(location).exists())
+            throw new IllegalStateException("Reload folder " + location + " already exists");
+        GraphHopperConfig reloadConfig = new GraphHopperConfig(configuration);
+        reloadConfig.putObject("graph.location", location);
+
+        StopWatch sw = new StopWatch().start();
+        GraphHopper graphHopper = createGraphHopper(reloadConfig);
+        try {
+            if (!Helper.isEmpty(snapshotLocation)) {
+                logger.info("copying graph snapshot {} to {}", snapshotLocation, location);
+                copyFolder(Paths.get(snapshotLocation), Paths.get(location));
+            }
+            graphHopper.importOrLoad();
+            logLoaded(graphHopper);
+            awaitMMapWarmUp(graphHopper);
+            warmUp(graphHopper, reloadConfig.getInt("graph.reload.warm_up_queries", 100));
+        } catch (RuntimeException ex) {
+            graphHopper.close();
+            Helper.removeDir(new File(location));
+            throw ex;
+        }
+
+        ManagedInstance instance = new ManagedInstance(graphHopper, true);
+        instances.put(graphHopper, instance);
+        ManagedInstance previous = current;
+        current = instance;
+        previous.retired = true;
+        closeIfUnused(previous);
+        logger.info("reloaded graph at {} in {}s, previous graph at {} is closed after {} pending requests",
+                location, sw.stop().getSeconds(), previous.graphHopper.getGraphHopperLocation(), previous.users.get());
         return graphHopper;
     }
 
+    /**
+     * Waits until the memory-mapped graph is read, see graph.dataaccess.mmap.preload. Otherwise the new instance would
+     * be reported as unhealthy by the health check until then.
+     */
+    private static void awaitMMapWarmUp(GraphHopper graphHopper) {
+        MMapWarmUp mmapWarmUp = graphHopper.getMMapWarmUp();
+        if (mmapWarmUp == null)
+            return;
+        try {
+            mmapWarmUp.awaitDone(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while warming up the graph at " + graphHopper.getGraphHopperLocation(), ex);
+        }
+    }
+
+    /**
+     * Runs some route queries between random points for every profile, so that the first requests after the swap
+     * do not have to page in the graph and the code paths of the new instance are compiled.
+     */
+    private static void warmUp(GraphHopper graphHopper, int queries) {
+        BBox bounds = graphHopper.getGraphHopperStorage().getBounds();
+        if (queries <= 0 || !bounds.isValid())
+            return;
+        StopWatch sw = new StopWatch().start();
+        Random random = new Random(42);
+        for (Profile profile : graphHopper.getProfiles()) {
+            for (int i = 0; i < queries; i++) {
+                GHRequest request = new GHRequest(
+                        bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                        bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon),
+                        bounds.minLat + random.nextDouble() * (bounds.maxLat - bounds.minLat),
+                        bounds.minLon + random.nextDouble() * (bounds.maxLon - bounds.minLon)).setProfile(profile.getName());
+                try {
+                    graphHopper.route(request);
+                } catch (Exception ex) {
+                    // no route or no snap is fine, we only want to touch the graph
+                }
+            }
+        }
+        logger.info("warmed up graph with {} queries per profile in {}s", queries, sw.stop().getSeconds());
+    }
+
+    private static void copyFolder(Path from, Path to) {
+        if (!Files.isDirectory(from))
+            throw new IllegalArgumentException("Graph snapshot " + from + " is not a folder");
+        try (Stream<Path> paths = Files.walk(from)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path target = to.resolve(from.relativize(path).toString());
+                if (Files.isDirectory(path))
+                    Files.createDirectories(target);
+                else
+                    Files.copy(path, target);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void closeIfUnused(ManagedInstance instance) {
+        if (!instance.retired || instance.users.get() > 0 || !instance.closed.compareAndSet(false, true))
+            return;
+        instances.remove(instance.graphHopper);
+        instance.graphHopper.close();
+        if (instance.removeOnClose)
+            instance.graphHopper.clean();
+        logger.info("closed graph at {}", instance.graphHopper.getGraphHopperLocation());
+    }
+
     @Override
     public void stop() {
-        graphHopper.close();
+        reloadExecutor.shutdownNow();
+        for (ManagedInstance instance : instances.values()) {
+            if (instance.closed.compareAndSet(false, true))
+                instance.graphHopper.close();
+        }
     }
 
+    private static class ManagedInstance {
+        final GraphHopper graphHopper;
+        // the folders built by reload are removed when they are replaced, the configured graph.location is kept
+        final boolean removeOnClose;
+        final AtomicInteger users = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean retired;
 
+        ManagedInstance(GraphHopper graphHopper, boolean removeOnClose) {
+            this.graphHopper = graphHopper;
+            this.removeOnClose = removeOnClose;
+        }
+    }
 }
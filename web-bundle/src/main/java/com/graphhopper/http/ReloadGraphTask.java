@@ -0,0 +1,47 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task that rebuilds the graph in the background and swaps it in without a restart, e.g.
+ * <code>curl -X POST localhost:8990/tasks/reload-graph</code> for a new import or
+ * <code>curl -X POST 'localhost:8990/tasks/reload-graph?snapshot=/data/graph-cache'</code> to start from a copy of an
+ * existing graph folder.
+ */
+public class ReloadGraphTask extends Task {
+
+    private final GraphHopperManaged graphHopperManaged;
+
+    public ReloadGraphTask(GraphHopperManaged graphHopperManaged) {
+        super("reload-graph");
+        this.graphHopperManaged = graphHopperManaged;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) {
+        List<String> snapshot = parameters.get("snapshot");
+        graphHopperManaged.reloadAsync(snapshot == null || snapshot.isEmpty() ? "" : snapshot.get(0));
+        output.println("Graph reload started, the current graph is used until the new one is loaded");
+    }
+}
@@ -21,22 +21,36 @@ package com.graphhopper.http.health;
 import com.codahale.metrics.health.HealthCheck;
 import com.graphhopper.GraphHopper;
 
+import java.util.function.Supplier;
+
 public class GraphHopperHealthCheck extends HealthCheck {
 
-    private final GraphHopper graphHopper;
+    private final Supplier<GraphHopper> graphHopperSupplier;
 
     public GraphHopperHealthCheck(GraphHopper graphHopper) {
-        this.graphHopper = graphHopper;
+        this(() -> graphHopper);
+    }
+
+    /**
+     * Checks the instance that is current at the time of the check, e.g. to follow graph reloads.
+     */
+    public GraphHopperHealthCheck(Supplier<GraphHopper> graphHopperSupplier) {
+        this.graphHopperSupplier = graphHopperSupplier;
     }
 
     @Override
     protected Result check() {
+        GraphHopper graphHopper = graphHopperSupplier.get();
         if (!graphHopper.getGraphHopperStorage().getBounds().isValid()) {
             return Result.unhealthy("GraphHopperStorage has invalid bounds.");
         }
         if (!graphHopper.getFullyLoaded()) {
             return Result.unhealthy("GraphHopper is not fully loaded.");
         }
+        if (!graphHopper.isWarmedUp()) {
+            return Result.unhealthy("GraphHopper is warming up the memory-mapped graph: "
+                    + Math.round(100 * graphHopper.getMMapWarmUp().getProgress()) + "%");
+        }
         return Result.healthy();
     }
 }
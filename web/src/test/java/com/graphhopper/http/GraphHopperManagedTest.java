@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.http;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.config.Profile;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphHopperManagedTest {
+    private static final String DIR = "./target/managed-test-gh/";
+
+    @BeforeEach
+    @AfterEach
+    public void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    private static GraphHopperConfig createConfig() {
+        return new GraphHopperConfig().
+                putObject("graph.flag_encoders", "car").
+                putObject("datareader.file", "../core/files/andorra.osm.gz").
+                putObject("graph.location", DIR + "graph-cache").
+                putObject("graph.reload.warm_up_queries", 10).
+                setProfiles(Collections.singletonList(new Profile("car").setVehicle("car").setWeighting("fastest")));
+    }
+
+    @Test
+    public void testReload() {
+        GraphHopperManaged managed = new GraphHopperManaged(createConfig());
+        managed.start();
+        GraphHopper first = managed.acquire();
+
+        GraphHopper second = managed.reload("");
+        assertNotSame(first, second);
+        assertSame(second, managed.getGraphHopper());
+        assertTrue(second.getGraphHopperLocation().startsWith(DIR + "graph-cache-"));
+
+        // the request that acquired the first instance can still use it
+        assertRoute(first);
+        managed.release(first);
+
+        GraphHopper third = managed.reload(DIR + "graph-cache");
+        assertRoute(third);
+        // folders built by a reload are removed when replaced, the configured folder is kept
+        assertFalse(new File(second.getGraphHopperLocation()).exists());
+        assertTrue(new File(DIR + "graph-cache").exists());
+        managed.stop();
+    }
+
+    private static void assertRoute(GraphHopper hopper) {
+        GHResponse rsp = hopper.route(new GHRequest(42.56819, 1.603231, 42.571034, 1.520662).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(16_000, rsp.getBest().getDistance(), 3_000);
+    }
+}